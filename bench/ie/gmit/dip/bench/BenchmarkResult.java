@@ -0,0 +1,118 @@
+package ie.gmit.dip.bench;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author Conor Timlin
+ * Score of one benchmark as JMH reports it in its JSON results: the mean time per operation and the half width of
+ * its 99.9% confidence interval, read back to compare one run against a baseline.
+ *
+ */
+
+public final class BenchmarkResult {
+
+	/**
+	 * @param benchmark - Name of the benchmark, e.g. "ie.gmit.dip.bench.LayoutBenchmark.layout"
+	 * @param params - Parameters it was run with
+	 * @param score - Mean time per operation
+	 * @param scoreError - Half width of the confidence interval of the score, NaN if JMH couldn't tell
+	 * @param unit - Unit of the score, e.g. "ms/op"
+	 */
+	private final String benchmark;
+	private final Map<String, String> params;
+	private final double score;
+	private final double scoreError;
+	private final String unit;
+
+	/**
+	 * @param benchmark - Name of the benchmark
+	 * @param params - Parameters it was run with, copied
+	 * @param score - Mean time per operation
+	 * @param scoreError - Half width of the confidence interval of the score
+	 * @param unit - Unit of the score
+	 */
+	public BenchmarkResult(String benchmark, Map<String, String> params, double score, double scoreError,
+			String unit) {
+		this.benchmark = benchmark;
+		this.params = Collections.unmodifiableMap(new LinkedHashMap<String, String>(params));
+		this.score = score;
+		this.scoreError = scoreError;
+		this.unit = unit;
+	}
+
+	/**
+	 * @return Name of the benchmark
+	 */
+	public String getBenchmark() {
+		return benchmark;
+	}
+
+	/**
+	 * @return Read-only parameters it was run with
+	 */
+	public Map<String, String> getParams() {
+		return params;
+	}
+
+	/**
+	 * @return Name and parameters, identifying the result within a run
+	 */
+	public String getKey() {
+		return params.isEmpty() ? benchmark : benchmark + params.toString().replace('{', '(').replace('}', ')');
+	}
+
+	/**
+	 * @return Unit of the score, e.g. "ms/op"
+	 */
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @return Mean time per operation
+	 */
+	public double getScore() {
+		return score;
+	}
+
+	/**
+	 * @return Half width of the 99.9% confidence interval of the score, NaN from a single iteration
+	 */
+	public double getScoreError() {
+		return scoreError;
+	}
+
+	/**
+	 * Reads one result from a parsed JMH result object.
+	 * @param object - Parsed JSON object, one element of the array JMH writes with -rf json
+	 * @return The result
+	 * @throws IllegalArgumentException - If fields are missing
+	 */
+	@SuppressWarnings("unchecked")
+	public static BenchmarkResult fromJson(Map<String, Object> object) {
+		Object metricObject = object.get("primaryMetric");
+		if (!(metricObject instanceof Map) || !(object.get("benchmark") instanceof String)) {
+			throw new IllegalArgumentException("Not a benchmark result: " + object);
+		}
+		Map<String, Object> metric = (Map<String, Object>) metricObject;
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		Object paramObject = object.get("params");
+		if (paramObject instanceof Map) {
+			for (Map.Entry<String, Object> param : ((Map<String, Object>) paramObject).entrySet()) {
+				params.put(param.getKey(), String.valueOf(param.getValue()));
+			}
+		}
+		return new BenchmarkResult((String) object.get("benchmark"), params, number(metric.get("score")),
+				number(metric.get("scoreError")), String.valueOf(metric.get("scoreUnit")));
+	}
+
+	/**
+	 * @return The value as a double, NaN for anything but a number (JMH writes "NaN" as a string)
+	 */
+	private static double number(Object value) {
+		return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+	}
+}
@@ -0,0 +1,227 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.ConsoleColour;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ *
+ * @author Conor Timlin
+ * Runs the JMH benchmarks of the word cloud pipeline and compares them with an earlier run: parsing (ParseBenchmark)
+ * on synthetic and real corpora, ignore word filtering (IgnoreBenchmark), ranking by sortByWordFrequency/getFirstK
+ * and by topK (RankBenchmark), layout at 10, 100 and 1,000 words (LayoutBenchmark), and export as PNG, against
+ * ImageIO, and SVG (ExportBenchmark).
+ *
+ * Results are written by JMH as JSON. Given a baseline (the JSON of an earlier run) the suite reports every
+ * benchmark that got slower by more than the threshold, beyond the error of both runs, and exits with status 1, so a
+ * deploy script can stop on a regression. --results compares a JSON file JMH has already written, e.g. by
+ * java -jar with -rf json, instead of running anything.
+ *
+ * Usage: gradle :jmh:jmh --args="[--filter regex] [--warmup n] [--iterations n] [--time ms] [--forks n] [--out file]
+ * [--baseline file] [--threshold percent] [--corpus file]... [--results file] [--list]"
+ *
+ */
+
+public final class Benchmarks {
+
+	/**
+	 * @param SYNTHETIC_CORPORA - Corpora ParseBenchmark runs on when no real one is given
+	 * @param filter - Only benchmarks whose name matches are run, null for all
+	 * @param warmupIterations - Iterations discarded before measuring, -1 for each benchmark's own
+	 * @param iterations - Iterations measured, -1 for each benchmark's own
+	 * @param iterationMillis - Length of an iteration, -1 for each benchmark's own
+	 * @param forks - JVMs each benchmark is run in, -1 for each benchmark's own
+	 * @param out - File JMH writes the JSON results to
+	 * @param baseline - JSON results of an earlier run to compare with, null for none
+	 * @param threshold - Percent a benchmark may slow down by before it counts as a regression
+	 * @param corpora - Real text files parsed as well as the synthetic corpora
+	 * @param results - JSON results to compare with the baseline instead of running, null to run
+	 * @param list - True to list the benchmarks instead of running them
+	 */
+	private static final String[] SYNTHETIC_CORPORA = { "synthetic-1MB", "synthetic-16MB" };
+
+	private String filter;
+	private int warmupIterations = -1;
+	private int iterations = -1;
+	private long iterationMillis = -1;
+	private int forks = -1;
+	private File out = new File("bench-results.json");
+	private File baseline;
+	private double threshold = 10;
+	private final List<String> corpora = new ArrayList<String>();
+	private File results;
+	private boolean list;
+
+	/**
+	 * @param args - Options, see the class comment
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		Benchmarks benchmarks = new Benchmarks();
+		benchmarks.parseOptions(args);
+		System.exit(benchmarks.run() ? 0 : 1);
+	}
+
+	private void parseOptions(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--list")) {
+				list = true;
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+			String value = args[++i];
+			switch (option) {
+			case "--filter":
+				filter = value;
+				break;
+			case "--warmup":
+				warmupIterations = Integer.parseInt(value);
+				break;
+			case "--iterations":
+				iterations = Math.max(1, Integer.parseInt(value));
+				break;
+			case "--time":
+				iterationMillis = Long.parseLong(value);
+				break;
+			case "--forks":
+				forks = Integer.parseInt(value);
+				break;
+			case "--out":
+				out = new File(value);
+				break;
+			case "--baseline":
+				baseline = new File(value);
+				break;
+			case "--threshold":
+				threshold = Double.parseDouble(value);
+				break;
+			case "--corpus":
+				corpora.add(new File(value).getAbsolutePath());
+				break;
+			case "--results":
+				results = new File(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+	}
+
+	/**
+	 * Runs the selected benchmarks with JMH, unless given results to compare, and compares them with the baseline.
+	 * @return False if a benchmark regressed
+	 */
+	private boolean run() throws RunnerException, IOException {
+		if (results == null) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.jvmArgsAppend("-Djava.awt.headless=true")
+					.resultFormat(ResultFormatType.JSON)
+					.result(out.getPath());
+			if (filter != null) {
+				options.include(filter);
+			}
+			if (warmupIterations >= 0) {
+				options.warmupIterations(warmupIterations);
+			}
+			if (iterations > 0) {
+				options.measurementIterations(iterations);
+			}
+			if (iterationMillis > 0) {
+				options.warmupTime(TimeValue.milliseconds(iterationMillis))
+						.measurementTime(TimeValue.milliseconds(iterationMillis));
+			}
+			if (forks >= 0) {
+				options.forks(forks);
+			}
+			if (!corpora.isEmpty()) {
+				List<String> values = new ArrayList<String>(corpora);
+				values.addAll(0, List.of(SYNTHETIC_CORPORA));
+				options.param("corpus", values.toArray(new String[0]));
+			}
+			Runner runner = new Runner(options.build());
+			if (list) {
+				runner.list();
+				return true;
+			}
+			runner.run();
+			results = out;
+			System.out.println(ConsoleColour.BLUE);
+			System.out.println("Results written to " + out.getPath());
+			System.out.println(ConsoleColour.RESET);
+		}
+		return baseline == null || compare(read(results), read(baseline));
+	}
+
+	/**
+	 * @return The results of a JSON file written by JMH, by benchmark name and parameters
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, BenchmarkResult> read(File file) throws IOException {
+		Object parsed = Json.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		if (!(parsed instanceof List)) {
+			throw new IllegalArgumentException("Not a JMH result file: " + file);
+		}
+		Map<String, BenchmarkResult> results = new LinkedHashMap<String, BenchmarkResult>();
+		for (Object object : (List<Object>) parsed) {
+			BenchmarkResult result = BenchmarkResult.fromJson((Map<String, Object>) object);
+			results.put(result.getKey(), result);
+		}
+		return results;
+	}
+
+	/**
+	 * Compares the results with the baseline's. A benchmark regressed if its score rose by more than the threshold
+	 * and the two confidence intervals don't overlap, so noise alone isn't reported.
+	 * @return False if any benchmark regressed
+	 */
+	private boolean compare(Map<String, BenchmarkResult> after, Map<String, BenchmarkResult> before) {
+		boolean passed = true;
+		for (BenchmarkResult result : after.values()) {
+			BenchmarkResult old = before.get(result.getKey());
+			if (old == null || !old.getUnit().equals(result.getUnit())) {
+				continue;
+			}
+			double change = (result.getScore() - old.getScore()) / old.getScore() * 100;
+			double gap = (result.getScore() - errorOf(result)) - (old.getScore() + errorOf(old));
+			if (change > threshold && gap > 0) {
+				passed = false;
+				System.out.println(ConsoleColour.RED);
+				System.out.println(String.format("[REGRESSION] %s: %.3f -> %.3f %s (+%.1f%%)", result.getKey(),
+						old.getScore(), result.getScore(), result.getUnit(), change));
+				System.out.println(ConsoleColour.RESET);
+			} else {
+				System.out.println(String.format("%s: %.3f -> %.3f %s (%+.1f%%)", result.getKey(), old.getScore(),
+						result.getScore(), result.getUnit(), change));
+			}
+		}
+		if (passed) {
+			System.out.println(ConsoleColour.BLUE);
+			System.out.println("No benchmark regressed by more than " + threshold + "% against " + baseline.getPath());
+			System.out.println(ConsoleColour.RESET);
+		}
+		return passed;
+	}
+
+	private static double errorOf(BenchmarkResult result) {
+		double error = result.getScoreError();
+		return Double.isNaN(error) ? 0 : error;
+	}
+}
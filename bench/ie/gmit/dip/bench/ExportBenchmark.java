@@ -0,0 +1,124 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.PngEncoder;
+import ie.gmit.dip.SvgWriter;
+import ie.gmit.dip.TiledRenderer;
+import ie.gmit.dip.WordCloudRenderer;
+import ie.gmit.dip.WordLayout;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Conor Timlin
+ * Drawing and encoding a laid out 1,000 word cloud: tiled rendering, the PngEncoder at a fast and the default level,
+ * ImageIO's PNG writer it replaced, and SVG. Encoders write to a stream that only counts, so no disk I/O is timed.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExportBenchmark {
+
+	/**
+	 * @param WORDS - Words in the cloud exported
+	 * @param layout - The cloud laid out
+	 * @param tiles - Renderer drawing it
+	 * @param image - The cloud drawn, encoded by the PNG benchmarks
+	 */
+	static final int WORDS = 1000;
+
+	private WordLayout layout;
+	private TiledRenderer tiles;
+	private BufferedImage image;
+
+	/**
+	 * The PngEncoder at each level measured, a state of its own so only png is run once per level
+	 */
+	@State(Scope.Benchmark)
+	public static class Encoder {
+
+		@Param({ "1", "6" })
+		public int level;
+
+		private PngEncoder png;
+
+		@Setup
+		public void setUp() {
+			png = new PngEncoder(level, PngEncoder.Palette.NONE);
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		WordCloudRenderer renderer = new WordCloudRenderer(WordCloudRenderer.Packing.GLYPHS);
+		layout = renderer.layout(Synthetic.cloudWords(WORDS, Synthetic.vocabulary(Synthetic.STOP_WORDS.length + WORDS)),
+				Synthetic.CANVAS_WIDTH, Synthetic.CANVAS_HEIGHT, Synthetic.SEED);
+		tiles = new TiledRenderer();
+		image = tiles.render(layout, 1);
+	}
+
+	@Benchmark
+	public BufferedImage render() {
+		return tiles.render(layout, 1);
+	}
+
+	@Benchmark
+	public long png(Encoder encoder) throws IOException {
+		CountingStream counter = new CountingStream();
+		encoder.png.write(image, counter);
+		return counter.count;
+	}
+
+	@Benchmark
+	public long imageio() throws IOException {
+		CountingStream counter = new CountingStream();
+		ImageIO.write(image, "png", counter);
+		return counter.count;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long svg() throws IOException {
+		CountingStream counter = new CountingStream();
+		SvgWriter.write(layout, counter);
+		return counter.count;
+	}
+
+	/**
+	 * Stream that only counts what is written to it
+	 */
+	private static final class CountingStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.IgnoreWordFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Conor Timlin
+ * Looking words up in an ignore list, half of them on it: the IgnoreWordFilter on the tokenizer's bytes, and the
+ * HashSet of Strings it replaced.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnoreBenchmark {
+
+	/**
+	 * @param PROBES - Words looked up per operation
+	 * @param ignoreWords - Number of words on the ignore list
+	 * @param filter - The list compiled to an IgnoreWordFilter
+	 * @param set - The list as a HashSet
+	 * @param probes - Words looked up, as the tokenizer's bytes
+	 */
+	static final int PROBES = 100000;
+
+	@Param({ "100", "10000" })
+	public int ignoreWords;
+
+	private IgnoreWordFilter filter;
+	private Set<String> set;
+	private byte[][] probes;
+
+	@Setup
+	public void setUp() {
+		List<String> vocabulary = Synthetic.vocabulary(Synthetic.VOCABULARY);
+		List<String> ignored = vocabulary.subList(0, ignoreWords);
+		filter = IgnoreWordFilter.compile(ignored);
+		set = new HashSet<String>(ignored);
+		Random random = new Random(Synthetic.SEED);
+		probes = new byte[PROBES][];
+		for (int i = 0; i < PROBES; i++) {
+			String word = i % 2 == 0 ? ignored.get(random.nextInt(ignoreWords))
+					: vocabulary.get(ignoreWords + random.nextInt(ignoreWords));
+			probes[i] = word.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	@Benchmark
+	public int filter() {
+		int hits = 0;
+		for (byte[] word : probes) {
+			if (filter.contains(word, 0, word.length)) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	@Benchmark
+	public int hashSet() {
+		// Each word is made a String first, as tokens were before the filter, so its hash isn't already cached
+		int hits = 0;
+		for (byte[] word : probes) {
+			if (set.contains(new String(word, StandardCharsets.US_ASCII))) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+}
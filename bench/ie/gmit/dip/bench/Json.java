@@ -0,0 +1,207 @@
+package ie.gmit.dip.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Conor Timlin
+ * Just enough JSON to read JMH's result files without another library: a small recursive descent parser reading
+ * documents as Maps, Lists, Strings, Doubles, Booleans and nulls.
+ *
+ */
+
+final class Json {
+
+	/**
+	 * @param text - Document being parsed
+	 * @param position - Index of the next character to read
+	 */
+	private final String text;
+	private int position;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	/**
+	 * @param text - JSON document
+	 * @return Its value: a Map, List, String, Double, Boolean or null
+	 * @throws IllegalArgumentException - If the text isn't valid JSON
+	 * Complexity: O(N) - Where N is the length of the text
+	 */
+	static Object parse(String text) {
+		Json parser = new Json(text);
+		Object value = parser.value();
+		parser.skipWhitespace();
+		if (parser.position != text.length()) {
+			throw parser.error("Unexpected text after the document");
+		}
+		return value;
+	}
+
+	private Object value() {
+		skipWhitespace();
+		if (position >= text.length()) {
+			throw error("Unexpected end of document");
+		}
+		char c = text.charAt(position);
+		switch (c) {
+		case '{':
+			return object();
+		case '[':
+			return array();
+		case '"':
+			return string();
+		case 't':
+			return literal("true", Boolean.TRUE);
+		case 'f':
+			return literal("false", Boolean.FALSE);
+		case 'n':
+			return literal("null", null);
+		default:
+			return number();
+		}
+	}
+
+	private Map<String, Object> object() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		position++;
+		skipWhitespace();
+		if (peek() == '}') {
+			position++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("Expected a field name");
+			}
+			String name = string();
+			skipWhitespace();
+			expect(':');
+			object.put(name, value());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> array() {
+		List<Object> array = new ArrayList<Object>();
+		position++;
+		skipWhitespace();
+		if (peek() == ']') {
+			position++;
+			return array;
+		}
+		while (true) {
+			array.add(value());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String string() {
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (true) {
+			if (position >= text.length()) {
+				throw error("Unterminated string");
+			}
+			char c = text.charAt(position++);
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (position >= text.length()) {
+				throw error("Unterminated string");
+			}
+			char escaped = text.charAt(position++);
+			switch (escaped) {
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'u':
+				if (position + 4 > text.length()) {
+					throw error("Bad unicode escape");
+				}
+				value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+				position += 4;
+				break;
+			default:
+				value.append(escaped);
+			}
+		}
+	}
+
+	private Double number() {
+		int start = position;
+		while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+			position++;
+		}
+		if (start == position) {
+			throw error("Unexpected character '" + text.charAt(position) + "'");
+		}
+		try {
+			return Double.valueOf(text.substring(start, position));
+		} catch (NumberFormatException e) {
+			throw error("Bad number " + text.substring(start, position));
+		}
+	}
+
+	private Object literal(String word, Object value) {
+		if (!text.startsWith(word, position)) {
+			throw error("Unexpected character '" + text.charAt(position) + "'");
+		}
+		position += word.length();
+		return value;
+	}
+
+	private void expect(char c) {
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		position++;
+	}
+
+	private char peek() {
+		return position < text.length() ? text.charAt(position) : '\0';
+	}
+
+	private void skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at character " + position);
+	}
+}
@@ -0,0 +1,58 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.WordCloudRenderer;
+import ie.gmit.dip.WordLayout;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Conor Timlin
+ * Laying a cloud out with glyph packing, as WordCloud does.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+	/**
+	 * @param words - Words in the cloud
+	 * @param renderer - Renderer laying it out, its font cache warm after the first operation
+	 * @param cloud - Words and their Zipf counts, most frequent first
+	 */
+	@Param({ "10", "100", "1000" })
+	public int words;
+
+	private WordCloudRenderer renderer;
+	private List<Entry<String, Integer>> cloud;
+
+	@Setup
+	public void setUp() {
+		renderer = new WordCloudRenderer(WordCloudRenderer.Packing.GLYPHS);
+		cloud = Synthetic.cloudWords(words, Synthetic.vocabulary(Synthetic.STOP_WORDS.length + words));
+	}
+
+	@Benchmark
+	public WordLayout layout() {
+		return renderer.layout(cloud, Synthetic.CANVAS_WIDTH, Synthetic.CANVAS_HEIGHT, Synthetic.SEED);
+	}
+}
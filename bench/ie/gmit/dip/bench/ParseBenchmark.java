@@ -0,0 +1,93 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.DataSource;
+import ie.gmit.dip.FileParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Conor Timlin
+ * Tokenizing and counting a whole file: streamed on one thread by addToHashMap as the menu's parsers do, and mapped
+ * and split across cores by FileParser.parse. Runs on Zipf distributed synthetic corpora, or on a real text file
+ * given as the corpus parameter (Benchmarks --corpus file).
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	/**
+	 * @param SYNTHETIC - Prefix of the synthetic corpora, followed by their size in MB
+	 * @param corpus - synthetic-NMB, or the path of a text file
+	 * @param directory - Temporary directory of the synthetic corpus and the ignore words
+	 * @param path - File parsed
+	 * @param parser - Parser doing the counting, its table emptied before each operation
+	 */
+	static final String SYNTHETIC = "synthetic-";
+
+	@Param({ "synthetic-1MB", "synthetic-16MB" })
+	public String corpus;
+
+	private Path directory;
+	private String path;
+	private FileParser parser;
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("wordcloud-bench");
+		path = corpus;
+		if (corpus.startsWith(SYNTHETIC) && corpus.endsWith("MB")) {
+			int megabytes = Integer.parseInt(corpus.substring(SYNTHETIC.length(), corpus.length() - 2));
+			path = Synthetic.writeCorpus(directory, corpus, megabytes << 20, Synthetic.vocabulary(Synthetic.VOCABULARY))
+					.getPath();
+		} else if (!new File(corpus).isFile()) {
+			throw new IOException("No such corpus: " + corpus);
+		}
+		parser = new FileParser();
+		parser.setCache(null);
+		parser.initialiseIgnoreWords(Synthetic.writeStopWords(directory));
+	}
+
+	@TearDown
+	public void tearDown() {
+		Synthetic.delete(directory);
+	}
+
+	@Benchmark
+	public int addToHashMap() throws IOException {
+		parser.getWordCountTable().clear();
+		parser.addToHashMap(path, DataSource.FILE);
+		return parser.getWordCountTable().size();
+	}
+
+	@Benchmark
+	public int mapped() throws IOException {
+		parser.getWordCountTable().clear();
+		parser.setMappedMode(true);
+		parser.parse(path);
+		return parser.getWordCountTable().size();
+	}
+}
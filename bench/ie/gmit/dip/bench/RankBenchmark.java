@@ -0,0 +1,71 @@
+package ie.gmit.dip.bench;
+
+import ie.gmit.dip.FileParser;
+import ie.gmit.dip.WordCloud;
+import ie.gmit.dip.WordCountTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * @author Conor Timlin
+ * Picking the words of a cloud out of a vocabulary with Zipf counts: sorting all of it into a TreeSet and taking the
+ * first k, and the bounded heap of topK.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankBenchmark {
+
+	/**
+	 * @param TOP_WORDS - Words ranked out of the vocabulary, as many as a large cloud shows
+	 * @param vocabulary - Number of distinct words counted
+	 * @param parser - Parser holding the counts
+	 */
+	static final int TOP_WORDS = 100;
+
+	@Param({ "1000", "10000", "100000" })
+	public int vocabulary;
+
+	private FileParser parser;
+
+	@Setup
+	public void setUp() {
+		List<String> words = Synthetic.vocabulary(vocabulary);
+		parser = new FileParser();
+		WordCountTable table = parser.getWordCountTable();
+		for (int rank = 0; rank < vocabulary; rank++) {
+			table.add(words.get(rank), Synthetic.zipfCount(rank));
+		}
+	}
+
+	@Benchmark
+	public ArrayList<Entry<String, Integer>> sortByWordFrequency() {
+		return WordCloud.getFirstK(parser.sortByWordFrequency(parser.getHashMap()), TOP_WORDS);
+	}
+
+	@Benchmark
+	public ArrayList<Entry<String, Integer>> topK() {
+		return parser.topK(TOP_WORDS);
+	}
+}
@@ -0,0 +1,139 @@
+package ie.gmit.dip.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ *
+ * @author Conor Timlin
+ * Synthetic data the benchmarks run on. Words are drawn from a fixed seed with Zipf's law frequencies, as real text
+ * has, so every run measures the same work.
+ *
+ */
+
+final class Synthetic {
+
+	/**
+	 * @param SEED - Seed of all synthetic data
+	 * @param STOP_WORDS - Common English words, the most frequent words of synthetic corpora and the ignore list
+	 * @param VOCABULARY - Distinct words synthetic corpora are drawn from
+	 * @param CANVAS_WIDTH - Width of laid out clouds
+	 * @param CANVAS_HEIGHT - Height of laid out clouds
+	 */
+	static final long SEED = 42;
+	static final String[] STOP_WORDS = { "the", "be", "to", "of", "and", "in", "that", "have", "it", "for",
+			"not", "on", "with", "he", "as", "you", "do", "at", "this", "but", "his", "by", "from", "they", "we", "say",
+			"her", "she", "or", "an", "will", "my", "one", "all", "would", "there", "their", "what", "so", "up", "out",
+			"if", "about", "who", "get", "which", "go", "me", "when", "make", "can", "like", "time", "no", "just",
+			"him", "know", "take", "people", "into", "year", "your", "good", "some", "could", "them", "see", "other",
+			"than", "then", "now", "look", "only", "come", "its", "over", "think", "also", "back", "after", "use",
+			"two", "how", "our", "work", "first", "well", "way", "even", "new", "want", "because", "any", "these",
+			"give", "day", "most", "us", "is", "was", "are" };
+	static final int VOCABULARY = 200000;
+	static final int CANVAS_WIDTH = 1920;
+	static final int CANVAS_HEIGHT = 1080;
+
+	private Synthetic() {
+	}
+
+	/**
+	 * @return The stop words followed by distinct random lower case words, 2 to 12 letters, to size words in all
+	 * Complexity: O(S) - Where S is size
+	 */
+	static List<String> vocabulary(int size) {
+		Set<String> words = new LinkedHashSet<String>(Arrays.asList(STOP_WORDS));
+		Random random = new Random(SEED);
+		char[] letters = new char[12];
+		while (words.size() < size) {
+			int length = 2 + random.nextInt(11);
+			for (int i = 0; i < length; i++) {
+				letters[i] = (char) ('a' + random.nextInt(26));
+			}
+			words.add(new String(letters, 0, length));
+		}
+		return new ArrayList<String>(words);
+	}
+
+	/**
+	 * @return Count of the word at a rank under Zipf's law, the first word a million times
+	 */
+	static int zipfCount(int rank) {
+		return Math.max(1, 1000000 / (rank + 1));
+	}
+
+	/**
+	 * @return The first words of the vocabulary past the stop words, with Zipf counts, most frequent first
+	 */
+	static List<Entry<String, Integer>> cloudWords(int words, List<String> vocabulary) {
+		List<Entry<String, Integer>> cloud = new ArrayList<Entry<String, Integer>>(words);
+		for (int rank = 0; rank < words; rank++) {
+			cloud.add(new SimpleImmutableEntry<String, Integer>(vocabulary.get(STOP_WORDS.length + rank),
+					zipfCount(rank)));
+		}
+		return cloud;
+	}
+
+	/**
+	 * @return The stop words written one per line, as an ignore words file in the directory
+	 */
+	static File writeStopWords(Path directory) throws IOException {
+		File file = directory.resolve("ignorewords.txt").toFile();
+		Files.write(file.toPath(), String.join("\n", STOP_WORDS).getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	/**
+	 * Writes a text file of words drawn by Zipf's law from the vocabulary, with the punctuation and line breaks of
+	 * prose
+	 * Complexity: O(B log V) - For B bytes drawn from V words
+	 */
+	static File writeCorpus(Path directory, String name, int bytes, List<String> vocabulary) throws IOException {
+		double[] cumulative = new double[vocabulary.size()];
+		double total = 0;
+		for (int rank = 0; rank < cumulative.length; rank++) {
+			total += 1.0 / (rank + 1);
+			cumulative[rank] = total;
+		}
+		Random random = new Random(SEED);
+		StringBuilder text = new StringBuilder(bytes + 64);
+		int wordsInLine = 0;
+		while (text.length() < bytes) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			String word = vocabulary.get(Math.min(rank < 0 ? -rank - 1 : rank, cumulative.length - 1));
+			text.append(random.nextInt(20) == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+			if (++wordsInLine == 12) {
+				text.append(".\n");
+				wordsInLine = 0;
+			} else {
+				text.append(random.nextInt(15) == 0 ? ", " : " ");
+			}
+		}
+		File file = directory.resolve(name + ".txt").toFile();
+		Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	/**
+	 * Deletes a directory of files made for a benchmark
+	 */
+	static void delete(Path directory) {
+		File[] files = directory.toFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.toFile().delete();
+	}
+}
@@ -0,0 +1,632 @@
+package ie.gmit.dip;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Conor Timlin
+ * Headless batch mode: makes a word cloud for every job in a manifest without the Menu or any prompts, e.g.
+ * java -Djava.awt.headless=true ie.gmit.dip.Runner --batch jobs.tsv --threads 8 --retries 3
+ *
+ * The manifest has one job per line, its fields separated by tabs:
+ * <i>source &lt;TAB&gt; ignore words file &lt;TAB&gt; number of words &lt;TAB&gt; output file</i>.
+ * The source is a URL (http or https), a directory or glob of documents (see CorpusParser), a text file, or one or
+ * more saved tables (.wcf, see MappedFrequencyTable) separated by commas, merged without parsing anything. An empty
+ * ignore words field or "-" uses the default ignorewords.txt, an empty number of words the Menu's default of 10.
+ * Outputs ending .svg are written as SVG, outputs ending .wcf save the source's full table of counts instead of an
+ * image (so a corpus can be counted once and its table used by later batches; jobs of one batch run in parallel, so
+ * none can rely on another's output) and anything else is written as PNG. Each output gets a text file of its results
+ * and metrics alongside (the output name with .txt appended, e.g. cloud.png.txt). Blank lines and lines starting #
+ * are skipped.
+ *
+ * Jobs run on a fixed pool of worker threads. Each attempt of a job gets a parser and PipelineMetrics of its own, so
+ * nothing one job counts can leak into another; only the renderer (thread safe, with its font cache) and the
+ * HttpClient are shared. A job failing with an IOException (a page that timed out, a file being replaced) is tried
+ * again after a growing delay, up to maxAttempts times; a missing file, any other failure, or a line that can't be
+ * read fails it straight away. Images are written to a temporary file and moved into place, so a failed attempt
+ * never leaves a half written output. Each job's status is printed as it finishes and written to a status file at
+ * the end, one line per job, followed by the throughput in jobs/sec of the jobs that ran.
+ *
+ */
+
+public final class BatchRunner {
+
+	/**
+	 * Where a job is up to
+	 */
+	public enum Status {
+		/** Waiting for a worker */
+		PENDING,
+		/** Being parsed, laid out or written */
+		RUNNING,
+		/** Failed with an IOException, waiting to be tried again */
+		RETRYING,
+		/** Output and results written */
+		SUCCEEDED,
+		/** Gave up, see getError */
+		FAILED
+	}
+
+	/**
+	 * @param DEFAULT_THREADS - Default number of worker threads, one per core
+	 * @param DEFAULT_MAX_ATTEMPTS - Default number of times a job is tried
+	 * @param DEFAULT_RETRY_DELAY_MILLIS - Default wait before the first retry, doubled for every retry after it
+	 * @param DEFAULT_WORDS - Words in a cloud when the manifest doesn't say, as in the Menu
+	 * @param WIDTH - Width of every cloud in pixels
+	 * @param HEIGHT - Height of every cloud in pixels
+	 * @param LAYOUT_TIMEOUT - Seconds a layout may take before the words not yet placed are dropped
+	 * @param SEPARATOR - Separator of the manifest's fields
+	 * @param threads - Number of worker threads
+	 * @param maxAttempts - Number of times a job is tried before it fails
+	 * @param retryDelayMillis - Wait before the first retry
+	 * @param renderer - Renderer shared by every job
+	 * @param png - Encoder of PNG outputs, its level and palette mode
+	 * @param client - HttpClient shared by the jobs fetching URLs, made when the first one needs it
+	 */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+	public static final int DEFAULT_WORDS = 10;
+	public static final int WIDTH = 1920;
+	public static final int HEIGHT = 1080;
+	public static final int LAYOUT_TIMEOUT = 10;
+	private static final String SEPARATOR = "\t";
+
+	private final int threads;
+	private final int maxAttempts;
+	private final long retryDelayMillis;
+	private final WordCloudRenderer renderer = new WordCloudRenderer(WordCloudRenderer.Packing.GLYPHS);
+	private volatile PngEncoder png = new PngEncoder();
+	private HttpClient client;
+	private volatile int approximateCounters;
+
+	/**
+	 * Creates a runner with DEFAULT_THREADS workers, trying each job DEFAULT_MAX_ATTEMPTS times
+	 */
+	public BatchRunner() {
+		this(DEFAULT_THREADS, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param threads - Number of worker threads, at least 1
+	 * @param maxAttempts - Number of times a job is tried before it fails, at least 1
+	 * @param retryDelayMillis - Wait before the first retry, doubled for every retry after it
+	 */
+	public BatchRunner(int threads, int maxAttempts, long retryDelayMillis) {
+		if (threads < 1 || maxAttempts < 1 || retryDelayMillis < 0) {
+			throw new IllegalArgumentException("Need at least 1 thread and 1 attempt: " + threads + ", " + maxAttempts);
+		}
+		this.threads = threads;
+		this.maxAttempts = maxAttempts;
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	/**
+	 * Runs the batch mode from the command line: the manifest, then any of --threads N, --retries N (the attempts
+	 * after the first), --status FILE (default: the manifest's name with .status appended), --approximate N
+	 * (count every job in approximate mode with N counters, see Parser.setApproximateMode), --png-level N (deflate
+	 * level of PNG outputs, 0 to 9) and --palette none|exact|quantised (how PNG outputs store colours, see
+	 * PngEncoder.Palette).
+	 * @param args - Arguments after --batch
+	 * @return Exit code: 0 if every job succeeded, 1 if any failed, 2 for bad arguments or an unreadable manifest
+	 */
+	public static int run(String[] args) {
+		if (args.length == 0) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("[ERROR] Usage: --batch MANIFEST [--threads N] [--retries N] [--status FILE]"
+					+ " [--approximate N] [--png-level 0-9] [--palette none|exact|quantised]");
+			System.out.println(ConsoleColour.RESET);
+			return 2;
+		}
+		File manifest = new File(args[0]);
+		File status = new File(args[0] + ".status");
+		int threads = DEFAULT_THREADS;
+		int attempts = DEFAULT_MAX_ATTEMPTS;
+		int counters = 0;
+		int level = PngEncoder.DEFAULT_LEVEL;
+		PngEncoder.Palette palette = PngEncoder.Palette.NONE;
+		try {
+			for (int i = 1; i < args.length; i++) {
+				String option = args[i];
+				if (i + 1 == args.length) {
+					throw new IllegalArgumentException("No value for " + option);
+				}
+				String value = args[++i];
+				if (option.equals("--threads")) {
+					threads = Integer.parseInt(value);
+				} else if (option.equals("--retries")) {
+					attempts = Integer.parseInt(value) + 1;
+				} else if (option.equals("--status")) {
+					status = new File(value);
+				} else if (option.equals("--approximate")) {
+					counters = Integer.parseInt(value);
+					if (counters < 1) {
+						throw new IllegalArgumentException("--approximate needs at least 1 counter");
+					}
+				} else if (option.equals("--png-level")) {
+					level = Integer.parseInt(value);
+				} else if (option.equals("--palette")) {
+					try {
+						palette = PngEncoder.Palette.valueOf(value.toUpperCase(Locale.ENGLISH));
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("--palette must be none, exact or quantised");
+					}
+				} else {
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			}
+			BatchRunner runner = new BatchRunner(threads, attempts, DEFAULT_RETRY_DELAY_MILLIS);
+			runner.setApproximateMode(counters);
+			runner.setPngCompression(level, palette);
+			List<Job> jobs = readManifest(manifest);
+			runner.run(jobs);
+			writeStatus(jobs, status);
+			for (Job job : jobs) {
+				if (job.getStatus() != Status.SUCCEEDED) {
+					return 1;
+				}
+			}
+			return 0;
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("[ERROR] Batch failed: " + e.getMessage());
+			System.out.println(ConsoleColour.RESET);
+			return 2;
+		}
+	}
+
+	/**
+	 * Reads the jobs of a manifest. A line that can't be read becomes a job that has already FAILED, saying why, so
+	 * one bad line doesn't hold up the rest.
+	 * @param manifest - Tab separated manifest, see the class description
+	 * @return Jobs in the order of the manifest
+	 * @throws IOException if the manifest can't be read
+	 * Complexity: O(N) - Where N is the length of the manifest
+	 */
+	public static List<Job> readManifest(File manifest) throws IOException {
+		List<Job> jobs = new ArrayList<Job>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+					continue;
+				}
+				jobs.add(Job.parse(number, line));
+			}
+		}
+		return jobs;
+	}
+
+	/**
+	 * Runs every job on the worker pool and waits for all of them, printing each job's status as it finishes and
+	 * then the throughput of the jobs run. Jobs that have already FAILED are left as they are.
+	 * @param jobs - Jobs to run
+	 * Complexity: O(J T / W) - For J jobs taking T each on W workers
+	 */
+	public void run(List<Job> jobs) {
+		long start = System.nanoTime();
+		ExecutorService workers = Executors.newFixedThreadPool(threads, Workers.daemonThreads("batch"));
+		CompletionService<Job> done = new ExecutorCompletionService<Job>(workers);
+		int submitted = 0;
+		try {
+			for (Job job : jobs) {
+				if (job.getStatus() == Status.PENDING) {
+					done.submit(() -> attempt(job), job);
+					submitted++;
+				} else {
+					report(job);
+				}
+			}
+			for (int i = 0; i < submitted; i++) {
+				report(take(done));
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int succeeded = 0;
+		for (Job job : jobs) {
+			if (job.getStatus() == Status.SUCCEEDED) {
+				succeeded++;
+			}
+		}
+		System.out.println(succeeded == jobs.size() ? ConsoleColour.BLUE : ConsoleColour.YELLOW);
+		System.out.println(String.format("Batch finished: %d of %d jobs succeeded in %.1fs (%.2f jobs/sec)", succeeded,
+				jobs.size(), seconds, submitted / Math.max(seconds, 1e-9)));
+		System.out.println(ConsoleColour.RESET);
+	}
+
+	/**
+	 * Tries a job until it succeeds, fails with anything but an IOException (or a missing file), or runs out of
+	 * attempts
+	 */
+	private void attempt(Job job) {
+		long start = System.nanoTime();
+		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+			job.status = Status.RUNNING;
+			job.attempts = attempt;
+			try {
+				job.metrics = execute(job);
+				job.error = null;
+				job.status = Status.SUCCEEDED;
+				break;
+			} catch (FileNotFoundException | NoSuchFileException e) {
+				// Won't be there next time either
+				job.error = e.toString();
+				job.status = Status.FAILED;
+				break;
+			} catch (IOException e) {
+				job.error = e.toString();
+				if (attempt == maxAttempts || !pause(retryDelayMillis << (attempt - 1))) {
+					job.status = Status.FAILED;
+					break;
+				}
+				job.status = Status.RETRYING;
+			} catch (RuntimeException | OutOfMemoryError e) {
+				// A job too big for the heap fails on its own, its allocations are garbage once it unwinds
+				job.error = e.toString();
+				job.status = Status.FAILED;
+				break;
+			}
+		}
+		job.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * One attempt of a job: parses its source with a parser of its own (or merges its saved tables), lays out the
+	 * cloud and writes the output and its results. A .wcf output gets the full table of counts and no cloud.
+	 * @return The attempt's metrics
+	 * @throws IOException if the source can't be read or the output written
+	 * Complexity: O(N + K P Q + W H) - Parsing, laying out and drawing, see Parser and WordCloudRenderer
+	 */
+	private PipelineMetrics execute(Job job) throws IOException {
+		PipelineMetrics metrics = new PipelineMetrics();
+		boolean saveTable = MappedFrequencyTable.isTable(job.output.getName());
+		ArrayList<Entry<String, Integer>> words;
+		if (isTableSource(job.source)) {
+			List<MappedFrequencyTable> tables = MappedFrequencyTable.open(tableFiles(job.source));
+			if (saveTable) {
+				try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.MERGE, job.output.getPath())) {
+					timer.setItems(MappedFrequencyTable.merge(tables, job.output));
+				}
+			}
+			try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.RANK)) {
+				words = MappedFrequencyTable.topK(tables, job.words);
+				long entries = 0;
+				for (MappedFrequencyTable table : tables) {
+					entries += table.size();
+				}
+				timer.setItems(entries);
+			}
+		} else {
+			Parser parser = newParser(job.source);
+			parser.setMetrics(metrics);
+			if (approximateCounters > 0) {
+				parser.setApproximateMode(approximateCounters, HeavyHitters.DEFAULT_WIDTH, HeavyHitters.DEFAULT_DEPTH);
+			}
+			if (job.ignoreWords == null) {
+				parser.initialiseIgnoreWords();
+			} else {
+				parser.initialiseIgnoreWords(job.ignoreWords);
+			}
+			parser.parse(job.source);
+			if (saveTable) {
+				parser.saveTable(job.output);
+			}
+			words = parser.topK(job.words);
+		}
+		if (saveTable) {
+			FileOutputWriter.writeResults(words, resultsFile(job.output), metrics);
+			return metrics;
+		}
+		WordLayout layout = renderer.layout(words, WIDTH, HEIGHT, job.source.hashCode(),
+				LayoutBudget.of(LAYOUT_TIMEOUT, TimeUnit.SECONDS), metrics);
+
+		Path output = job.output.toPath().toAbsolutePath();
+		Files.createDirectories(output.getParent());
+		// File.createTempFile, unlike Files.createTempFile, leaves the permissions to the umask, as any other output
+		Path temp = File.createTempFile("." + output.getFileName(), ".part", output.getParent().toFile()).toPath();
+		try {
+			try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.ENCODE, job.output.getPath())) {
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp.toFile()))) {
+					if (SvgWriter.isSvg(job.output.getName())) {
+						SvgWriter.write(layout, out);
+					} else {
+						png.write(render(layout, metrics), out);
+					}
+				}
+				timer.setItems(Files.size(temp));
+			}
+			Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		FileOutputWriter.writeResults(words, resultsFile(job.output), metrics);
+		return metrics;
+	}
+
+	/**
+	 * Counts every job from then on in approximate mode (see Parser.setApproximateMode), for sources too large to
+	 * count exactly in memory. Results are written with their error bounds; a .wcf output can't be saved this way.
+	 * @param counters - Number of candidate words tracked per job, 0 to count exactly
+	 * Complexity: O(1)
+	 */
+	public void setApproximateMode(int counters) {
+		this.approximateCounters = Math.max(0, counters);
+	}
+
+	/**
+	 * Sets how PNG outputs are compressed from then on: a higher level for smaller files, a lower one for faster
+	 * batches, and palette-indexed for clouds of few colours (see PngEncoder)
+	 * @param level - Deflate level, 0 (fastest) to 9 (smallest)
+	 * @param palette - How colours are stored
+	 * @throws IllegalArgumentException if the level isn't 0 to 9
+	 * Complexity: O(1)
+	 */
+	public void setPngCompression(int level, PngEncoder.Palette palette) {
+		this.png = new PngEncoder(level, palette);
+	}
+
+	/**
+	 * @return True if the source is one or more saved tables, separated by commas
+	 */
+	static boolean isTableSource(String source) {
+		for (String part : source.split(",")) {
+			if (!MappedFrequencyTable.isTable(part.trim())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<File> tableFiles(String source) {
+		List<File> files = new ArrayList<File>();
+		for (String part : source.split(",")) {
+			files.add(new File(part.trim()));
+		}
+		return files;
+	}
+
+	/**
+	 * @return A new parser for the kind of source: URLParser, CorpusParser or FileParser
+	 */
+	private Parser newParser(String source) {
+		String lower = source.toLowerCase(Locale.ENGLISH);
+		if (lower.startsWith("http://") || lower.startsWith("https://")) {
+			return new URLParser(client());
+		}
+		if (Files.isDirectory(Paths.get(source)) || CorpusParser.isGlob(source)) {
+			return new CorpusParser();
+		}
+		return new FileParser();
+	}
+
+	private synchronized HttpClient client() {
+		if (client == null) {
+			client = HttpClient.newBuilder()
+					.connectTimeout(URLParser.DEFAULT_CONNECT_TIMEOUT)
+					.followRedirects(HttpClient.Redirect.NORMAL)
+					.build();
+		}
+		return client;
+	}
+
+	private BufferedImage render(WordLayout layout, PipelineMetrics metrics) {
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.RENDER)) {
+			timer.setItems((long) layout.getWidth() * layout.getHeight());
+			return renderer.render(layout);
+		}
+	}
+
+	/**
+	 * @return File the results of an output are written to: its name with .txt appended, so outputs differing only in
+	 * their extension (cloud.png, cloud.svg) don't share one
+	 */
+	static File resultsFile(File output) {
+		return new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".txt");
+	}
+
+	/**
+	 * Writes one tab separated line per job: manifest line, status, attempts, milliseconds, source, output, error.
+	 * @param jobs - Jobs run
+	 * @param file - Status file, replaced if it exists
+	 * @throws IOException
+	 * Complexity: O(J)
+	 */
+	public static void writeStatus(List<Job> jobs, File file) throws IOException {
+		try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+			out.write("# line\tstatus\tattempts\tmillis\tsource\toutput\terror\n");
+			for (Job job : jobs) {
+				out.write(job.line + SEPARATOR + job.getStatus() + SEPARATOR + job.getAttempts() + SEPARATOR
+						+ job.getElapsedMillis() + SEPARATOR + job.source + SEPARATOR
+						+ (job.output == null ? "" : job.output.getPath()) + SEPARATOR
+						+ (job.getError() == null ? "" : job.getError().replace('\t', ' ').replace('\n', ' ')) + "\n");
+			}
+		}
+	}
+
+	private static void report(Job job) {
+		if (job.getStatus() == Status.SUCCEEDED) {
+			System.out.println("[OK] line " + job.line + ": " + job.source + " -> " + job.output + " ("
+					+ job.getAttempts() + " attempt(s), " + job.getElapsedMillis() + " ms)");
+		} else {
+			System.out.println("[FAILED] line " + job.line + ": " + job.source + " (" + job.getAttempts()
+					+ " attempt(s)): " + job.getError());
+		}
+	}
+
+	private static Job take(CompletionService<Job> done) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return done.take().get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					// attempt catches everything a job throws, only an Error gets here
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return False if interrupted while waiting
+	 */
+	private static boolean pause(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * One line of the manifest and how its run went. The status fields are written by the worker running it and
+	 * are volatile so they can be read from any thread.
+	 */
+	public static final class Job {
+
+		private final int line;
+		private final String source;
+		private final File ignoreWords;
+		private final int words;
+		private final File output;
+		private volatile Status status = Status.PENDING;
+		private volatile int attempts;
+		private volatile long elapsedMillis;
+		private volatile String error;
+		private volatile PipelineMetrics metrics;
+
+		/**
+		 * @param line - Line of the manifest, for reporting
+		 * @param source - URL, directory, glob or text file to analyse
+		 * @param ignoreWords - Ignore words file, null for the default ignorewords.txt
+		 * @param words - Number of words in the cloud, at least 1
+		 * @param output - Image to write, SVG if it ends .svg, PNG otherwise
+		 */
+		public Job(int line, String source, File ignoreWords, int words, File output) {
+			if (words < 1) {
+				throw new IllegalArgumentException("Number of words must be at least 1: " + words);
+			}
+			this.line = line;
+			this.source = source;
+			this.ignoreWords = ignoreWords;
+			this.words = words;
+			this.output = output;
+		}
+
+		private Job(int line, String text, String error) {
+			this.line = line;
+			this.source = text;
+			this.ignoreWords = null;
+			this.words = 0;
+			this.output = null;
+			this.status = Status.FAILED;
+			this.error = error;
+		}
+
+		/**
+		 * @return The job on a manifest line, or a FAILED job saying why the line couldn't be read
+		 */
+		static Job parse(int number, String text) {
+			String[] fields = text.split(SEPARATOR, -1);
+			if (fields.length != 4) {
+				return new Job(number, text.trim(), "Expected 4 tab separated fields, found " + fields.length);
+			}
+			String source = fields[0].trim();
+			String ignore = fields[1].trim();
+			String words = fields[2].trim();
+			String output = fields[3].trim();
+			if (source.isEmpty() || output.isEmpty()) {
+				return new Job(number, text.trim(), "Source and output are required");
+			}
+			try {
+				return new Job(number, source, ignore.isEmpty() || ignore.equals("-") ? null : new File(ignore),
+						words.isEmpty() ? DEFAULT_WORDS : Integer.parseInt(words), new File(output));
+			} catch (IllegalArgumentException e) {
+				return new Job(number, source, "Bad number of words: " + words);
+			}
+		}
+
+		/**
+		 * @return Line of the manifest the job is on
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * @return Where the job is up to
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Attempts made so far
+		 */
+		public int getAttempts() {
+			return attempts;
+		}
+
+		/**
+		 * @return Time from the first attempt starting to the last ending, retry delays included
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * @return Why the last attempt failed, null if it didn't
+		 */
+		public String getError() {
+			return error;
+		}
+
+		/**
+		 * @return Metrics of the attempt that succeeded, null until one has
+		 */
+		public PipelineMetrics getMetrics() {
+			return metrics;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package ie.gmit.dip;
+
+/**
+ *
+ * @author Conor Timlin
+ * Spatial index of the words already placed in a layout, answering whether a candidate WordShape at a given position
+ * would overlap any of them. Shapes that only touch along an edge don't overlap, as with Rectangle2D.intersects.
+ * Positions are the top left corner of the shape, in whole pixels.
+ *
+ */
+
+public interface CollisionIndex {
+
+	/**
+	 * @param shape - Candidate shape
+	 * @param x - Left edge of the candidate
+	 * @param y - Top edge of the candidate
+	 * @return 0 if the shape overlaps nothing added so far, otherwise a distance it can be moved by less than in any
+	 * direction and still overlap, which lets a search skip ahead (1 if the index can't tell)
+	 */
+	double overlap(WordShape shape, int x, int y);
+
+	/**
+	 * @param shape - Candidate shape
+	 * @param x - Left edge of the candidate
+	 * @param y - Top edge of the candidate
+	 * @return True if the shape overlaps anything added so far
+	 */
+	default boolean collides(WordShape shape, int x, int y) {
+		return overlap(shape, x, y) > 0;
+	}
+
+	/**
+	 * Adds the shape of a placed word
+	 * @param shape - Shape of the word
+	 * @param x - Left edge of the shape
+	 * @param y - Top edge of the shape
+	 */
+	void add(WordShape shape, int x, int y);
+}
@@ -0,0 +1,371 @@
+package ie.gmit.dip;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Conor Timlin
+ * Up to 256 colours (with alpha) that the pixels of an image are written as, for palette-indexed PNGs. An image
+ * that already has 256 colours or fewer keeps them exactly; a word cloud, whose anti-aliased edges blend every word
+ * colour through every level of alpha, usually has thousands and is reduced by median cut: the colours, weighted by
+ * how many pixels have them, are split in two along their widest channel until there are 256 groups, each then
+ * drawn as its average. Pixels map to the nearest entry, measured on premultiplied colour so faint edge pixels
+ * don't pull solid colours apart.
+ *
+ * Every pixel with no alpha is the same transparent colour. Lookups are thread safe once built.
+ *
+ */
+
+public final class ColourPalette {
+
+	/**
+	 * @param MAX_COLOURS - Largest palette a PNG can hold
+	 * @param colours - ARGB of each entry, entries with alpha first so tRNS can stop early
+	 * @param lookup - Every colour of the image and the entry it maps to
+	 */
+	public static final int MAX_COLOURS = 256;
+
+	private final int[] colours;
+	private final ColourTable lookup;
+
+	private ColourPalette(int[] colours, ColourTable lookup) {
+		this.colours = colours;
+		this.lookup = lookup;
+	}
+
+	/**
+	 * @param image - Image to take the colours of
+	 * @return Palette of the image's exact colours, or null if it has more than MAX_COLOURS
+	 * Complexity: O(W H) - For the W x H pixels
+	 */
+	public static ColourPalette exact(BufferedImage image) {
+		ColourTable histogram = histogram(image);
+		return histogram.size() <= MAX_COLOURS ? exact(histogram) : null;
+	}
+
+	/**
+	 * @param image - Image to take the colours of
+	 * @return Palette of the image's exact colours if it has at most MAX_COLOURS, otherwise reduced by median cut
+	 * Complexity: O(W H + D (log D + MAX_COLOURS)) - For W x H pixels with D distinct colours
+	 */
+	public static ColourPalette quantised(BufferedImage image) {
+		ColourTable histogram = histogram(image);
+		return histogram.size() <= MAX_COLOURS ? exact(histogram) : medianCut(histogram);
+	}
+
+	/**
+	 * @return Number of entries, 1 to MAX_COLOURS
+	 */
+	public int size() {
+		return colours.length;
+	}
+
+	/**
+	 * @param i - Entry, 0 to size() - 1
+	 * @return ARGB of the entry
+	 */
+	public int colour(int i) {
+		return colours[i];
+	}
+
+	/**
+	 * @param argb - Colour of a pixel of the image the palette was built from
+	 * @return Entry the colour is written as
+	 * Complexity: O(1) expected
+	 */
+	public int index(int argb) {
+		int entry = lookup.get(normalise(argb));
+		if (entry < 0) {
+			throw new IllegalArgumentException("Colour not in the image: " + Integer.toHexString(argb));
+		}
+		return entry;
+	}
+
+	/**
+	 * @return Body of a PNG PLTE chunk, RGB of each entry
+	 */
+	byte[] plte() {
+		byte[] rgb = new byte[colours.length * 3];
+		for (int i = 0; i < colours.length; i++) {
+			rgb[i * 3] = (byte) (colours[i] >>> 16);
+			rgb[i * 3 + 1] = (byte) (colours[i] >>> 8);
+			rgb[i * 3 + 2] = (byte) colours[i];
+		}
+		return rgb;
+	}
+
+	/**
+	 * @return Body of a PNG tRNS chunk, alpha of each entry up to the last that isn't opaque, empty if all are
+	 */
+	byte[] trns() {
+		int length = 0;
+		while (length < colours.length && colours[length] >>> 24 != 0xFF) {
+			length++;
+		}
+		byte[] alpha = new byte[length];
+		for (int i = 0; i < length; i++) {
+			alpha[i] = (byte) (colours[i] >>> 24);
+		}
+		return alpha;
+	}
+
+	private static ColourTable histogram(BufferedImage image) {
+		ColourTable histogram = new ColourTable();
+		int[] row = new int[image.getWidth()];
+		for (int y = 0; y < image.getHeight(); y++) {
+			image.getRGB(0, y, row.length, 1, row, 0, row.length);
+			for (int argb : row) {
+				histogram.add(normalise(argb), 1);
+			}
+		}
+		return histogram;
+	}
+
+	private static ColourPalette exact(ColourTable histogram) {
+		int[] found = sortByAlpha(histogram.keys());
+		ColourTable lookup = new ColourTable();
+		for (int i = 0; i < found.length; i++) {
+			lookup.add(found[i], i);
+		}
+		return new ColourPalette(found, lookup);
+	}
+
+	/**
+	 * Splits the weighted colours into MAX_COLOURS boxes, each time halving (by weight) the box with the widest
+	 * channel along that channel, then maps every colour to its nearest box average.
+	 */
+	private static ColourPalette medianCut(ColourTable histogram) {
+		int[] found = histogram.keys();
+		long[] weights = new long[found.length];
+		for (int i = 0; i < found.length; i++) {
+			weights[i] = histogram.get(found[i]);
+		}
+		// Boxes are ranges [starts[b], ends[b]) of found, reordered as they are split
+		int[] starts = new int[MAX_COLOURS];
+		int[] ends = new int[MAX_COLOURS];
+		ends[0] = found.length;
+		int boxes = 1;
+		while (boxes < MAX_COLOURS) {
+			int widest = -1;
+			int widestChannel = 0;
+			int widestRange = 0;
+			for (int b = 0; b < boxes; b++) {
+				if (ends[b] - starts[b] < 2) {
+					continue;
+				}
+				for (int shift = 0; shift < 32; shift += 8) {
+					int range = range(found, starts[b], ends[b], shift);
+					if (range > widestRange) {
+						widest = b;
+						widestChannel = shift;
+						widestRange = range;
+					}
+				}
+			}
+			if (widest < 0) {
+				break;
+			}
+			int middle = split(found, weights, starts[widest], ends[widest], widestChannel);
+			starts[boxes] = middle;
+			ends[boxes] = ends[widest];
+			ends[widest] = middle;
+			boxes++;
+		}
+
+		int[] entries = new int[boxes];
+		for (int b = 0; b < boxes; b++) {
+			entries[b] = average(found, weights, starts[b], ends[b]);
+		}
+		entries = sortByAlpha(entries);
+		ColourTable lookup = new ColourTable();
+		for (int colour : found) {
+			lookup.add(colour, nearest(entries, colour));
+		}
+		return new ColourPalette(entries, lookup);
+	}
+
+	private static int range(int[] colours, int start, int end, int shift) {
+		int min = 255;
+		int max = 0;
+		for (int i = start; i < end; i++) {
+			int channel = (colours[i] >>> shift) & 0xFF;
+			min = Math.min(min, channel);
+			max = Math.max(max, channel);
+		}
+		return max - min;
+	}
+
+	/**
+	 * Sorts a box by one channel and returns where its weight is halved, leaving at least one colour either side
+	 */
+	private static int split(int[] colours, long[] weights, int start, int end, int shift) {
+		long[] keys = new long[end - start];
+		for (int i = start; i < end; i++) {
+			keys[i - start] = (long) ((colours[i] >>> shift) & 0xFF) << 32 | (i - start);
+		}
+		Arrays.sort(keys);
+		int[] sortedColours = new int[keys.length];
+		long[] sortedWeights = new long[keys.length];
+		long total = 0;
+		for (int i = 0; i < keys.length; i++) {
+			int from = start + (int) keys[i];
+			sortedColours[i] = colours[from];
+			sortedWeights[i] = weights[from];
+			total += weights[from];
+		}
+		System.arraycopy(sortedColours, 0, colours, start, keys.length);
+		System.arraycopy(sortedWeights, 0, weights, start, keys.length);
+		long half = 0;
+		int middle = start;
+		while (middle < end - 1 && half + weights[middle] <= total / 2) {
+			half += weights[middle++];
+		}
+		return Math.max(middle, start + 1);
+	}
+
+	private static int average(int[] colours, long[] weights, int start, int end) {
+		long total = 0;
+		long[] sums = new long[4];
+		for (int i = start; i < end; i++) {
+			for (int c = 0; c < 4; c++) {
+				sums[c] += ((colours[i] >>> (c * 8)) & 0xFF) * weights[i];
+			}
+			total += weights[i];
+		}
+		int argb = 0;
+		for (int c = 0; c < 4; c++) {
+			argb |= (int) ((sums[c] + total / 2) / total) << (c * 8);
+		}
+		return normalise(argb);
+	}
+
+	/**
+	 * Complexity: O(n) - For the n entries
+	 */
+	private static int nearest(int[] entries, int colour) {
+		int best = 0;
+		long bestDistance = Long.MAX_VALUE;
+		for (int i = 0; i < entries.length; i++) {
+			long distance = distance(entries[i], colour);
+			if (distance < bestDistance) {
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Squared distance between two colours premultiplied by their alpha, plus that of the alphas
+	 */
+	private static long distance(int a, int b) {
+		int alphaA = a >>> 24;
+		int alphaB = b >>> 24;
+		long sum = (long) (alphaA - alphaB) * (alphaA - alphaB);
+		for (int shift = 0; shift < 24; shift += 8) {
+			int channelA = ((a >>> shift) & 0xFF) * alphaA / 255;
+			int channelB = ((b >>> shift) & 0xFF) * alphaB / 255;
+			sum += (long) (channelA - channelB) * (channelA - channelB);
+		}
+		return sum;
+	}
+
+	/**
+	 * Orders colours so those with some transparency come first, fully transparent leading
+	 */
+	private static int[] sortByAlpha(int[] colours) {
+		long[] keys = new long[colours.length];
+		for (int i = 0; i < colours.length; i++) {
+			keys[i] = (long) (colours[i] >>> 24) << 32 | (colours[i] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(keys);
+		int[] sorted = new int[colours.length];
+		for (int i = 0; i < keys.length; i++) {
+			sorted[i] = (int) keys[i];
+		}
+		return sorted;
+	}
+
+	private static int normalise(int argb) {
+		return argb >>> 24 == 0 ? 0 : argb;
+	}
+
+	/**
+	 * Open addressing map of ARGB colours to non-negative ints, without boxing: the millions of pixels of a large
+	 * image go through it
+	 */
+	private static final class ColourTable {
+		private int[] keys = new int[1024];
+		private int[] values = new int[1024];
+		private boolean[] used = new boolean[1024];
+		private int size;
+
+		private int size() {
+			return size;
+		}
+
+		/**
+		 * Adds value to the colour's value, starting from 0
+		 */
+		private void add(int colour, int value) {
+			int slot = slot(colour);
+			if (!used[slot]) {
+				used[slot] = true;
+				keys[slot] = colour;
+				size++;
+				if (size * 2 > keys.length) {
+					values[slot] = value;
+					grow();
+					return;
+				}
+			}
+			values[slot] += value;
+		}
+
+		/**
+		 * @return The colour's value, -1 if absent
+		 */
+		private int get(int colour) {
+			int slot = slot(colour);
+			return used[slot] ? values[slot] : -1;
+		}
+
+		private int[] keys() {
+			int[] found = new int[size];
+			int n = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (used[i]) {
+					found[n++] = keys[i];
+				}
+			}
+			return found;
+		}
+
+		private int slot(int colour) {
+			int mask = keys.length - 1;
+			int slot = (colour * 0x9E3779B9 >>> 7) & mask;
+			while (used[slot] && keys[slot] != colour) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			int[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new int[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			used = new boolean[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i]) {
+					int slot = slot(oldKeys[i]);
+					used[slot] = true;
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package ie.gmit.dip;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Conor Timlin
+ * Impl Class of Abstract Parser class for a whole corpus of documents. The source is a directory, every .txt file under
+ * it is analysed, or a glob pattern such as <i>docs/**&#47;*.md</i>, every file matching it is analysed.
+ *
+ * The tree is walked with a FileVisitor and each file is counted into its own table on an I/O worker (a virtual thread
+ * where the runtime has them, see Workers), with at most maxInFlight files open at once. Each table is merged into the
+ * one frequencyTable as its file finishes, so the whole corpus produces a single word cloud.
+ *
+ */
+
+public class CorpusParser extends Parser {
+
+	/**
+	 * @param DEFAULT_MAX_IN_FLIGHT - Default number of files being read at the same time
+	 * @param GLOB_CHARACTERS - Characters that make a source a glob pattern rather than a directory
+	 * @param maxInFlight - Number of files being read at the same time
+	 * @param filesParsed - Files counted by the last parse
+	 * @param filesFailed - Files that could not be read by the last parse
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+	private static final String GLOB_CHARACTERS = "*?[{";
+
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private int filesParsed;
+	private int filesFailed;
+
+	/**
+	 * Walks the directory or glob and counts every matching file. Files that can't be read are skipped and counted
+	 * in getFilesFailed, the rest still make up the cloud.
+	 * @param source - Directory path, or a glob pattern of files
+	 * @throws IOException if the tree itself can't be walked
+	 * Complexity: O(N) - Where N is the total size of the corpus, spread over the workers
+	 */
+	@Override
+	public void parse(String source) throws IOException {
+		Path base = globBase(source);
+		// Decided by the glob characters, not by comparing paths, so "docs/" or "./docs" is still a directory
+		PathMatcher matcher = isGlob(source)
+				? FileSystems.getDefault().getPathMatcher("glob:" + source)
+				: path -> path.getFileName().toString().endsWith(".txt");
+		if (!Files.isDirectory(base)) {
+			throw new FileNotFoundException("No such directory: " + base);
+		}
+
+		int permits = maxInFlight;
+		Semaphore inFlight = new Semaphore(permits);
+		AtomicInteger parsed = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		ExecutorService workers = Workers.newIoExecutor("corpus-parser");
+		try {
+			Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+					// A glob with no directory part is walked from ".", whose "./" prefix the pattern doesn't have
+					Path candidate = base.toString().equals(".") ? base.relativize(file) : file;
+					if (attributes.isRegularFile() && matcher.matches(candidate)) {
+						acquire(inFlight, 1);
+						workers.execute(() -> {
+							try {
+								mergeCounts(countFile(file.toFile()));
+								parsed.incrementAndGet();
+							} catch (IOException | RuntimeException e) {
+								failed.incrementAndGet();
+							} finally {
+								inFlight.release();
+							}
+						});
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					failed.incrementAndGet();
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} finally {
+			// Every permit back means every submitted file has finished
+			acquire(inFlight, permits);
+			workers.shutdown();
+		}
+
+		filesParsed = parsed.get();
+		filesFailed = failed.get();
+		if (filesParsed + filesFailed == 0) {
+			System.out.println(ConsoleColour.YELLOW);
+			System.out.println("[WARNING] No files matched " + source);
+			System.out.println(ConsoleColour.RESET);
+		}
+		if (filesFailed > 0) {
+			System.out.println(ConsoleColour.YELLOW);
+			System.out.println("[WARNING] " + filesFailed + " file(s) could not be read and were skipped");
+			System.out.println(ConsoleColour.RESET);
+		}
+	}
+
+	/**
+	 * Counts one document into a table of its own.
+	 * @param file - Document to count
+	 * @return Table of the document's counts
+	 * @throws IOException
+	 * Complexity: O(N) - Where N is the size of the file
+	 */
+	private WordCountTable countFile(File file) throws IOException {
+		WordCountTable counts = new WordCountTable();
+		try (InputStream in = new FileInputStream(file)) {
+			addToTable(in, counts);
+		}
+		return counts;
+	}
+
+	/**
+	 * @param source - Directory path or glob pattern
+	 * @return True if the source contains a glob character, i.e. is a pattern rather than a directory
+	 * Complexity: O(L) - Where L is the length of the source
+	 */
+	static boolean isGlob(String source) {
+		for (int i = 0; i < source.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(source.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the directory to start walking from: the source itself, or for a glob the part of the path before the
+	 * first name containing a glob character.
+	 * @param source - Directory path or glob pattern
+	 * @return Directory to walk
+	 * Complexity: O(L) - Where L is the length of the source
+	 */
+	static Path globBase(String source) {
+		int firstGlob = -1;
+		for (int i = 0; i < source.length() && firstGlob < 0; i++) {
+			if (GLOB_CHARACTERS.indexOf(source.charAt(i)) >= 0) {
+				firstGlob = i;
+			}
+		}
+		if (firstGlob < 0) {
+			return Paths.get(source);
+		}
+		int separator = Math.max(source.lastIndexOf('/', firstGlob), source.lastIndexOf(File.separatorChar, firstGlob));
+		if (separator < 0) {
+			return Paths.get(".");
+		}
+		return Paths.get(separator == 0 ? source.substring(0, 1) : source.substring(0, separator));
+	}
+
+	private static void acquire(Semaphore semaphore, int permits) {
+		semaphore.acquireUninterruptibly(permits);
+	}
+
+	/**
+	 * Sets how many files may be open and being counted at the same time.
+	 * @param maxInFlight - Bound on concurrent files, at least 1
+	 * Complexity: O(1)
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * @return Number of files counted by the last parse
+	 */
+	public int getFilesParsed() {
+		return filesParsed;
+	}
+
+	/**
+	 * @return Number of files the last parse had to skip
+	 */
+	public int getFilesFailed() {
+		return filesFailed;
+	}
+
+	/**
+	 * Method to initialise ignorewords file. Invokes superclass' addtoIgnoreWords method
+	 * @param source - Text file of common words to ignore in Word Cloud
+	 * Complexity: O(1) - Simple method invocation
+	 */
+	@Override
+	public void initialiseIgnoreWords(File source) throws IOException {
+		super.addToIgnoreWords(source);
+	}
+
+	/**
+	 * Overloaded method to intialiseIgnoreWords, uses the default ignorewords.txt
+	 * Complexity: O(1) - Assigning file to known value and simple method invocation
+	 */
+	@Override
+	public void initialiseIgnoreWords() throws IOException {
+		super.addToIgnoreWords(new File("./ignorewords.txt"));
+	}
+}
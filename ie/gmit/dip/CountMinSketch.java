@@ -0,0 +1,134 @@
+package ie.gmit.dip;
+
+/**
+ *
+ * @author Conor Timlin
+ * Count-Min Sketch of word frequencies in a fixed amount of memory. Each word bumps one counter in each of depth rows;
+ * its estimate is the smallest of those counters, which never undercounts and, with probability 1 - e^-depth, overcounts
+ * by at most e / width of the total number of words added. Uses conservative update (only counters at the current
+ * minimum are raised), which keeps the same guarantee with a noticeably smaller error in practice.
+ *
+ */
+
+public class CountMinSketch {
+
+	/**
+	 * @param table - depth rows of width counters, row after row
+	 * @param width - Counters per row, a power of two
+	 * @param depth - Number of rows
+	 * @param total - Number of words added
+	 */
+	private final long[] table;
+	private final int width;
+	private final int depth;
+	private long total;
+
+	/**
+	 * @param width - Counters per row, rounded up to a power of two
+	 * @param depth - Number of rows (hash functions)
+	 */
+	public CountMinSketch(int width, int depth) {
+		int w = 1;
+		while (w < width) {
+			w <<= 1;
+		}
+		this.width = w;
+		this.depth = Math.max(1, depth);
+		this.table = new long[this.width * this.depth];
+	}
+
+	/**
+	 * Adds one occurrence of a word
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @return The word's new estimate
+	 * Complexity: O(L + D) - Where L is the length of the word and D the depth
+	 */
+	public long add(byte[] word, int offset, int length) {
+		return add(word, offset, length, 1);
+	}
+
+	/**
+	 * Adds several occurrences of a word at once
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @param count - Number of occurrences
+	 * @return The word's new estimate
+	 * Complexity: O(L + D)
+	 */
+	public long add(byte[] word, int offset, int length, int count) {
+		long hash = IgnoreWordFilter.hash(word, offset, length);
+		long min = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			min = Math.min(min, table[index(hash, row)]);
+		}
+		long estimate = min + count;
+		for (int row = 0; row < depth; row++) {
+			int i = index(hash, row);
+			if (table[i] < estimate) {
+				table[i] = estimate;
+			}
+		}
+		total += count;
+		return estimate;
+	}
+
+	/**
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @return Estimated count, never less than the true count
+	 * Complexity: O(L + D)
+	 */
+	public long estimate(byte[] word, int offset, int length) {
+		long hash = IgnoreWordFilter.hash(word, offset, length);
+		long min = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			min = Math.min(min, table[index(hash, row)]);
+		}
+		return min;
+	}
+
+	/**
+	 * @return Number of words added
+	 */
+	public long total() {
+		return total;
+	}
+
+	/**
+	 * @return Relative error bound: an estimate exceeds the true count by at most epsilon() * total()
+	 */
+	public double epsilon() {
+		return Math.E / width;
+	}
+
+	/**
+	 * @return Probability that an estimate breaks the epsilon bound
+	 */
+	public double delta() {
+		return Math.exp(-depth);
+	}
+
+	/**
+	 * @return Counters per row
+	 */
+	public int width() {
+		return width;
+	}
+
+	/**
+	 * @return Number of rows
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	private int index(long hash, int row) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		return row * width + ((h1 + row * h2) & (width - 1));
+	}
+}
@@ -13,11 +13,12 @@ public class EntryComparator implements Comparator<Entry<String, Integer>> {
 	
 	/**
 	 * Compares Integer values of two EntrySet objects. In case objects are equal they are sorted based on String key.
+	 * Values are unboxed before the equality check, comparing the Integer objects themselves only worked inside the Integer cache (-128 to 127).
 	 * Complexity: O(1) - Comparing two values. 
 	 */
 	@Override
 	public int compare(Entry<String, Integer> o1, Entry<String, Integer> o2) {
-		if ((o1.getValue()) == (o2.getValue()))
+		if ((o1.getValue().intValue()) == (o2.getValue().intValue()))
 			return o1.getKey().compareTo(o2.getKey());
 		else if ((o1.getValue()) > (o2.getValue()))
 			return -1;
@@ -2,6 +2,7 @@ package ie.gmit.dip;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -64,20 +65,65 @@ public class FileOutputWriter {
 	/**
 	 * 
 	 * @param results ArrayList of Entry<String,Integer> containing the max words the user wants to display in their word cloud
+	 * Approximate results (HeavyHitters.Estimate) are written with their error and the guarantees they came with.
+	 * A summary of the PipelineMetrics follows the words: the time of each stage run so far and what they counted.
+	 * WordCloud calls this once its export is written, so the encode is in it.
 	 * Complexity: O(N) where N is results.size() (I.E. MAX_WORDS_TO_DISPLAY)
 	 * @throws IOException
 	 */
 	public static void writeResults(ArrayList<Entry<String, Integer>> results) throws IOException {
-		BufferedWriter outWriter = (new BufferedWriter(new FileWriter("./wordcloudresults.txt")));
+		writeResults(results, new File("./wordcloudresults.txt"), PipelineMetrics.global());
+		System.out.println(ConsoleColour.BLUE);
+		System.out.println("Saved Results of your Word Cloud locally!");
+		System.out.println(ConsoleColour.RESET);
+	}
+
+	/**
+	 * Overloaded method writing the results to the given file with the given metrics, and nothing to the console,
+	 * e.g. for each job of a batch (see BatchRunner).
+	 * @param results ArrayList of Entry<String,Integer> of the words in the word cloud
+	 * @param file - File the results are written to, replaced if it exists
+	 * @param metrics - Metrics summarised after the words
+	 * Complexity: O(N) where N is results.size()
+	 * @throws IOException
+	 */
+	public static void writeResults(ArrayList<Entry<String, Integer>> results, File file, PipelineMetrics metrics)
+			throws IOException {
+		BufferedWriter outWriter = (new BufferedWriter(new FileWriter(file)));
 
+		String guarantee = null;
 		for (int i = 0; i < results.size(); i++) {
-			outWriter.write("[" + results.get(i).getKey() + " : " + results.get(i).getValue().toString() + "]");
+			Entry<String, Integer> result = results.get(i);
+			if (result instanceof HeavyHitters.Estimate) {
+				HeavyHitters.Estimate estimate = (HeavyHitters.Estimate) result;
+				outWriter.write("[" + result.getKey() + " : " + result.getValue().toString() + " +/-" + estimate.getError() + "]");
+				guarantee = estimate.getGuarantee();
+			} else {
+				outWriter.write("[" + result.getKey() + " : " + result.getValue().toString() + "]");
+			}
 			outWriter.append("\n");
 		}
+		if (guarantee != null) {
+			outWriter.append(guarantee).append("\n");
+			outWriter.append("Counts are upper bounds, each true count lies between count - error and count.\n");
+		}
+		outWriter.append("\n").append(metrics.summary()).append("\n");
 		outWriter.append(LocalDateTime.now().toString());
 		outWriter.close();
+	}
+
+	/**
+	 * Saves the full frequency table of a parser, every word and not only those in the cloud, in the binary form of
+	 * MappedFrequencyTable so it can be reloaded or merged with other saved tables (Menu option 9).
+	 * @param parser - Parser whose counts are saved, in exact mode
+	 * @param file - File the table is written to, replaced if it exists
+	 * Complexity: O(V log V) - Where V is the number of distinct words, see Parser.saveTable
+	 * @throws IOException
+	 */
+	public static void writeTable(Parser parser, File file) throws IOException {
+		parser.saveTable(file);
 		System.out.println(ConsoleColour.BLUE);
-		System.out.println("Saved Results of your Word Cloud locally!");
+		System.out.println("Saved all " + parser.getWordCountTable().size() + " word counts to " + file);
 		System.out.println(ConsoleColour.RESET);
 	}
 
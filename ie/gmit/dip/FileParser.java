@@ -1,10 +1,21 @@
 package ie.gmit.dip;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  *
@@ -12,19 +23,242 @@ import java.util.TreeSet;
  * Impl Class of Abstract Parser class. Provides small amount of additional refining of behaviours of Abstract class Parser, which it extends.
  * (In good place to be expanded upon)
  * 
+ * Large files are read in mapped mode: the file is memory mapped with FileChannel.map, split into chunks at word boundaries
+ * and each chunk is counted on the fork-join pool before the per-chunk tables are merged into the frequencyTable.
+ * Given a ParseCache (off by default, see setCache), counts are kept in it so parsing an unchanged file again with the
+ * same ignore words just loads them.
+ *
  */
 
 public class FileParser extends Parser {
 
+	/**
+	 * @param MAPPED_THRESHOLD - Files smaller than this are simply streamed on the calling thread
+	 * @param MIN_CHUNK_SIZE - Smallest chunk handed to a worker
+	 * @param MAX_CHUNK_SIZE - Largest chunk handed to a worker (and largest single mapping)
+	 * @param mappedMode - True if large files should be parsed in mapped, chunk-parallel mode
+	 * @param cache - Cache of previously parsed files, null (the default) to always parse
+	 */
+	private static final long MAPPED_THRESHOLD = 4L << 20;
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	private static final long MAX_CHUNK_SIZE = 64L << 20;
+
+	private boolean mappedMode = true;
+	private ParseCache cache;
+
 	/**
 	 * Parse method accepts string source for WordCloud analysis. Delegates to its parent, abstract class Parser and provides DataSource enum
 	 * to indicate how to process the source. (More concrete implementation should have been here)
+	 * Files of MAPPED_THRESHOLD bytes or more are handed to parseMapped instead when mapped mode is on.
+	 * When the cache holds this version of the file under the current ignore words its counts are loaded instead,
+	 * otherwise the file is counted on its own and the result stored (unless the file is racy, see ParseCache) before
+	 * being merged into the frequencyTable. The cache key needs only the file's attributes, so the file is read once.
+	 * In approximate mode the file is simply streamed into the parser's HeavyHitters.
 	 * @param source - String containing source to a text file
-	 * Complexity: O(1) - Simple method invocation
+	 * Complexity: O(N) - Where N is the size of the file, O(V) on a cache hit where V is the number of distinct words
 	 */
 	@Override
 	public void parse(String source) throws IOException {
-		super.addToHashMap(source, DataSource.FILE);
+		if (isApproximate()) {
+			super.addToHashMap(source, DataSource.FILE);
+			return;
+		}
+		File file = new File(source);
+		if (cache == null) {
+			countFile(file, frequencyTable);
+			return;
+		}
+
+		String key = cache.keyFor(file, getIgnoreFilter());
+		WordCountTable counts = cache.load(key);
+		if (counts == null) {
+			counts = new WordCountTable();
+			countFile(file, counts);
+			try {
+				if (!ParseCache.isRacy(file)) {
+					cache.store(key, counts);
+				}
+			} catch (IOException e) {
+				System.out.println(ConsoleColour.YELLOW);
+				System.out.println("[WARNING] Could not cache results: " + e.getMessage());
+				System.out.println(ConsoleColour.RESET);
+			}
+		}
+		mergeCounts(counts);
+	}
+
+	/**
+	 * Counts a file into a table, mapped and in parallel if it is large enough, otherwise streamed.
+	 * @param file - Text file to analyse
+	 * @param table - Table the words are counted into
+	 * @throws IOException
+	 * Complexity: O(N) - Where N is the size of the file
+	 */
+	private void countFile(File file, WordCountTable table) throws IOException {
+		if (mappedMode && file.length() >= MAPPED_THRESHOLD) {
+			table.merge(countMapped(file));
+		} else {
+			try (InputStream in = new FileInputStream(file)) {
+				addToTable(in, table);
+			}
+		}
+	}
+
+	/**
+	 * Memory maps the file and counts it in parallel (see countMapped), merging the result into the frequencyTable.
+	 * Bypasses the cache.
+	 * @param file - Text file to analyse
+	 * @throws IOException
+	 * Complexity: O(N / P) - Where N is the size of the file and P the number of cores, plus O(V) merging the vocabularies
+	 */
+	public void parseMapped(File file) throws IOException {
+		mergeCounts(countMapped(file));
+	}
+
+	/**
+	 * Memory maps the file, splits it into chunks that end on a word break and counts each chunk in its own table on the
+	 * common fork-join pool. The chunk tables are merged pairwise as the tasks join.
+	 * Chunks only ever split between words, so the counts are the same as parsing the file line by line.
+	 * @param file - Text file to analyse
+	 * @return Table of the file's counts
+	 * @throws IOException
+	 * Complexity: O(N / P) - Where N is the size of the file and P the number of cores, plus O(V) merging the vocabularies
+	 */
+	private WordCountTable countMapped(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				PipelineMetrics.Timer timer = getMetrics().time(PipelineMetrics.Stage.TOKENIZE, file.getName())) {
+			timer.setItems(channel.size());
+			long[] boundaries = chunkBoundaries(channel);
+			try {
+				return ForkJoinPool.commonPool().invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1));
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	/**
+	 * Works out where each chunk starts. Chunks are sized so every core gets a few of them, then each boundary is pushed
+	 * forward to the next word break so no word is cut in two.
+	 * @param channel - Channel of the file being parsed
+	 * @return Offsets of each chunk start, followed by the file size
+	 * @throws IOException
+	 * Complexity: O(C) - Where C is the number of chunks, plus the length of any word straddling a boundary
+	 */
+	private static long[] chunkBoundaries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = size / (ForkJoinPool.getCommonPoolParallelism() * 4L);
+		chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+		List<Long> boundaries = new ArrayList<Long>();
+		long start = 0;
+		while (start < size) {
+			boundaries.add(start);
+			start = start + chunkSize >= size ? size : nextWordBreak(channel, start + chunkSize, size);
+		}
+		boundaries.add(size);
+
+		long[] result = new long[boundaries.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = boundaries.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the first word break at or after a position.
+	 * @param channel - Channel of the file being parsed
+	 * @param position - Where to start looking
+	 * @param size - Size of the file
+	 * @return Offset of the word break, or size if the file ends first
+	 * @throws IOException
+	 * Complexity: O(L) - Where L is the distance to the next word break
+	 */
+	private static long nextWordBreak(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		while (position < size) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (Tokenizer.isWordBreak(probe.get(i) & 0xFF)) {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Fork-join task counting the chunks from lo (inclusive) to hi (exclusive). Splits in half until a single chunk is left,
+	 * which is mapped and tokenized into its own table. The smaller table is merged into the larger on the way back up.
+	 */
+	private class ChunkTask extends RecursiveTask<WordCountTable> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] boundaries;
+		private final int lo;
+		private final int hi;
+
+		ChunkTask(FileChannel channel, long[] boundaries, int lo, int hi) {
+			this.channel = channel;
+			this.boundaries = boundaries;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected WordCountTable compute() {
+			if (hi - lo == 1) {
+				return countChunk();
+			}
+			int mid = (lo + hi) >>> 1;
+			ChunkTask left = new ChunkTask(channel, boundaries, lo, mid);
+			left.fork();
+			WordCountTable right = new ChunkTask(channel, boundaries, mid, hi).compute();
+			WordCountTable joined = left.join();
+
+			WordCountTable into = joined.size() >= right.size() ? joined : right;
+			into.merge(into == joined ? right : joined);
+			return into;
+		}
+
+		private WordCountTable countChunk() {
+			WordCountTable counts = new WordCountTable();
+			long start = boundaries[lo];
+			try {
+				MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, boundaries[hi] - start);
+				Tokenizer tokenizer = newTokenizer(counterFor(counts));
+				tokenizer.feed(chunk);
+				tokenizer.finish();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * Turns mapped mode on or off. When off every file is streamed line by line on the calling thread.
+	 * @param mappedMode - True to parse large files in mapped, chunk-parallel mode
+	 * Complexity: O(1)
+	 */
+	public void setMappedMode(boolean mappedMode) {
+		this.mappedMode = mappedMode;
+	}
+
+	/**
+	 * Sets the cache used to skip re-parsing unchanged files. There is none unless one is set.
+	 * @param cache - ParseCache to use, or null to always parse
+	 * Complexity: O(1)
+	 */
+	public void setCache(ParseCache cache) {
+		this.cache = cache;
 	}
 
 	/** Method to initialise ignorewords file. Converts source string to File and invokes superclass' addtoIgnoreWords method
@@ -47,12 +281,12 @@ public class FileParser extends Parser {
 
 	/**
 	 * SortByWordFrequency Abstracts sorting the frequencyTable and assigning to TreeSet to its parent class
-	 * @param frequencyTable - Hashmap<String,Integer> that will track words(keys) and their Integer values. 
+	 * @param frequencyTable - Map<String,Integer> that will track words(keys) and their Integer values. 
 	 * @param numberOfWords  - Number of words user wishes to track in their word cloud
 	 * @return - Returns sorted TreeSet<Entry<String,Integer> based on frequencyTable and the Supplied EntryComparator
 	 * Complexity: O(1) - Simple Method Invocation
 	 */
-	public TreeSet<Entry<String, Integer>> sortByWordFrequency(HashMap<String, Integer> frequencyTable,
+	public TreeSet<Entry<String, Integer>> sortByWordFrequency(Map<String, Integer> frequencyTable,
 			int numberOfWords) {
 		return super.sortByWordFrequency(frequencyTable);
 	}
@@ -3,6 +3,9 @@ package ie.gmit.dip;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 /**
@@ -48,10 +51,10 @@ public class FileSearcher {
 		String directory = sc.nextLine().trim(); // Get directory path
 
 		System.out.println(ConsoleColour.BLUE);
-		System.out.println("Enter Output image filename: ");
+		System.out.println("Enter Output image filename (ending .svg for a vector image): ");
 		System.out.println(ConsoleColour.RESET);
 
-		String userFileName = sc.nextLine().trim() + ".png";
+		String userFileName = outputFileName(sc.nextLine().trim());
 		WordCloud.setOutputFileName(userFileName);
 
 		String path = directory + "//" + fileName;
@@ -75,52 +78,174 @@ public class FileSearcher {
 	}// End enterFile
 
 	/**
-	 * Parses user input for URL to analyse for word cloud. Provides decent error detection. 
-	 * In case URL can not be found a null URL is returned and handled
-	 * @return Returns URL from user input
-	 * @throws MalformedURLException
-	 * Complexity O(1) - Simple print statments and user input
+	 * Parses user input for one or more URLs, separated by spaces, to analyse together for one word cloud.
+	 * Keeps prompting until every URL entered is well formed.
+	 * @return Returns the URLs from user input, or an empty list if the user backs out
+	 * Complexity O(U) - Where U is the number of URLs entered
 	 */
-	public static URL enterFileURL() throws MalformedURLException {
-		URL url = null;
+	public static List<URL> enterFileURLs() {
+		List<URL> urls = new ArrayList<URL>();
 		boolean loop = true;
-		
-		
 
 		do {
 			System.out.println(ConsoleColour.BLUE);
-			System.out.println("Enter URL, or -1 to exit to menu");
+			System.out.println("Enter one or more URLs separated by spaces, or -1 to exit to menu");
 			System.out.println(ConsoleColour.RESET);
-			try {
 
-				String urlPath = sc.nextLine().trim();
-				if (urlPath.equals("-1")) {
-					break;
+			String line = sc.nextLine().trim();
+			if (line.equals("-1")) {
+				break;
+			}
+			urls.clear();
+			try {
+				for (String urlPath : line.split("\\s+")) {
+					if (!urlPath.isEmpty()) {
+						urls.add(new URL(urlPath));
+					}
 				}
-				url = new URL(urlPath);
-				loop = false;
-
+				loop = urls.isEmpty();
 			} catch (MalformedURLException e) {
 				System.out.println(ConsoleColour.RED);
-				System.out.println("[ERROR] Check your URL and try again");
+				System.out.println("[ERROR] Check your URL and try again: " + e.getMessage());
 				System.out.println(ConsoleColour.RESET);
-
 			}
 		} while (loop);
 		if (loop) {
 			System.out.println(ConsoleColour.RED);
 			System.out.println("Returning to menu");
-			return url = null;
+			System.out.println(ConsoleColour.RESET);
+			urls.clear();
+			return urls;
 		}
 		System.out.println(ConsoleColour.RED);
-		System.out.println("URL found, loading");
+		System.out.println(urls.size() + " URL(s) found, loading");
+		System.out.println(ConsoleColour.RESET);
+		System.out.println(ConsoleColour.BLUE);
+		System.out.println("Enter Output image filename (ending .svg for a vector image): ");
+		System.out.println(ConsoleColour.RESET);
+
+		String userFileName = outputFileName(sc.nextLine().trim());
+		WordCloud.setOutputFileName(userFileName);
+		return urls;
+	}
+
+	/**
+	 * Parses user input for a corpus to analyse: a directory (every .txt file under it is used) or a glob pattern.
+	 * @return Directory path or glob pattern, or null if the user backs out or the directory doesn't exist
+	 * Complexity O(1) - Simple print statments and user input
+	 */
+	public static String enterCorpus() {
+		System.out.println(ConsoleColour.BLUE);
+		System.out.println("Enter Directory or Glob Pattern (e.g. docs/**/*.txt) to Analyse, or -1 to exit to menu");
 		System.out.println(ConsoleColour.RESET);
+
+		String corpus = sc.nextLine().trim();
+		if (corpus.equals("-1")) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("Returning to menu");
+			System.out.println(ConsoleColour.RESET);
+			return null;
+		}
+		if (!CorpusParser.globBase(corpus).toFile().isDirectory()) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("No Such Directory Found!");
+			System.out.println(ConsoleColour.RESET);
+			return null;
+		}
+
+		System.out.println(ConsoleColour.BLUE);
+		System.out.println("Enter Output image filename (ending .svg for a vector image): ");
+		System.out.println(ConsoleColour.RESET);
+
+		String userFileName = outputFileName(sc.nextLine().trim());
+		WordCloud.setOutputFileName(userFileName);
+		return corpus;
+	}
+
+	/**
+	 * Parses user input for one or more saved word count tables, separated by spaces, to merge into one word cloud.
+	 * Keeps prompting until every file entered exists.
+	 * @return The tables from user input, or an empty list if the user backs out
+	 * Complexity O(T) - Where T is the number of tables entered
+	 */
+	public static List<File> enterTables() {
+		List<File> tables = new ArrayList<File>();
+		boolean loop = true;
+
+		do {
+			System.out.println(ConsoleColour.BLUE);
+			System.out.println("Enter one or more saved word count tables (" + MappedFrequencyTable.EXTENSION
+					+ ") separated by spaces, or -1 to exit to menu");
+			System.out.println(ConsoleColour.RESET);
+
+			String line = sc.nextLine().trim();
+			if (line.equals("-1")) {
+				break;
+			}
+			tables.clear();
+			loop = false;
+			for (String path : line.split("\\s+")) {
+				if (path.isEmpty()) {
+					continue;
+				}
+				File table = new File(path);
+				if (!table.isFile()) {
+					System.out.println(ConsoleColour.RED);
+					System.out.println("[ERROR] No such file: " + path);
+					System.out.println(ConsoleColour.RESET);
+					loop = true;
+				}
+				tables.add(table);
+			}
+			loop = loop || tables.isEmpty();
+		} while (loop);
+		if (loop) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("Returning to menu");
+			System.out.println(ConsoleColour.RESET);
+			tables.clear();
+			return tables;
+		}
 		System.out.println(ConsoleColour.BLUE);
-		System.out.println("Enter Output image filename: ");
+		System.out.println("Enter Output image filename (ending .svg for a vector image): ");
 		System.out.println(ConsoleColour.RESET);
 
-		String userFileName = sc.nextLine().trim() + ".png";
+		String userFileName = outputFileName(sc.nextLine().trim());
 		WordCloud.setOutputFileName(userFileName);
-		return url;
+		return tables;
+	}
+
+	/**
+	 * Parses user input for the file to save a full word count table to, adding the extension if it's missing.
+	 * @return File to save the table to, or null if the user backs out
+	 * Complexity O(1) - Simple print statments and user input
+	 */
+	public static File enterTableFile() {
+		System.out.println(ConsoleColour.BLUE);
+		System.out.println("Enter filename to save the word counts to, or -1 to exit to menu");
+		System.out.println(ConsoleColour.RESET);
+
+		String name = sc.nextLine().trim();
+		if (name.equals("-1") || name.isEmpty()) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("Returning to menu");
+			System.out.println(ConsoleColour.RESET);
+			return null;
+		}
+		return new File(MappedFrequencyTable.isTable(name) ? name : name + MappedFrequencyTable.EXTENSION);
+	}
+
+	/**
+	 * Completes the output image name the user typed: names ending in .svg or .png are kept, anything else is
+	 * written as a PNG. Complexity O(1)
+	 * 
+	 * @param name - Name typed by the user
+	 * @return Name of the image file to write
+	 */
+	private static String outputFileName(String name) {
+		if (SvgWriter.isSvg(name) || name.toLowerCase(Locale.ENGLISH).endsWith(".png")) {
+			return name;
+		}
+		return name + ".png";
 	}
 }
@@ -0,0 +1,198 @@
+package ie.gmit.dip;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author Conor Timlin
+ * Bounded cache of the Fonts, FontMetrics and GlyphVectors a word cloud is measured with, keyed by family, style and
+ * size (and text, for glyphs). A cloud only uses a few dozen sizes, so after the first layout the same faces are
+ * found here instead of being derived again, and repeated words get their glyphs back without being shaped again.
+ * Each table keeps its most recently used entries and drops the least recently used once full.
+ *
+ * Metrics and glyphs are measured with the same rendering hints WordCloudRenderer draws with. Thread safe, one cache
+ * can serve every layout of a renderer.
+ *
+ */
+
+public final class FontCache {
+
+	/**
+	 * @param DEFAULT_MAX_FACES - Default number of fonts and metrics kept
+	 * @param DEFAULT_MAX_GLYPHS - Default number of glyph vectors kept
+	 * @param scratch - Graphics the metrics and glyphs are measured with, guarded by this
+	 * @param faces - Font and metrics per family, style and size, least recently used first
+	 * @param glyphs - Glyph vector per family, style, size and text, least recently used first
+	 * @param hits - Lookups of either table found in the cache
+	 * @param misses - Lookups of either table that had to build their entry
+	 */
+	public static final int DEFAULT_MAX_FACES = 256;
+	public static final int DEFAULT_MAX_GLYPHS = 4096;
+
+	private final Graphics2D scratch;
+	private final Map<Key, Face> faces;
+	private final Map<Key, GlyphVector> glyphs;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Font and its metrics, derived together
+	 */
+	private static final class Face {
+		private final Font font;
+		private final FontMetrics metrics;
+
+		private Face(Font font, FontMetrics metrics) {
+			this.font = font;
+			this.metrics = metrics;
+		}
+	}
+
+	/**
+	 * Family, style, size and, for glyphs, the text
+	 */
+	private static final class Key {
+		private final String family;
+		private final int style;
+		private final int size;
+		private final String text;
+
+		private Key(String family, int style, int size, String text) {
+			this.family = family;
+			this.style = style;
+			this.size = size;
+			this.text = text;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return style == other.style && size == other.size && family.equals(other.family)
+					&& (text == null ? other.text == null : text.equals(other.text));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = family.hashCode();
+			hash = 31 * hash + style;
+			hash = 31 * hash + size;
+			return 31 * hash + (text == null ? 0 : text.hashCode());
+		}
+	}
+
+	/**
+	 * Creates a cache with the default bounds
+	 */
+	public FontCache() {
+		this(DEFAULT_MAX_FACES, DEFAULT_MAX_GLYPHS);
+	}
+
+	/**
+	 * @param maxFaces - Number of fonts and metrics kept
+	 * @param maxGlyphs - Number of glyph vectors kept
+	 */
+	public FontCache(int maxFaces, int maxGlyphs) {
+		if (maxFaces < 1 || maxGlyphs < 1) {
+			throw new IllegalArgumentException("Cache bounds must be positive: " + maxFaces + ", " + maxGlyphs);
+		}
+		this.scratch = WordCloudRenderer.createGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+		this.faces = new LinkedHashMap<Key, Face>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Face> eldest) {
+				return size() > maxFaces;
+			}
+		};
+		this.glyphs = new LinkedHashMap<Key, GlyphVector>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, GlyphVector> eldest) {
+				return size() > maxGlyphs;
+			}
+		};
+	}
+
+	/**
+	 * @param family - Font family
+	 * @param style - Font.PLAIN, Font.BOLD, Font.ITALIC or a sum of them
+	 * @param size - Point size
+	 * @return The font, shared, Fonts being immutable
+	 * Complexity: O(1) when cached
+	 */
+	public Font font(String family, int style, int size) {
+		return face(family, style, size).font;
+	}
+
+	/**
+	 * @param family - Font family
+	 * @param style - Font.PLAIN, Font.BOLD, Font.ITALIC or a sum of them
+	 * @param size - Point size
+	 * @return The font's metrics under the renderer's hints
+	 * Complexity: O(1) when cached
+	 */
+	public FontMetrics metrics(String family, int style, int size) {
+		return face(family, style, size).metrics;
+	}
+
+	/**
+	 * @param family - Font family
+	 * @param style - Font.PLAIN, Font.BOLD, Font.ITALIC or a sum of them
+	 * @param size - Point size
+	 * @param text - Text to shape
+	 * @return The text's glyphs with the origin on the baseline, shared so must not be changed
+	 * Complexity: O(1) when cached, O(L) to shape - Where L is the length of the text
+	 */
+	public synchronized GlyphVector glyphs(String family, int style, int size, String text) {
+		Key key = new Key(family, style, size, text);
+		GlyphVector vector = glyphs.get(key);
+		if (vector != null) {
+			hits++;
+			return vector;
+		}
+		misses++;
+		vector = face(family, style, size).font.createGlyphVector(scratch.getFontRenderContext(), text);
+		// Lay out the outline now, so later readers on other threads find it done
+		vector.getOutline();
+		glyphs.put(key, vector);
+		return vector;
+	}
+
+	/**
+	 * @return Lookups found in the cache so far
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return Lookups that had to build their entry so far
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private synchronized Face face(String family, int style, int size) {
+		Key key = new Key(family, style, size, null);
+		Face face = faces.get(key);
+		if (face != null) {
+			hits++;
+			return face;
+		}
+		misses++;
+		Font font = new Font(family, style, size);
+		face = new Face(font, scratch.getFontMetrics(font));
+		faces.put(key, face);
+		return face;
+	}
+}
@@ -0,0 +1,101 @@
+package ie.gmit.dip;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ *
+ * @author Conor Timlin
+ * Font families a word cloud can be drawn in. Enumerating the installed fonts is slow (thousands of files on some
+ * machines), so the system catalogue is built once, the first time it is asked for, and shared from then on.
+ *
+ * Only installed faces that can draw every Latin letter and digit are kept, leaving out symbol, dingbat and CJK-only
+ * fonts that would turn words into boxes or pictures.
+ *
+ */
+
+public final class FontCatalogue {
+
+	/**
+	 * @param LATIN_SAMPLE - Characters a family must be able to display
+	 * @param SYMBOL_NAMES - Name fragments of symbol fonts, which map Latin letters to pictures
+	 * @param families - Families kept, in the order given
+	 */
+	private static final String LATIN_SAMPLE = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final String[] SYMBOL_NAMES = { "symbol", "dingbat", "wingding", "webding", "emoji" };
+
+	private final List<String> families;
+
+	/**
+	 * Holds the system catalogue, built by the class loader on first use
+	 */
+	private static final class SystemCatalogue {
+		private static final FontCatalogue INSTANCE = new FontCatalogue(
+				GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames(Locale.ENGLISH));
+	}
+
+	/**
+	 * @param candidates - Family names to choose from, those not installed or that can't display Latin text are dropped
+	 */
+	public FontCatalogue(String[] candidates) {
+		List<String> kept = new ArrayList<String>(candidates.length);
+		for (String family : candidates) {
+			if (isLatin(family)) {
+				kept.add(family);
+			}
+		}
+		if (kept.isEmpty()) {
+			kept.add(Font.SANS_SERIF);
+		}
+		this.families = Collections.unmodifiableList(kept);
+	}
+
+	/**
+	 * @return Catalogue of the installed fonts, enumerated once per JVM
+	 * Complexity: O(1) after the first call, O(F) for the first - Where F is the number of installed families
+	 */
+	public static FontCatalogue system() {
+		return SystemCatalogue.INSTANCE;
+	}
+
+	/**
+	 * @return Read-only list of the families kept, "SansSerif" alone if none were
+	 */
+	public List<String> getFamilies() {
+		return families;
+	}
+
+	/**
+	 * @return Number of families kept, at least 1
+	 */
+	public int size() {
+		return families.size();
+	}
+
+	/**
+	 * @param i - Position of the family, 0 to size() - 1
+	 * @return The family's name
+	 */
+	public String family(int i) {
+		return families.get(i);
+	}
+
+	/**
+	 * Complexity: O(L) - Where L is the length of LATIN_SAMPLE
+	 */
+	private static boolean isLatin(String family) {
+		String name = family.toLowerCase(Locale.ENGLISH);
+		for (String symbol : SYMBOL_NAMES) {
+			if (name.contains(symbol)) {
+				return false;
+			}
+		}
+		Font font = new Font(family, Font.PLAIN, 12);
+		// An unknown family silently falls back to Dialog, keep only families that resolve to themselves
+		return font.getFamily(Locale.ENGLISH).equalsIgnoreCase(family) && font.canDisplayUpTo(LATIN_SAMPLE) == -1;
+	}
+}
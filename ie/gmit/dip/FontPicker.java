@@ -0,0 +1,39 @@
+package ie.gmit.dip;
+
+import java.util.Random;
+
+/**
+ *
+ * @author Conor Timlin
+ * Picks a font family from a FontCatalogue for each word, at random but from its own seed, so the same seed always
+ * gives the same fonts in the same order whatever else is drawn from other Randoms. Not thread safe, make one per
+ * layout.
+ *
+ */
+
+public final class FontPicker {
+
+	/**
+	 * @param catalogue - Families picked from
+	 * @param random - Source of the picks
+	 */
+	private final FontCatalogue catalogue;
+	private final Random random;
+
+	/**
+	 * @param catalogue - Families to pick from
+	 * @param seed - Seed for the picks
+	 */
+	public FontPicker(FontCatalogue catalogue, long seed) {
+		this.catalogue = catalogue;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return Next family, each equally likely
+	 * Complexity: O(1)
+	 */
+	public String next() {
+		return catalogue.family(random.nextInt(catalogue.size()));
+	}
+}
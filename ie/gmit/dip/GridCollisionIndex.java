@@ -0,0 +1,152 @@
+package ie.gmit.dip;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Conor Timlin
+ * CollisionIndex over a uniform grid of square cells covering the canvas. Each box is listed in every cell it
+ * touches, so a query only looks at the boxes sharing a cell with the candidate rather than every box placed.
+ * Shapes are taken as their bounding boxes, glyph masks included (see BitmapCollisionIndex for those).
+ * A box spanning several cells is met more than once in a query; a per box stamp makes sure it is tested once.
+ *
+ * Not thread safe, one index belongs to one layout.
+ *
+ */
+
+public final class GridCollisionIndex implements CollisionIndex {
+
+	/**
+	 * @param DEFAULT_CELL_SIZE - Default width and height of a cell in pixels
+	 * @param cellSize - Width and height of a cell in pixels
+	 * @param columns - Number of cells across
+	 * @param rows - Number of cells down
+	 * @param cells - Ids of the boxes touching each cell, row after row
+	 * @param cellCounts - Number of ids in use in each cell
+	 * @param boxes - x, y, width, height of each box, box after box
+	 * @param boxCount - Number of boxes added
+	 * @param stamps - Query each box was last tested in
+	 * @param query - Number of the current query
+	 */
+	public static final int DEFAULT_CELL_SIZE = 32;
+
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[][] cells;
+	private final int[] cellCounts;
+	private int[] boxes = new int[64];
+	private int boxCount;
+	private int[] stamps = new int[16];
+	private int query;
+
+	/**
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 */
+	public GridCollisionIndex(int width, int height) {
+		this(width, height, DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 * @param cellSize - Width and height of a cell in pixels, around the height of a small word works well
+	 */
+	public GridCollisionIndex(int width, int height, int cellSize) {
+		this.cellSize = Math.max(1, cellSize);
+		columns = Math.max(1, (width + this.cellSize - 1) / this.cellSize);
+		rows = Math.max(1, (height + this.cellSize - 1) / this.cellSize);
+		cells = new int[columns * rows][];
+		cellCounts = new int[columns * rows];
+	}
+
+	/**
+	 * Stops at the first box the candidate overlaps.
+	 * Complexity: O(C + B) - Where C is the number of cells the box covers and B the boxes listed in them
+	 */
+	@Override
+	public double overlap(WordShape shape, int x, int y) {
+		int width = shape.getWidth();
+		int height = shape.getHeight();
+		if (++query == 0) {
+			// Stamps wrapped around, forget them all
+			Arrays.fill(stamps, 0);
+			query = 1;
+		}
+		int firstColumn = column(x);
+		int lastColumn = column(x + width);
+		int lastRow = row(y + height);
+		for (int row = row(y); row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				int[] ids = cells[cell];
+				for (int i = 0; i < cellCounts[cell]; i++) {
+					int id = ids[i];
+					if (stamps[id] == query) {
+						continue;
+					}
+					stamps[id] = query;
+					int b = id * 4;
+					int overlapX = Math.min(x + width, boxes[b] + boxes[b + 2]) - Math.max(x, boxes[b]);
+					int overlapY = Math.min(y + height, boxes[b + 1] + boxes[b + 3]) - Math.max(y, boxes[b + 1]);
+					if (overlapX > 0 && overlapY > 0) {
+						return Math.min(overlapX, overlapY);
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Complexity: O(C) amortised - Where C is the number of cells the box covers
+	 */
+	@Override
+	public void add(WordShape shape, int x, int y) {
+		int width = shape.getWidth();
+		int height = shape.getHeight();
+		int id = boxCount++;
+		if (id * 4 + 4 > boxes.length) {
+			boxes = Arrays.copyOf(boxes, boxes.length * 2);
+		}
+		if (id >= stamps.length) {
+			stamps = Arrays.copyOf(stamps, stamps.length * 2);
+		}
+		int b = id * 4;
+		boxes[b] = x;
+		boxes[b + 1] = y;
+		boxes[b + 2] = width;
+		boxes[b + 3] = height;
+
+		int firstColumn = column(x);
+		int lastColumn = column(x + width);
+		int lastRow = row(y + height);
+		for (int row = row(y); row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				if (cells[cell] == null) {
+					cells[cell] = new int[4];
+				} else if (cellCounts[cell] == cells[cell].length) {
+					cells[cell] = Arrays.copyOf(cells[cell], cellCounts[cell] * 2);
+				}
+				cells[cell][cellCounts[cell]++] = id;
+			}
+		}
+	}
+
+	/**
+	 * @return Number of boxes added
+	 */
+	public int size() {
+		return boxCount;
+	}
+
+	private int column(int x) {
+		return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, cellSize)));
+	}
+
+	private int row(int y) {
+		return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+	}
+}
@@ -0,0 +1,150 @@
+package ie.gmit.dip;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+/**
+ *
+ * @author Conor Timlin
+ * Approximate word counter for Parser's approximate mode, for input whose vocabulary is too big to count exactly.
+ * Memory is fixed up front: a CountMinSketch sees every word and a SpaceSaving summary keeps the candidates for the top
+ * of the cloud. A word's reported count is the smaller of the two upper bounds, and the SpaceSaving lower bound
+ * gives the error reported next to it in the results file.
+ *
+ */
+
+public class HeavyHitters {
+
+	/**
+	 * @param DEFAULT_COUNTERS - Default number of SpaceSaving counters
+	 * @param DEFAULT_WIDTH - Default sketch width
+	 * @param DEFAULT_DEPTH - Default sketch depth
+	 * @param sketch - Count-Min Sketch of every word
+	 * @param summary - Space-Saving summary of the most frequent words
+	 */
+	public static final int DEFAULT_COUNTERS = 10000;
+	public static final int DEFAULT_WIDTH = 1 << 16;
+	public static final int DEFAULT_DEPTH = 5;
+
+	private final CountMinSketch sketch;
+	private final SpaceSaving summary;
+
+	/**
+	 * @param counters - Number of words tracked by the Space-Saving summary
+	 * @param width - Count-Min Sketch counters per row
+	 * @param depth - Count-Min Sketch rows
+	 */
+	public HeavyHitters(int counters, int width, int depth) {
+		sketch = new CountMinSketch(width, depth);
+		summary = new SpaceSaving(counters);
+	}
+
+	/**
+	 * Counts one occurrence of a word
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * Complexity: O(L + D + log M) - Word length, sketch depth and summary capacity
+	 */
+	public void offer(byte[] word, int offset, int length) {
+		sketch.add(word, offset, length);
+		summary.offer(word, offset, length);
+	}
+
+	/**
+	 * Counts every word of an exact table, e.g. one document of a corpus counted on its own
+	 * @param counts - Table to add
+	 * Complexity: O(V (L + D + log M)) - Where V is the number of words in the table
+	 */
+	public void offer(WordCountTable counts) {
+		byte[] arena = counts.arena();
+		for (int i = 0; i < counts.size(); i++) {
+			sketch.add(arena, counts.keyOffset(i), counts.keyLength(i), counts.count(i));
+			summary.offer(arena, counts.keyOffset(i), counts.keyLength(i), counts.count(i));
+		}
+	}
+
+	/**
+	 * Ranks the tracked words by estimated count, ties alphabetically, and returns the first k.
+	 * @param k - Number of words wanted
+	 * @return ArrayList of at most k Estimates, most frequent first
+	 * Complexity: O(M log M) - Where M is the number of counters
+	 */
+	public ArrayList<Entry<String, Integer>> top(int k) {
+		int tracked = summary.size();
+		Estimate[] estimates = new Estimate[tracked];
+		String guarantee = describe();
+		for (int i = 0; i < tracked; i++) {
+			long upper = Math.min(summary.count(i),
+					sketch.estimate(summary.keyBytes(i), 0, summary.keyLength(i)));
+			long lower = Math.max(0, summary.count(i) - summary.error(i));
+			estimates[i] = new Estimate(summary.key(i), (int) Math.min(upper, Integer.MAX_VALUE), upper - lower, guarantee);
+		}
+		Arrays.sort(estimates, Parser.FREQUENCY_COMPARATOR);
+
+		ArrayList<Entry<String, Integer>> result = new ArrayList<Entry<String, Integer>>(Math.min(k, tracked));
+		for (int i = 0; i < tracked && i < k; i++) {
+			result.add(estimates[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of words counted
+	 */
+	public long total() {
+		return sketch.total();
+	}
+
+	/**
+	 * @return Bytes used by the sketch and summary counters, not counting the words held by the summary
+	 */
+	public long footprint() {
+		return (long) sketch.width() * sketch.depth() * 8 + (long) summary.capacity() * 48;
+	}
+
+	/**
+	 * @return One line description of the error guarantees, written to the results file
+	 */
+	public String describe() {
+		return String.format(
+				"Approximate counts over %d words: Space-Saving with %d counters (any word above %d is tracked), "
+						+ "Count-Min Sketch %dx%d (overcount <= %.0f with probability %.4f)",
+				total(), summary.capacity(), total() / summary.capacity(), sketch.width(), sketch.depth(),
+				Math.ceil(sketch.epsilon() * total()), 1 - sketch.delta());
+	}
+
+	/**
+	 * Entry of a word and its estimated count, carrying how much the estimate may overstate the true count.
+	 * Written as [word : count +/-error] by FileOutputWriter.
+	 */
+	public static class Estimate extends SimpleImmutableEntry<String, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long error;
+		private final String guarantee;
+
+		Estimate(String word, int count, long error, String guarantee) {
+			super(word, count);
+			this.error = error;
+			this.guarantee = guarantee;
+		}
+
+		/**
+		 * @return Most the count can be above the true count (the true count is between count - error and count)
+		 */
+		public long getError() {
+			return error;
+		}
+
+		/**
+		 * @return Description of the structures the estimate came from and their guarantees
+		 */
+		public String getGuarantee() {
+			return guarantee;
+		}
+	}
+}
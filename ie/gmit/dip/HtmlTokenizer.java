@@ -0,0 +1,404 @@
+package ie.gmit.dip;
+
+import java.text.Normalizer;
+
+/**
+ *
+ * @author Conor Timlin
+ * HTML aware Tokenizer used by URLParser. A single pass state machine over the raw bytes of a page that only emits
+ * words from visible text: tags (including attributes, quoted values and tags spread over several lines), comments,
+ * declarations and the contents of <i>&lt;script&gt;</i> and <i>&lt;style&gt;</i> blocks are skipped, and character
+ * entities are decoded. The empty comments "&lt;!--&gt;" and "&lt;!---&gt;" end where they start, as in a browser.
+ * All state lives in fields, so a page can be fed in blocks of any size and a tag, entity or UTF-8 character cut off
+ * at the end of a block carries on in the next one.
+ *
+ * Any whitespace or tag ends the current word. Other non-letters are dropped, the same as Tokenizer. Entities are
+ * decoded for numeric references and the whole HTML 4 Latin-1 set: accented letters (&amp;eacute;, &amp;#233;) count
+ * as the letter without its accent, spaces (&amp;nbsp;, &amp;ensp;, ...) end the word and every other entity
+ * (&amp;amp;, &amp;rsquo;, ...) is a symbol and dropped, so "caf&amp;eacute;" is "cafe" and "don&amp;rsquo;t" is "dont"
+ * as "don't" would be. Letters with no plain form (&amp;szlig;, &amp;aelig;, &amp;oslash;, &amp;eth;, &amp;thorn;) are
+ * dropped too. The same Latin-1 characters written as raw UTF-8 are decoded the same way, so "caf&eacute;" in UTF-8 is
+ * also "cafe" and a UTF-8 no-break space ends the word. Any other non-ASCII byte is dropped (see Tokenizer).
+ *
+ */
+
+public class HtmlTokenizer extends Tokenizer {
+
+	/**
+	 * @param TEXT .. ENTITY - States of the machine
+	 * @param MAX_NAME - Longest tag name kept (only script and style matter)
+	 * @param MAX_ENTITY - Longest entity name decoded, anything longer is treated as text
+	 * @param state - Current state
+	 * @param tagName - Lower case name of the tag being read
+	 * @param tagNameLength - Number of bytes in tagName
+	 * @param endTag - True if the tag being read is a closing tag
+	 * @param LATIN1_NAMES - Names of the HTML 4 Latin-1 entities, code points 160 to 255 in order
+	 * @param LATIN1_FOLD - Lower case ASCII letter of each Latin-1 code point from 192 to 255 without its accent, or 0
+	 * @param quote - Quote character of the attribute value being read
+	 * @param afterEquals - True while only whitespace has followed an attribute's '=', where a quote opens its value
+	 * @param dashes - Number of '-' seen in a row inside a comment, starting at 2 so "&lt;!--&gt;" closes at once
+	 * @param rawTextEnd - Closing tag that ends the current script or style block, e.g. "&lt;/script"
+	 * @param rawTextMatched - How much of rawTextEnd has been matched so far
+	 * @param entity - Name of the entity being read, without the '&amp;'
+	 * @param entityLength - Number of bytes in entity
+	 * @param utf8Lead - Lead byte of a two byte UTF-8 sequence (0xC2 or 0xC3) waiting for its second byte, or 0
+	 */
+	private static final int TEXT = 0;
+	private static final int TAG_OPEN = 1;
+	private static final int TAG_NAME = 2;
+	private static final int TAG = 3;
+	private static final int TAG_QUOTE = 4;
+	private static final int MARKUP_DECLARATION = 5;
+	private static final int COMMENT_START = 6;
+	private static final int COMMENT = 7;
+	private static final int DECLARATION = 8;
+	private static final int RAW_TEXT = 9;
+	private static final int ENTITY = 10;
+
+	private static final int MAX_NAME = 16;
+	private static final int MAX_ENTITY = 32;
+
+	private static final byte[] SCRIPT_END = "</script".getBytes();
+	private static final byte[] STYLE_END = "</style".getBytes();
+
+	private static final String[] LATIN1_NAMES = { "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar",
+			"sect", "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3",
+			"acute", "micro", "para", "middot", "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34",
+			"iquest", "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute",
+			"Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml", "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc",
+			"Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+			"agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil", "egrave", "eacute", "ecirc",
+			"euml", "igrave", "iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml",
+			"divide", "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+	private static final byte[] LATIN1_FOLD = new byte[64];
+
+	static {
+		for (int c = 0xC0; c <= 0xFF; c++) {
+			char base = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD).charAt(0);
+			LATIN1_FOLD[c - 0xC0] = base < 128 ? FOLD[base] : 0;
+		}
+	}
+
+	private int state = TEXT;
+	private final byte[] tagName = new byte[MAX_NAME];
+	private int tagNameLength;
+	private boolean endTag;
+	private int quote;
+	private boolean afterEquals;
+	private int dashes;
+	private byte[] rawTextEnd;
+	private int rawTextMatched;
+	private final byte[] entity = new byte[MAX_ENTITY];
+	private int entityLength;
+	private int utf8Lead;
+
+	/**
+	 * @param sink - Consumer that each visible word is passed to
+	 */
+	public HtmlTokenizer(TokenSink sink) {
+		super(sink);
+	}
+
+	/**
+	 * Runs every byte of the block through the state machine.
+	 * Complexity: O(N) - Where N is count, constant work per byte
+	 */
+	@Override
+	public void feed(byte[] buffer, int offset, int count) {
+		int end = offset + count;
+		for (int i = offset; i < end; i++) {
+			process(buffer[i] & 0xFF);
+		}
+	}
+
+	/**
+	 * Flushes an entity left open at the very end of the page, then the last word.
+	 * Complexity: O(1)
+	 */
+	@Override
+	public void finish() {
+		if (state == ENTITY) {
+			state = TEXT;
+			replayEntity();
+		}
+		super.finish();
+		state = TEXT;
+		utf8Lead = 0;
+	}
+
+	private void process(int b) {
+		switch (state) {
+		case TEXT:
+			text(b);
+			break;
+		case TAG_OPEN:
+			if (FOLD[b] != 0) {
+				endWord();
+				endTag = false;
+				startTagName(b);
+			} else if (b == '/') {
+				endWord();
+				endTag = true;
+				tagNameLength = 0;
+				state = TAG_NAME;
+			} else if (b == '!') {
+				endWord();
+				state = MARKUP_DECLARATION;
+			} else if (b == '?') {
+				endWord();
+				state = DECLARATION;
+			} else {
+				// A lone '<' in text, e.g. "a < b". The '<' itself is dropped like any other symbol
+				state = TEXT;
+				text(b);
+			}
+			break;
+		case TAG_NAME:
+			if (FOLD[b] != 0 || (b >= '0' && b <= '9')) {
+				if (tagNameLength < MAX_NAME) {
+					tagName[tagNameLength++] = FOLD[b] != 0 ? FOLD[b] : (byte) b;
+				}
+			} else if (b == '>') {
+				closeTag();
+			} else {
+				afterEquals = false;
+				state = TAG;
+			}
+			break;
+		case TAG:
+			if (b == '>') {
+				closeTag();
+			} else if (b == '=') {
+				afterEquals = true;
+			} else if ((b == '"' || b == '\'') && afterEquals) {
+				// Only a quote opening an attribute value, one inside an unquoted value (title=don't) is just text
+				quote = b;
+				state = TAG_QUOTE;
+			} else if (!isWhitespace(b)) {
+				afterEquals = false;
+			}
+			break;
+		case TAG_QUOTE:
+			if (b == quote) {
+				afterEquals = false;
+				state = TAG;
+			}
+			break;
+		case MARKUP_DECLARATION:
+			state = b == '-' ? COMMENT_START : DECLARATION;
+			if (b == '>') {
+				state = TEXT;
+			}
+			break;
+		case COMMENT_START:
+			if (b == '-') {
+				// The opening "<!--" counts as the closing dashes too, so "<!-->" and "<!--->" are empty comments
+				dashes = 2;
+				state = COMMENT;
+			} else {
+				state = b == '>' ? TEXT : DECLARATION;
+			}
+			break;
+		case COMMENT:
+			if (b == '-') {
+				dashes++;
+			} else if (b == '>' && dashes >= 2) {
+				state = TEXT;
+			} else {
+				dashes = 0;
+			}
+			break;
+		case DECLARATION:
+			if (b == '>') {
+				state = TEXT;
+			}
+			break;
+		case RAW_TEXT:
+			rawText(b);
+			break;
+		case ENTITY:
+			entity(b);
+			break;
+		default:
+			state = TEXT;
+		}
+	}
+
+	private void text(int b) {
+		if (utf8Lead != 0) {
+			int lead = utf8Lead;
+			utf8Lead = 0;
+			if (b >= 0x80 && b <= 0xBF) {
+				decoded(((lead & 0x1F) << 6) | (b & 0x3F));
+				return;
+			}
+		}
+		byte letter = FOLD[b];
+		if (letter != 0) {
+			append(letter);
+		} else if (isWhitespace(b)) {
+			endWord();
+		} else if (b == '<') {
+			state = TAG_OPEN;
+		} else if (b == '&') {
+			entityLength = 0;
+			state = ENTITY;
+		} else if (b == 0xC2 || b == 0xC3) {
+			// UTF-8 for U+0080 to U+00FF, decoded once the second byte arrives (possibly in the next block)
+			utf8Lead = b;
+		}
+	}
+
+	private void startTagName(int b) {
+		tagNameLength = 0;
+		tagName[tagNameLength++] = FOLD[b];
+		state = TAG_NAME;
+	}
+
+	/**
+	 * Called on the '>' of a tag. An opening script or style tag switches to raw text, where everything is skipped
+	 * until the matching closing tag.
+	 */
+	private void closeTag() {
+		state = TEXT;
+		if (!endTag) {
+			if (isTagName(SCRIPT_END)) {
+				startRawText(SCRIPT_END);
+			} else if (isTagName(STYLE_END)) {
+				startRawText(STYLE_END);
+			}
+		}
+	}
+
+	private boolean isTagName(byte[] closing) {
+		if (tagNameLength != closing.length - 2) {
+			return false;
+		}
+		for (int i = 0; i < tagNameLength; i++) {
+			if (tagName[i] != closing[i + 2]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void startRawText(byte[] closing) {
+		rawTextEnd = closing;
+		rawTextMatched = 0;
+		state = RAW_TEXT;
+	}
+
+	/**
+	 * Skips script or style contents, matching the closing tag case insensitively as it goes. Once it has matched,
+	 * the rest of the closing tag is skipped like any other tag.
+	 */
+	private void rawText(int b) {
+		int folded = FOLD[b] != 0 ? FOLD[b] : b;
+		if (folded == rawTextEnd[rawTextMatched]) {
+			rawTextMatched++;
+			if (rawTextMatched == rawTextEnd.length) {
+				endTag = true;
+				afterEquals = false;
+				state = TAG;
+			}
+		} else {
+			rawTextMatched = b == '<' ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Collects an entity name up to its ';'. Anything that can't be part of an entity means the '&amp;' was plain text,
+	 * so what was collected is replayed as text and the current byte handled normally.
+	 */
+	private void entity(int b) {
+		if (b == ';') {
+			state = TEXT;
+			decodeEntity();
+		} else if (entityLength < MAX_ENTITY && (FOLD[b] != 0 || (b >= '0' && b <= '9') || (b == '#' && entityLength == 0))) {
+			entity[entityLength++] = (byte) b;
+		} else {
+			state = TEXT;
+			replayEntity();
+			process(b);
+		}
+	}
+
+	private void replayEntity() {
+		for (int i = 0; i < entityLength; i++) {
+			text(entity[i] & 0xFF);
+		}
+		entityLength = 0;
+	}
+
+	/**
+	 * Decodes a complete entity, numeric or named. Letters, accented or not, become their plain letter and spaces end
+	 * the word. Every other entity (&amp;amp;, &amp;quot;, &amp;rsquo;...) is a symbol and dropped.
+	 * Complexity: O(E) - Where E is the number of named entities, only compared when the lengths match
+	 */
+	private void decodeEntity() {
+		int codePoint = -1;
+		if (entityLength > 1 && entity[0] == '#') {
+			codePoint = parseCodePoint();
+		} else if (entityIs("ensp") || entityIs("emsp") || entityIs("thinsp")) {
+			codePoint = ' ';
+		} else {
+			for (int i = 0; i < LATIN1_NAMES.length && codePoint < 0; i++) {
+				if (entityIs(LATIN1_NAMES[i])) {
+					codePoint = 0xA0 + i;
+				}
+			}
+		}
+		entityLength = 0;
+		decoded(codePoint);
+	}
+
+	/**
+	 * Handles a character decoded from an entity or from UTF-8. Letters, accented or not, become their plain letter,
+	 * spaces end the word and anything else is dropped.
+	 * @param codePoint - Unicode code point, or -1 for an entity that isn't known
+	 * Complexity: O(1)
+	 */
+	private void decoded(int codePoint) {
+		if (codePoint >= 0 && codePoint < 128 && FOLD[codePoint] != 0) {
+			append(FOLD[codePoint]);
+		} else if (codePoint >= 0xC0 && codePoint <= 0xFF && LATIN1_FOLD[codePoint - 0xC0] != 0) {
+			append(LATIN1_FOLD[codePoint - 0xC0]);
+		} else if (codePoint == 0xA0 || (codePoint >= 0x2000 && codePoint <= 0x200A)
+				|| (codePoint >= 0 && codePoint < 128 && isWhitespace(codePoint))) {
+			endWord();
+		}
+	}
+
+	private int parseCodePoint() {
+		boolean hex = entity[1] == 'x' || entity[1] == 'X';
+		int value = 0;
+		for (int i = hex ? 2 : 1; i < entityLength; i++) {
+			int digit = Character.digit(entity[i], hex ? 16 : 10);
+			if (digit < 0 || value > 0x10FFFF) {
+				return -1;
+			}
+			value = value * (hex ? 16 : 10) + digit;
+		}
+		return value;
+	}
+
+	private boolean entityIs(String name) {
+		if (entityLength != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < entityLength; i++) {
+			if (entity[i] != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param b - Unsigned byte value
+	 * @return True for the HTML whitespace characters (space, tab, line feed, form feed, carriage return)
+	 */
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\f' || b == '\r';
+	}
+}
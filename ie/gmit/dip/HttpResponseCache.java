@@ -0,0 +1,394 @@
+package ie.gmit.dip;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.zip.CRC32C;
+
+/**
+ *
+ * @author Conor Timlin
+ * On disk cache of downloaded pages for URLParser, so regenerating a cloud for the same sites every few minutes
+ * doesn't download every page again.
+ *
+ * Each URL has two files named after a hash of the URL: the body as it was downloaded, and a small properties file
+ * with its ETag and Last-Modified validators, when it was last checked and a version id taken from a checksum of the
+ * body. The body's file name carries the version id too, so a new download is stored beside the old one and the
+ * metadata is switched over to it in one atomic move; a lookup racing a download sees one version or the other,
+ * never the new body with the old metadata. Within the ttl of the last check a page is used as it is; after that it
+ * is revalidated with a conditional GET (If-None-Match / If-Modified-Since) and a 304 keeps the stored copy. The
+ * version id lets the counts of a page be cached in a ParseCache too, so a fresh entry or a 304 skips the tokenising
+ * as well as the download.
+ * Responses marked Cache-Control: no-store are never kept. The cache is held under a size limit by deleting least
+ * recently used pages, recency being each metadata file's last modified time (touched on every hit).
+ *
+ */
+
+public class HttpResponseCache {
+
+	/**
+	 * @param DEFAULT_DIRECTORY - Cache directory used by the Menu
+	 * @param DEFAULT_TTL - Default time a page is used without revalidating it
+	 * @param DEFAULT_MAX_BYTES - Default size limit of the cache
+	 * @param META_EXTENSION - File extension of metadata files
+	 * @param BODY_EXTENSION - File extension of body files
+	 * @param directory - Where entries are kept
+	 * @param ttl - Time a page is used without revalidating it
+	 * @param maxBytes - Total size the entries may take up before the oldest are evicted
+	 */
+	public static final File DEFAULT_DIRECTORY = new File(ParseCache.DEFAULT_DIRECTORY, "http");
+	public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+	private static final String META_EXTENSION = ".meta";
+	private static final String BODY_EXTENSION = ".body";
+
+	private final File directory;
+	private final Duration ttl;
+	private final long maxBytes;
+
+	/**
+	 * @param directory - Directory to keep the entries in, created when the first page is stored
+	 * @param ttl - Time a page is used without revalidating it, zero to revalidate every time
+	 * @param maxBytes - Size limit of the cache in bytes
+	 */
+	public HttpResponseCache(File directory, Duration ttl, long maxBytes) {
+		this.directory = directory;
+		this.ttl = ttl;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Finds the stored copy of a page. A hit marks the entry as most recently used. An entry that can't be read
+	 * back is deleted and treated as a miss.
+	 * @param uri - Address of the page
+	 * @return The stored Entry, or null on a miss
+	 * Complexity: O(1) - Reads one small metadata file
+	 */
+	public Entry lookup(URI uri) {
+		String key = keyFor(uri);
+		File meta = metaFile(key);
+		if (!meta.isFile()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(meta)) {
+			properties.load(in);
+			Entry entry = new Entry(uri, key, properties.getProperty("etag"), properties.getProperty("lastModified"),
+					Long.parseLong(properties.getProperty("fetchedAt")), properties.getProperty("version"));
+			if (!uri.toString().equals(properties.getProperty("url")) || !isVersion(entry.version)) {
+				throw new IllegalArgumentException("Entry belongs to another URL");
+			}
+			if (!bodyFile(key, entry.version).isFile()) {
+				return null;
+			}
+			meta.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch (IOException | IllegalArgumentException e) {
+			meta.delete();
+			deleteBodies(key, null);
+			return null;
+		}
+	}
+
+	/**
+	 * @param entry - Entry from lookup
+	 * @return True if the entry was checked within the ttl and can be used without asking the server
+	 */
+	public boolean isFresh(Entry entry) {
+		return System.currentTimeMillis() - entry.fetchedAt < ttl.toMillis();
+	}
+
+	/**
+	 * @param entry - Entry from lookup
+	 * @return Stream of the stored body, to be tokenised again (e.g. under a different ignore list)
+	 * @throws IOException if the body has been evicted since the lookup
+	 */
+	public InputStream openBody(Entry entry) throws IOException {
+		return new FileInputStream(bodyFile(entry.key, entry.version));
+	}
+
+	/**
+	 * Starts storing a 200 response. The body is written through the returned Writer as it is downloaded and
+	 * only replaces the stored copy once Writer.commit is called.
+	 * @param uri - Address of the page
+	 * @param headers - Headers of the response
+	 * @return Writer for the body, or null if the response asks not to be stored
+	 * @throws IOException if the cache directory can't be written to
+	 * Complexity: O(1)
+	 */
+	public Writer begin(URI uri, HttpHeaders headers) throws IOException {
+		Optional<String> cacheControl = headers.firstValue("Cache-Control");
+		if (cacheControl.isPresent() && cacheControl.get().toLowerCase(Locale.ROOT).contains("no-store")) {
+			return null;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create cache directory " + directory);
+		}
+		String key = keyFor(uri);
+		return new Writer(uri, key, headers, File.createTempFile(key, ".tmp", directory));
+	}
+
+	/**
+	 * Records a 304 answer to a conditional GET: the stored copy is fresh again, with any validators the server
+	 * sent replacing the old ones.
+	 * @param entry - Entry that was revalidated
+	 * @param headers - Headers of the 304 response
+	 * @return The updated Entry
+	 * @throws IOException if the metadata can't be written
+	 * Complexity: O(1)
+	 */
+	public Entry revalidated(Entry entry, HttpHeaders headers) throws IOException {
+		Entry updated = new Entry(entry.uri, entry.key, headers.firstValue("ETag").orElse(entry.etag),
+				headers.firstValue("Last-Modified").orElse(entry.lastModified), System.currentTimeMillis(),
+				entry.version);
+		writeMeta(updated);
+		return updated;
+	}
+
+	private void writeMeta(Entry entry) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("url", entry.uri.toString());
+		properties.setProperty("fetchedAt", Long.toString(entry.fetchedAt));
+		properties.setProperty("version", entry.version);
+		if (entry.etag != null) {
+			properties.setProperty("etag", entry.etag);
+		}
+		if (entry.lastModified != null) {
+			properties.setProperty("lastModified", entry.lastModified);
+		}
+		File temp = File.createTempFile(entry.key, ".tmp", directory);
+		try (OutputStream out = new FileOutputStream(temp)) {
+			properties.store(out, null);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), metaFile(entry.key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes least recently used pages until the cache fits in maxBytes.
+	 * Complexity: O(E log E) - Where E is the number of entries
+	 */
+	private void evict() {
+		File[] files = directory.listFiles(
+				(dir, name) -> name.endsWith(META_EXTENSION) || name.endsWith(BODY_EXTENSION));
+		if (files == null) {
+			return;
+		}
+		List<File> metas = new ArrayList<File>();
+		Map<String, List<File>> bodies = new HashMap<String, List<File>>();
+		long total = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(META_EXTENSION)) {
+				metas.add(file);
+			} else if (name.indexOf('-') > 0) {
+				bodies.computeIfAbsent(name.substring(0, name.indexOf('-')), key -> new ArrayList<File>()).add(file);
+			}
+			total += file.length();
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		metas.sort(Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < metas.size() && total > maxBytes; i++) {
+			File meta = metas.get(i);
+			long length = meta.length();
+			if (meta.delete()) {
+				String name = meta.getName();
+				for (File body : bodies.getOrDefault(name.substring(0, name.length() - META_EXTENSION.length()),
+						Collections.<File>emptyList())) {
+					length += body.length();
+					body.delete();
+				}
+				total -= length;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the stored bodies of a page, all but one version of them
+	 * @param key - Key of the page
+	 * @param keep - Version whose body is kept, or null to delete them all
+	 */
+	private void deleteBodies(String key, String keep) {
+		String kept = keep == null ? null : bodyFile(key, keep).getName();
+		File[] bodies = directory.listFiles((dir, name) -> name.startsWith(key + "-") && name.endsWith(BODY_EXTENSION)
+				&& !name.equals(kept));
+		if (bodies != null) {
+			for (File body : bodies) {
+				body.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return True if the version id is one commit could have made, and so safe in a file name
+	 */
+	private static boolean isVersion(String version) {
+		return version != null && version.matches("[0-9a-f]+-[0-9]+");
+	}
+
+	private static String keyFor(URI uri) {
+		return IgnoreWordFilter.toHex(IgnoreWordFilter.sha256().digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private File metaFile(String key) {
+		return new File(directory, key + META_EXTENSION);
+	}
+
+	private File bodyFile(String key, String version) {
+		return new File(directory, key + "-" + version + BODY_EXTENSION);
+	}
+
+	/**
+	 * Stored copy of one page: its validators, when it was last checked and the version id of its body.
+	 */
+	public static class Entry {
+
+		private final URI uri;
+		private final String key;
+		private final String etag;
+		private final String lastModified;
+		private final long fetchedAt;
+		private final String version;
+
+		Entry(URI uri, String key, String etag, String lastModified, long fetchedAt, String version) {
+			this.uri = uri;
+			this.key = key;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.fetchedAt = fetchedAt;
+			this.version = version;
+		}
+
+		/**
+		 * Adds the conditional headers that let the server answer 304 if the page hasn't changed
+		 * @param request - Builder of the request revalidating this entry
+		 * @return The same builder
+		 */
+		public HttpRequest.Builder conditional(HttpRequest.Builder request) {
+			if (etag != null) {
+				request.header("If-None-Match", etag);
+			}
+			if (lastModified != null) {
+				request.header("If-Modified-Since", lastModified);
+			}
+			return request;
+		}
+
+		/**
+		 * @return Address of the page
+		 */
+		public URI getURI() {
+			return uri;
+		}
+
+		/**
+		 * @return Id of this version of the body, the same for identical bodies
+		 */
+		public String getVersion() {
+			return version;
+		}
+	}
+
+	/**
+	 * Writes a body into the cache while it is downloaded, checksumming it for the version id. Nothing replaces
+	 * the stored copy until commit; abort throws the partial body away.
+	 */
+	public class Writer {
+
+		private final URI uri;
+		private final String key;
+		private final HttpHeaders headers;
+		private final File temp;
+		private final FileChannel channel;
+		private final CRC32C crc = new CRC32C();
+		private long length;
+
+		private Writer(URI uri, String key, HttpHeaders headers, File temp) throws IOException {
+			this.uri = uri;
+			this.key = key;
+			this.headers = headers;
+			this.temp = temp;
+			this.channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		/**
+		 * Appends a buffer of the body. Leaves the buffer's position where it was.
+		 * @param buffer - Next bytes of the body
+		 * @throws IOException
+		 */
+		public void write(ByteBuffer buffer) throws IOException {
+			ByteBuffer data = buffer.duplicate();
+			crc.update(data.duplicate());
+			length += data.remaining();
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+
+		/**
+		 * Makes the written body the stored copy of the page: it is moved in beside any older version, the metadata
+		 * is switched over to it and only then is the older body deleted. Then evicts old pages if the cache has
+		 * grown past its limit.
+		 * @return Entry for the stored page
+		 * @throws IOException
+		 * Complexity: O(E log E) - Sorting the E entries when evicting
+		 */
+		public Entry commit() throws IOException {
+			try {
+				channel.close();
+				Entry entry = new Entry(uri, key, headers.firstValue("ETag").orElse(null),
+						headers.firstValue("Last-Modified").orElse(null), System.currentTimeMillis(),
+						Long.toHexString(crc.getValue()) + "-" + length);
+				Files.move(temp.toPath(), bodyFile(key, entry.version).toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				writeMeta(entry);
+				deleteBodies(key, entry.version);
+				evict();
+				return entry;
+			} catch (IOException e) {
+				abort();
+				throw e;
+			}
+		}
+
+		/**
+		 * Throws the partial body away, leaving any stored copy as it was.
+		 */
+		public void abort() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Being thrown away regardless
+			}
+			temp.delete();
+		}
+	}
+}
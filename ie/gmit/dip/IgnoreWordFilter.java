@@ -0,0 +1,208 @@
+package ie.gmit.dip;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ *
+ * @author Conor Timlin
+ * Immutable filter compiled from the ignore words list. Tests a raw byte slice from the Tokenizer directly so a
+ * stop word is rejected before anything is allocated for it.
+ *
+ * Words are grouped into buckets by length, each bucket a sorted run of fixed width keys that is binary searched.
+ * In front of the buckets sits a small Bloom filter, so most words that are not stop words are turned away after
+ * one hash and a couple of bit tests without touching the buckets. Words longer than the longest stop word are
+ * rejected on their length alone.
+ *
+ */
+
+public final class IgnoreWordFilter {
+
+	/**
+	 * @param EMPTY - Filter that matches nothing, used before any ignore words are loaded
+	 * @param BITS_PER_WORD - Bloom filter bits per stop word (about 1% false positives at 3 probes)
+	 * @param PROBES - Number of bits tested per lookup
+	 * @param bloom - Bloom filter bits
+	 * @param bloomMask - Number of Bloom bits - 1, a power of two
+	 * @param buckets - buckets[L] holds every stop word of length L back to back in sorted order, or null
+	 * @param maxLength - Length of the longest stop word
+	 * @param size - Number of distinct stop words
+	 * @param digest - SHA-256 of the sorted stop words, identifies the list (see ParseCache)
+	 */
+	public static final IgnoreWordFilter EMPTY = compile(new ArrayList<String>());
+
+	private static final int BITS_PER_WORD = 16;
+	private static final int PROBES = 3;
+
+	private final long[] bloom;
+	private final int bloomMask;
+	private final byte[][] buckets;
+	private final int maxLength;
+	private final int size;
+	private final String digest;
+
+	private IgnoreWordFilter(long[] bloom, byte[][] buckets, int maxLength, int size, String digest) {
+		this.bloom = bloom;
+		this.bloomMask = bloom.length * 64 - 1;
+		this.buckets = buckets;
+		this.maxLength = maxLength;
+		this.size = size;
+		this.digest = digest;
+	}
+
+	/**
+	 * Compiles a list of lower case words into a filter. Empty strings and duplicates are ignored.
+	 * @param words - Stop words
+	 * @return Immutable filter
+	 * Complexity: O(N log N) - Where N is the number of words, to sort them
+	 */
+	public static IgnoreWordFilter compile(Collection<String> words) {
+		TreeSet<String> sorted = new TreeSet<String>();
+		int maxLength = 0;
+		for (String word : words) {
+			if (!word.isEmpty()) {
+				sorted.add(word);
+				maxLength = Math.max(maxLength, word.length());
+			}
+		}
+
+		int bits = 64;
+		while (bits < sorted.size() * BITS_PER_WORD) {
+			bits <<= 1;
+		}
+		long[] bloom = new long[bits / 64];
+
+		List<List<byte[]>> byLength = new ArrayList<List<byte[]>>();
+		for (int i = 0; i <= maxLength; i++) {
+			byLength.add(new ArrayList<byte[]>());
+		}
+		MessageDigest sha = sha256();
+		for (String word : sorted) {
+			byte[] key = word.getBytes(StandardCharsets.ISO_8859_1);
+			byLength.get(key.length).add(key);
+			long hash = hash(key, 0, key.length);
+			for (int probe = 0; probe < PROBES; probe++) {
+				int bit = bloomBit(hash, probe, bits - 1);
+				bloom[bit >>> 6] |= 1L << bit;
+			}
+			sha.update(key);
+			sha.update((byte) '\n');
+		}
+
+		byte[][] buckets = new byte[maxLength + 1][];
+		for (int length = 1; length <= maxLength; length++) {
+			List<byte[]> keys = byLength.get(length);
+			if (!keys.isEmpty()) {
+				byte[] bucket = new byte[keys.size() * length];
+				for (int i = 0; i < keys.size(); i++) {
+					System.arraycopy(keys.get(i), 0, bucket, i * length, length);
+				}
+				buckets[length] = bucket;
+			}
+		}
+		return new IgnoreWordFilter(bloom, buckets, maxLength, sorted.size(), toHex(sha.digest()));
+	}
+
+	/**
+	 * @param word - Buffer holding a lower case word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @return True if the word is a stop word
+	 * Complexity: O(L) - Where L is the length of the word, plus O(L log B) for the rare words that pass the Bloom filter
+	 */
+	public boolean contains(byte[] word, int offset, int length) {
+		if (length > maxLength || buckets[length] == null) {
+			return false;
+		}
+		long hash = hash(word, offset, length);
+		for (int probe = 0; probe < PROBES; probe++) {
+			int bit = bloomBit(hash, probe, bloomMask);
+			if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return search(buckets[length], word, offset, length);
+	}
+
+	/**
+	 * @param word - Lower case word
+	 * @return True if the word is a stop word
+	 */
+	public boolean contains(String word) {
+		byte[] key = word.getBytes(StandardCharsets.ISO_8859_1);
+		return contains(key, 0, key.length);
+	}
+
+	/**
+	 * @return Number of distinct stop words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Hex SHA-256 of the sorted stop words. Two filters built from the same words have the same digest
+	 */
+	public String digest() {
+		return digest;
+	}
+
+	private static boolean search(byte[] bucket, byte[] word, int offset, int length) {
+		int lo = 0;
+		int hi = bucket.length / length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int start = mid * length;
+			int cmp = Arrays.compareUnsigned(bucket, start, start + length, word, offset, offset + length);
+			if (cmp < 0) {
+				lo = mid + 1;
+			} else if (cmp > 0) {
+				hi = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash. The two halves give the two hashes used for double hashing the Bloom probes
+	 * (also used by CountMinSketch and SpaceSaving)
+	 */
+	static long hash(byte[] key, int offset, int length) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h ^= key[i] & 0xFF;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	private static int bloomBit(long hash, int probe, int mask) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		return (h1 + probe * h2) & mask;
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,137 @@
+package ie.gmit.dip;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * @author Conor Timlin
+ * Limits how long a layout may take: a deadline, a number of candidate positions (attempts) it may try, or both. A
+ * layout checks its budget as it goes and stops placing words once either runs out, or once cancel() is called from
+ * any other thread, returning what it has placed so far. Timing starts when the budget is created.
+ *
+ * Every check costs one volatile read; the clock is only read every CLOCK_INTERVAL attempts, so a long walk overruns
+ * the deadline by at most a few microseconds.
+ *
+ */
+
+public final class LayoutBudget {
+
+	/**
+	 * @param CLOCK_INTERVAL - Attempts between reads of the clock
+	 * @param start - System.nanoTime() the budget was created at
+	 * @param nanos - Time allowed in nanoseconds, Long.MAX_VALUE for no deadline
+	 * @param maxAttempts - Candidate positions allowed, Long.MAX_VALUE for no limit
+	 * @param attempts - Candidate positions tried so far
+	 * @param untilClock - Attempts left before the clock is read again
+	 * @param exhausted - Set once the deadline or attempts have run out or the layout was cancelled
+	 * @param cancelled - Set by cancel()
+	 */
+	static final int CLOCK_INTERVAL = 256;
+
+	private final long start;
+	private final long nanos;
+	private final long maxAttempts;
+	private long attempts;
+	private int untilClock;
+	private volatile boolean exhausted;
+	private volatile boolean cancelled;
+
+	/**
+	 * @param timeout - Time allowed, 0 or less for no deadline
+	 * @param unit - Unit of timeout
+	 * @param maxAttempts - Candidate positions allowed, 0 or less for no limit
+	 */
+	public LayoutBudget(long timeout, TimeUnit unit, long maxAttempts) {
+		this.start = System.nanoTime();
+		this.nanos = timeout > 0 ? unit.toNanos(timeout) : Long.MAX_VALUE;
+		this.maxAttempts = maxAttempts > 0 ? maxAttempts : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @param timeout - Time allowed
+	 * @param unit - Unit of timeout
+	 * @return Budget with a deadline and no attempt limit
+	 */
+	public static LayoutBudget of(long timeout, TimeUnit unit) {
+		return new LayoutBudget(timeout, unit, 0);
+	}
+
+	/**
+	 * @return Budget that only runs out if cancelled
+	 */
+	public static LayoutBudget unlimited() {
+		return new LayoutBudget(0, TimeUnit.NANOSECONDS, 0);
+	}
+
+	/**
+	 * Stops the layout using this budget at its next check, from any thread. The layout still returns the words
+	 * placed so far.
+	 */
+	public void cancel() {
+		cancelled = true;
+		exhausted = true;
+	}
+
+	/**
+	 * @return True if cancel() was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return True once the deadline or attempts have run out or the layout was cancelled
+	 */
+	public boolean isExhausted() {
+		if (!exhausted && nanos != Long.MAX_VALUE && System.nanoTime() - start >= nanos) {
+			exhausted = true;
+		}
+		return exhausted;
+	}
+
+	/**
+	 * Counts one candidate position, called by the layout's thread only.
+	 * @return False once the budget has run out, the position should then not be tried
+	 * Complexity: O(1)
+	 */
+	boolean attempt() {
+		if (exhausted) {
+			return false;
+		}
+		if (++attempts > maxAttempts) {
+			exhausted = true;
+			return false;
+		}
+		if (--untilClock <= 0) {
+			untilClock = CLOCK_INTERVAL;
+			return !isExhausted();
+		}
+		return true;
+	}
+
+	/**
+	 * @return Share of the budget used so far, the larger of time and attempts, 0 for an unlimited budget
+	 */
+	public double used() {
+		if (exhausted) {
+			return 1;
+		}
+		double time = nanos == Long.MAX_VALUE ? 0 : (System.nanoTime() - start) / (double) nanos;
+		double tries = maxAttempts == Long.MAX_VALUE ? 0 : attempts / (double) maxAttempts;
+		return Math.min(1, Math.max(time, tries));
+	}
+
+	/**
+	 * @return Candidate positions tried so far
+	 */
+	public long getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return Time since the budget was created, in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,573 @@
+package ie.gmit.dip;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+/**
+ *
+ * @author Conor Timlin
+ * A full frequency table saved to disk in a compact binary form and read back by memory mapping the file, with no
+ * parse step: opening one only checks its header, words are decoded as they are read. Lets a corpus be counted once
+ * (see Parser.saveTable) and clouds be made later from one or more saved tables in milliseconds.
+ *
+ * The words are sorted by their bytes (the same order as String.compareTo for lower case words) and front coded:
+ * each entry is a varint of the bytes it shares with the word before it, a varint of the bytes that follow, those
+ * bytes and a varint count, so a sorted vocabulary costs little more than its distinct suffixes. Every
+ * RESTART_INTERVAL entries the prefix starts again from nothing and the offset of that entry goes in an index at the
+ * end of the file, so a word can be looked up with a binary search of the index and a short scan.
+ *
+ * Layout: the magic "WCF1", the number of words, the total of the counts, the restart interval, the number of
+ * restarts and the offset of the index, then the entries, then the index of restart offsets. Being sorted, saved
+ * tables merge with a streaming k-way merge, never holding more than one entry of each in memory.
+ *
+ * A MappedFrequencyTable is immutable and safe to share between threads. The mapping is released when the table is
+ * garbage collected, a table larger than 2GB can't be mapped.
+ *
+ */
+
+public final class MappedFrequencyTable {
+
+	/**
+	 * @param EXTENSION - File extension of saved tables
+	 * @param RESTART_INTERVAL - Entries between restarts of the front coding
+	 * @param MAGIC - First four bytes of every saved table ("WCF1")
+	 * @param HEADER_BYTES - Size of the header before the first entry
+	 * @param file - File the table was mapped from
+	 * @param data - The mapped file, duplicated by every reader so its position is never shared
+	 * @param words - Number of distinct words
+	 * @param total - Sum of every count
+	 * @param restarts - Number of entries in the restart index
+	 * @param indexOffset - Offset of the restart index, also the end of the entries
+	 */
+	public static final String EXTENSION = ".wcf";
+	public static final int RESTART_INTERVAL = 16;
+
+	private static final int MAGIC = 0x57434631;
+	private static final int HEADER_BYTES = 32;
+
+	private final File file;
+	private final ByteBuffer data;
+	private final int words;
+	private final long total;
+	private final int restarts;
+	private final int indexOffset;
+
+	private MappedFrequencyTable(File file, ByteBuffer data) throws IOException {
+		this.file = file;
+		this.data = data;
+		try {
+			if (data.getInt(0) != MAGIC) {
+				throw new IOException("Not a saved word count table: " + file);
+			}
+			words = data.getInt(4);
+			total = data.getLong(8);
+			int interval = data.getInt(16);
+			restarts = data.getInt(20);
+			long index = data.getLong(24);
+			if (words < 0 || interval != RESTART_INTERVAL || restarts != (words + interval - 1) / interval
+					|| index < HEADER_BYTES || index + 4L * restarts != data.capacity()) {
+				throw new IOException("Corrupt word count table: " + file);
+			}
+			indexOffset = (int) index;
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Truncated word count table: " + file, e);
+		}
+	}
+
+	/**
+	 * Maps a saved table into memory. Only the header is read, the entries are paged in as they are used.
+	 * @param file - Table written by write, Writer or merge
+	 * @return The mapped table
+	 * @throws IOException if the file can't be read, isn't a saved table or is larger than 2GB
+	 * Complexity: O(1)
+	 */
+	public static MappedFrequencyTable open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Word count table too large to map: " + file);
+			}
+			return new MappedFrequencyTable(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param files - Saved tables
+	 * @return Each file mapped, in the same order
+	 * @throws IOException if any can't be opened
+	 * Complexity: O(F) - Where F is the number of files
+	 */
+	public static List<MappedFrequencyTable> open(List<File> files) throws IOException {
+		List<MappedFrequencyTable> tables = new ArrayList<MappedFrequencyTable>(files.size());
+		for (File file : files) {
+			tables.add(open(file));
+		}
+		return tables;
+	}
+
+	/**
+	 * Saves every word of a table. The words are sorted first, the table itself is left unchanged.
+	 * @param table - Counts to save
+	 * @param file - File to write, replaced if it exists
+	 * @throws IOException
+	 * Complexity: O(V log V + A) - Sorting the V words, then writing the A bytes of their keys
+	 */
+	public static void write(WordCountTable table, File file) throws IOException {
+		Integer[] order = new Integer[table.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, table::compareKeys);
+		byte[] arena = table.arena();
+		try (Writer writer = new Writer(file)) {
+			for (int entry : order) {
+				writer.add(arena, table.keyOffset(entry), table.keyLength(entry), table.count(entry));
+			}
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Merges saved tables into a new one, adding up the counts of words found in more than one. Streams through
+	 * every table once, in order, holding only the current entry of each. A count that would pass
+	 * Integer.MAX_VALUE stays at Integer.MAX_VALUE.
+	 * @param tables - Tables to merge
+	 * @param file - File to write the merged table to, replaced if it exists
+	 * @return Number of distinct words in the merged table
+	 * @throws IOException
+	 * Complexity: O(V log T) - Where V is the number of entries over all tables and T is the number of tables
+	 */
+	public static int merge(List<MappedFrequencyTable> tables, File file) throws IOException {
+		try (Writer writer = new Writer(file)) {
+			merge(tables, (key, offset, length, count) -> {
+				try {
+					writer.add(key, offset, length, count);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			writer.commit();
+			return writer.getWords();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Picks the k most frequent words of the saved tables merged together, without writing the merged table out.
+	 * Gives the same words in the same order as Parser.topK would over the same counts.
+	 * @param tables - Tables to merge
+	 * @param k - Number of words to return
+	 * @return ArrayList of at most k Entries, most frequent first, ties in alphabetical order
+	 * Complexity: O(V log T + V log K) - Merging, plus offering the words that beat the current k to a heap
+	 */
+	public static ArrayList<Entry<String, Integer>> topK(List<MappedFrequencyTable> tables, int k) {
+		long words = 0;
+		for (MappedFrequencyTable table : tables) {
+			words += table.size();
+		}
+		TopK top = new TopK(k, words);
+		merge(tables, top::offer);
+		return top.result();
+	}
+
+	/**
+	 * Picks the k most frequent words of this table, see topK(List, int).
+	 * @param k - Number of words to return
+	 * @return ArrayList of at most k Entries, most frequent first, ties in alphabetical order
+	 * Complexity: O(V log K) - Where V is the number of words, decoded in one pass
+	 */
+	public ArrayList<Entry<String, Integer>> topK(int k) {
+		TopK top = new TopK(k, words);
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			top.offer(cursor.key, 0, cursor.keyLength, cursor.count);
+		}
+		return top.result();
+	}
+
+	/**
+	 * Looks up one word: a binary search of the restart index, then a scan of at most RESTART_INTERVAL entries.
+	 * @param word - Lower case word
+	 * @return Count of the word, 0 if it isn't in the table
+	 * Complexity: O(log(V / R) + R) - Where R is the RESTART_INTERVAL
+	 */
+	public int get(String word) {
+		byte[] key = word.getBytes(StandardCharsets.ISO_8859_1);
+		Cursor cursor = new Cursor(HEADER_BYTES, 0);
+		// Last restart whose word is at most the one wanted, the word at a restart shares nothing with the one before
+		int low = 0;
+		int high = restarts - 1;
+		int start = -1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			cursor.seek(middle);
+			cursor.next();
+			if (Arrays.compareUnsigned(cursor.key, 0, cursor.keyLength, key, 0, key.length) <= 0) {
+				start = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		if (start < 0) {
+			return 0;
+		}
+		cursor.seek(start);
+		for (int i = 0; i < RESTART_INTERVAL && cursor.next(); i++) {
+			int order = Arrays.compareUnsigned(cursor.key, 0, cursor.keyLength, key, 0, key.length);
+			if (order == 0) {
+				return cursor.count;
+			}
+			if (order > 0) {
+				break;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Decodes the whole table into a WordCountTable, e.g. to add it to a Parser's counts.
+	 * @return New table holding every word
+	 * Complexity: O(V + A)
+	 */
+	public WordCountTable toTable() {
+		WordCountTable table = new WordCountTable(words);
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			table.add(cursor.key, 0, cursor.keyLength, cursor.count);
+		}
+		return table;
+	}
+
+	/**
+	 * @return A new cursor before the first word, in sorted order
+	 */
+	public Cursor cursor() {
+		return new Cursor(HEADER_BYTES, 0);
+	}
+
+	/**
+	 * @return Number of distinct words
+	 */
+	public int size() {
+		return words;
+	}
+
+	/**
+	 * @return Sum of every count, i.e. the words counted
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return File the table was mapped from
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return True if the file name ends with EXTENSION
+	 */
+	public static boolean isTable(String name) {
+		return name.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION);
+	}
+
+	/**
+	 * Streams the tables through a k-way merge, handing each distinct word to the sink once with its counts added.
+	 * Complexity: O(V log T)
+	 */
+	private static void merge(List<MappedFrequencyTable> tables, EntrySink sink) {
+		PriorityQueue<Cursor> heads = new PriorityQueue<Cursor>(Math.max(1, tables.size()),
+				(a, b) -> Arrays.compareUnsigned(a.key, 0, a.keyLength, b.key, 0, b.keyLength));
+		for (MappedFrequencyTable table : tables) {
+			Cursor cursor = table.cursor();
+			if (cursor.next()) {
+				heads.add(cursor);
+			}
+		}
+		byte[] key = new byte[64];
+		while (!heads.isEmpty()) {
+			Cursor head = heads.poll();
+			int length = head.keyLength;
+			if (length > key.length) {
+				key = Arrays.copyOf(key, Math.max(length, key.length << 1));
+			}
+			System.arraycopy(head.key, 0, key, 0, length);
+			long count = head.count;
+			advance(heads, head);
+			while (!heads.isEmpty() && Arrays.equals(heads.peek().key, 0, heads.peek().keyLength, key, 0, length)) {
+				Cursor same = heads.poll();
+				count += same.count;
+				advance(heads, same);
+			}
+			sink.accept(key, 0, length, (int) Math.min(Integer.MAX_VALUE, count));
+		}
+	}
+
+	private static void advance(PriorityQueue<Cursor> heads, Cursor cursor) {
+		if (cursor.next()) {
+			heads.add(cursor);
+		}
+	}
+
+	static int readVarInt(ByteBuffer in) {
+		try {
+			return WordCountTable.readVarInt(in);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated word count table", e);
+		}
+	}
+
+	/**
+	 * Receives the words of a merge in sorted order
+	 */
+	private interface EntrySink {
+		void accept(byte[] key, int offset, int length, int count);
+	}
+
+	/**
+	 * Reads the entries of a table in order, one at a time, straight from the mapping. The current word is rebuilt in
+	 * a buffer of the cursor's own from the shared prefix and the entry's suffix, no String is created.
+	 * Not thread safe, use one cursor per thread.
+	 */
+	public final class Cursor {
+
+		private final ByteBuffer in = data.duplicate();
+		private byte[] key = new byte[64];
+		private int keyLength;
+		private int count;
+		private int remaining;
+
+		private Cursor(int position, int entry) {
+			in.position(position);
+			remaining = words - entry;
+		}
+
+		/**
+		 * Moves to just before the word at a restart
+		 */
+		private void seek(int restart) {
+			in.position(data.getInt(indexOffset + 4 * restart));
+			remaining = words - restart * RESTART_INTERVAL;
+			keyLength = 0;
+		}
+
+		/**
+		 * Moves to the next word.
+		 * @return False once every word has been read
+		 * @throws IllegalArgumentException if the entry is malformed
+		 * Complexity: O(L) - Where L is the length of the entry's suffix
+		 */
+		public boolean next() {
+			if (remaining == 0) {
+				return false;
+			}
+			int shared = readVarInt(in);
+			int suffix = readVarInt(in);
+			if (shared > keyLength || suffix < 0 || suffix > indexOffset - in.position()) {
+				throw new IllegalArgumentException("Malformed entry in word count table " + file);
+			}
+			int length = shared + suffix;
+			if (length > key.length) {
+				key = Arrays.copyOf(key, Math.max(length, key.length << 1));
+			}
+			in.get(key, shared, suffix);
+			keyLength = length;
+			count = readVarInt(in);
+			remaining--;
+			return true;
+		}
+
+		/**
+		 * @return The current word as a String (allocates)
+		 */
+		public String word() {
+			return new String(key, 0, keyLength, StandardCharsets.ISO_8859_1);
+		}
+
+		/**
+		 * @return Count of the current word
+		 */
+		public int count() {
+			return count;
+		}
+	}
+
+	/**
+	 * Writes a table entry by entry, the words in strictly increasing order, so a table can be saved as it is
+	 * produced (e.g. by a merge) without being held in memory. The entries go to a temporary file beside the target
+	 * that commit moves into place once the index and header are written; closing without committing deletes it. The
+	 * temporary file is made by File.createTempFile, so the table gets the umask's permissions like any other file.
+	 */
+	public static final class Writer implements Closeable {
+
+		private final Path target;
+		private final Path temp;
+		private final FileChannel channel;
+		private final DataOutputStream out;
+		private final List<Integer> index = new ArrayList<Integer>();
+		private byte[] previous = new byte[64];
+		private int previousLength;
+		private int words;
+		private long total;
+		private long position = HEADER_BYTES;
+		private boolean committed;
+
+		/**
+		 * @param file - File to write, replaced when the table is committed
+		 * @throws IOException
+		 */
+		public Writer(File file) throws IOException {
+			target = file.toPath().toAbsolutePath();
+			Files.createDirectories(target.getParent());
+			temp = File.createTempFile("." + target.getFileName(), ".part", target.getParent().toFile()).toPath();
+			channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+			channel.position(HEADER_BYTES);
+			out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+		}
+
+		/**
+		 * Appends a word, front coded against the word before it.
+		 * @param key - Buffer holding the word
+		 * @param offset - Start of the word
+		 * @param length - Number of bytes in the word
+		 * @param count - Count of the word, not negative
+		 * @throws IOException
+		 * @throws IllegalArgumentException if the word doesn't sort after the last one added
+		 * Complexity: O(L) - Where L is the length of the word
+		 */
+		public void add(byte[] key, int offset, int length, int count) throws IOException {
+			if (words > 0 && Arrays.compareUnsigned(previous, 0, previousLength, key, offset, offset + length) >= 0) {
+				throw new IllegalArgumentException("Words must be added in strictly increasing order");
+			}
+			if (count < 0) {
+				throw new IllegalArgumentException("Negative count " + count);
+			}
+			int shared = 0;
+			if (words % RESTART_INTERVAL == 0) {
+				index.add((int) position);
+			} else {
+				int limit = Math.min(previousLength, length);
+				while (shared < limit && previous[shared] == key[offset + shared]) {
+					shared++;
+				}
+			}
+			int before = out.size();
+			WordCountTable.writeVarInt(out, shared);
+			WordCountTable.writeVarInt(out, length - shared);
+			out.write(key, offset + shared, length - shared);
+			WordCountTable.writeVarInt(out, count);
+			position += out.size() - before;
+			if (position + 4L * (index.size() + 1) > Integer.MAX_VALUE) {
+				throw new IOException("Word count table too large, the limit is 2GB");
+			}
+
+			if (length > previous.length) {
+				previous = new byte[Math.max(length, previous.length << 1)];
+			}
+			System.arraycopy(key, offset, previous, 0, length);
+			previousLength = length;
+			words++;
+			total += count;
+		}
+
+		/**
+		 * Writes the index and the header and moves the table into place.
+		 * @throws IOException
+		 * Complexity: O(V / R) - Writing the restart index
+		 */
+		public void commit() throws IOException {
+			for (int offset : index) {
+				out.writeInt(offset);
+			}
+			out.flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(words).putLong(total).putInt(RESTART_INTERVAL).putInt(index.size())
+					.putLong(position).flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.close();
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			committed = true;
+		}
+
+		/**
+		 * @return Words added so far
+		 */
+		public int getWords() {
+			return words;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				channel.close();
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the k most frequent words offered in sorted order. As the words arrive in increasing order, a word with
+	 * the same count as the weakest winner never beats it, so a String is only made for a word with a higher count.
+	 */
+	private static final class TopK {
+
+		private final int k;
+		private final PriorityQueue<Entry<String, Integer>> heap;
+
+		/**
+		 * @param k - Number of words kept
+		 * @param words - Most words that can be offered, so a huge k only sizes the heap for the words there are
+		 */
+		TopK(int k, long words) {
+			this.k = Math.max(0, k);
+			this.heap = new PriorityQueue<Entry<String, Integer>>((int) Math.max(1, Math.min(this.k, words)),
+					Collections.reverseOrder(Parser.FREQUENCY_COMPARATOR));
+		}
+
+		void offer(byte[] key, int offset, int length, int count) {
+			if (heap.size() < k) {
+				heap.add(entry(key, offset, length, count));
+			} else if (k > 0 && count > heap.peek().getValue()) {
+				heap.poll();
+				heap.add(entry(key, offset, length, count));
+			}
+		}
+
+		ArrayList<Entry<String, Integer>> result() {
+			ArrayList<Entry<String, Integer>> result = new ArrayList<Entry<String, Integer>>(heap);
+			result.sort(Parser.FREQUENCY_COMPARATOR);
+			return result;
+		}
+
+		private static Entry<String, Integer> entry(byte[] key, int offset, int length, int count) {
+			return new SimpleImmutableEntry<String, Integer>(
+					new String(key, offset, length, StandardCharsets.ISO_8859_1), count);
+		}
+	}
+}
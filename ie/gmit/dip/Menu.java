@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 /**
@@ -34,13 +37,34 @@ public class Menu {
 	 */
 
 	static void displayMenu() throws Exception {
+		displayMenu(false);
+	}
+
+	/**
+	 * Overloaded method that can also keep the counts of each text file analysed in a ParseCache (in
+	 * ParseCache.DEFAULT_DIRECTORY), so analysing an unchanged file again only loads them, and the pages downloaded by
+	 * the URL option in an HttpResponseCache, so an unchanged page isn't downloaded or counted again.
+	 * @param cacheFiles - True to cache the counts of text files and downloaded pages (Runner --cache)
+	 * @throws Exception
+	 */
+	static void displayMenu(boolean cacheFiles) throws Exception {
 
 		displayHeader();
 
 		// Menu Loop Boolean
 		boolean menuLoop = true;
 		FileParser fileParser = new FileParser();
+		if (cacheFiles) {
+			fileParser.setCache(new ParseCache(ParseCache.DEFAULT_DIRECTORY, ParseCache.DEFAULT_MAX_BYTES));
+		}
 		URLParser urlParser = new URLParser();
+		if (cacheFiles) {
+			urlParser.setResponseCache(new HttpResponseCache(HttpResponseCache.DEFAULT_DIRECTORY,
+					HttpResponseCache.DEFAULT_TTL, HttpResponseCache.DEFAULT_MAX_BYTES));
+			urlParser.setTableCache(new ParseCache(ParseCache.DEFAULT_DIRECTORY, ParseCache.DEFAULT_MAX_BYTES));
+		}
+		CorpusParser corpusParser = new CorpusParser();
+		Parser lastParser = null; // Parser of the last analysis, whose counts option 8 saves
 		do {
 			displayOptions();
 			System.out.println(ConsoleColour.RESET);
@@ -51,9 +75,11 @@ public class Menu {
 			case 1: // Enter File You'd like to analyze
 				try {
 					customIgnoreWords(fileParser);
+					PipelineMetrics.global().reset();
 					File textToAnalyse = (new File(FileSearcher.enterFile())); // Attempt to get File info from user
 					fileParser.parse(textToAnalyse.toString());
-					WordCloud.createWordCloud(fileParser.sortByWordFrequency(fileParser.getHashMap()));
+					lastParser = fileParser;
+					WordCloud.createWordCloud(fileParser.topK(WordCloud.getWordsToDisplay()));
 
 				} catch (Exception e) {
 					System.out.print(ConsoleColour.RED);
@@ -64,10 +90,22 @@ public class Menu {
 			case 2:
 				customIgnoreWords(urlParser);
 				System.out.println(ConsoleColour.BLUE);
-				URL urlToAnalyse = (FileSearcher.enterFileURL());
-				if (urlToAnalyse != null) {
-					urlParser.parse(urlToAnalyse.toString());
-					WordCloud.createWordCloud(urlParser.sortByWordFrequency(urlParser.getHashMap()));
+				List<URL> urlsToAnalyse = FileSearcher.enterFileURLs();
+				if (!urlsToAnalyse.isEmpty()) {
+					List<String> urls = new ArrayList<String>(urlsToAnalyse.size());
+					for (URL url : urlsToAnalyse) {
+						urls.add(url.toString());
+					}
+					try {
+						PipelineMetrics.global().reset();
+						urlParser.parse(urls);
+						lastParser = urlParser;
+						WordCloud.createWordCloud(urlParser.topK(WordCloud.getWordsToDisplay()));
+					} catch (IOException e) {
+						System.out.print(ConsoleColour.RED);
+						System.out.print("[Error] Retrieving URL: " + e.getMessage());
+						System.out.println(ConsoleColour.RESET);
+					}
 				} else
 					break;
 				System.out.println(ConsoleColour.RESET);
@@ -130,6 +168,123 @@ public class Menu {
 				menuLoop = false;
 				break;
 
+			case 6: // Enter a directory or glob of documents to analyse as one cloud
+				try {
+					customIgnoreWords(corpusParser);
+					String corpus = FileSearcher.enterCorpus();
+					if (corpus != null) {
+						PipelineMetrics.global().reset();
+						corpusParser.parse(corpus);
+						lastParser = corpusParser;
+						System.out.println(ConsoleColour.BLUE);
+						System.out.println("Analysed " + corpusParser.getFilesParsed() + " files");
+						System.out.println(ConsoleColour.RESET);
+						WordCloud.createWordCloud(corpusParser.topK(WordCloud.getWordsToDisplay()));
+					}
+				} catch (Exception e) {
+					System.out.print(ConsoleColour.RED);
+					System.out.print("[Error] Retrieving corpus");
+					System.out.println(ConsoleColour.RESET);
+				}
+				break;
+
+			case 7: // Size of the exported image relative to the screen, for 8K and poster prints
+				System.out.println(ConsoleColour.BLUE);
+				System.out.println("Export Scale (1 = screen size, 4 = 8K from 1080p, up to " + WordCloud.MAX_EXPORT_SCALE
+						+ ")");
+				System.out.println(ConsoleColour.RESET);
+				int exportScale = getInput();
+				if (exportScale >= 1 && exportScale <= WordCloud.MAX_EXPORT_SCALE) {
+					WordCloud.setExportScale(exportScale);
+					System.out.println(ConsoleColour.BLUE);
+					System.out.println("Confirmed: images will be exported at " + exportScale + "x screen size.");
+					System.out.println(ConsoleColour.RESET);
+				} else {
+					System.out.println(ConsoleColour.RED);
+					System.out.println("[Error] Not a valid entry, please enter number between 1-"
+							+ WordCloud.MAX_EXPORT_SCALE);
+					System.out.println(ConsoleColour.RESET);
+				}
+				break;
+
+			case 8: // Save every word count of the last analysis, to make clouds from later without parsing again
+				if (lastParser == null || lastParser.isApproximate()) {
+					System.out.println(ConsoleColour.RED);
+					System.out.println(lastParser == null ? "[Error] Analyse a file, URL or directory first"
+							: "[Error] Approximate counting keeps no full table, turn it off (10) and analyse again");
+					System.out.println(ConsoleColour.RESET);
+					break;
+				}
+				File table = FileSearcher.enterTableFile();
+				if (table != null) {
+					try {
+						FileOutputWriter.writeTable(lastParser, table);
+					} catch (IOException e) {
+						System.out.print(ConsoleColour.RED);
+						System.out.print("[Error] Saving word counts: " + e.getMessage());
+						System.out.println(ConsoleColour.RESET);
+					}
+				}
+				break;
+
+			case 9: // Word cloud of one or more saved tables merged together
+				List<File> tables = FileSearcher.enterTables();
+				if (!tables.isEmpty()) {
+					try {
+						PipelineMetrics.global().reset();
+						WordCloud.createWordCloud(MappedFrequencyTable.topK(MappedFrequencyTable.open(tables),
+								WordCloud.getWordsToDisplay()));
+					} catch (Exception e) {
+						System.out.print(ConsoleColour.RED);
+						System.out.print("[Error] Reading word counts: " + e.getMessage());
+						System.out.println(ConsoleColour.RESET);
+					}
+				}
+				break;
+
+			case 10: // Approximate counting, for inputs too large to count every word exactly
+				boolean approximate = !fileParser.isApproximate();
+				for (Parser parser : new Parser[] { fileParser, urlParser, corpusParser }) {
+					if (approximate) {
+						parser.setApproximateMode(HeavyHitters.DEFAULT_COUNTERS, HeavyHitters.DEFAULT_WIDTH,
+								HeavyHitters.DEFAULT_DEPTH);
+					} else {
+						parser.setExactMode();
+					}
+				}
+				System.out.println(ConsoleColour.BLUE);
+				System.out.println(approximate
+						? "Confirmed: approximate counting on, counts are estimates with error bounds (see results)."
+						: "Confirmed: approximate counting off, every word is counted exactly.");
+				System.out.println(ConsoleColour.RESET);
+				break;
+
+			case 11: // How exported PNGs are compressed: smaller files or faster exports, palette-indexed or not
+				System.out.println(ConsoleColour.BLUE);
+				System.out.println("PNG Compression Level (0 = fastest, " + PngEncoder.DEFAULT_LEVEL
+						+ " = default, 9 = smallest)");
+				System.out.println(ConsoleColour.RESET);
+				int level = getInput();
+				System.out.println(ConsoleColour.BLUE);
+				System.out.println("PNG Colours: 1) Full colour  2) Palette if 256 colours or fewer (lossless)"
+						+ "  3) Palette reduced to 256 colours");
+				System.out.println(ConsoleColour.RESET);
+				int colours = getInput();
+				PngEncoder.Palette[] palettes = PngEncoder.Palette.values();
+				if (level >= 0 && level <= 9 && colours >= 1 && colours <= palettes.length) {
+					WordCloud.setExportCompression(level, palettes[colours - 1]);
+					System.out.println(ConsoleColour.BLUE);
+					System.out.println("Confirmed: PNGs will be exported at level " + level + ", palette "
+							+ palettes[colours - 1].name().toLowerCase(Locale.ENGLISH) + ".");
+					System.out.println(ConsoleColour.RESET);
+				} else {
+					System.out.println(ConsoleColour.RED);
+					System.out.println("[Error] Not a valid entry, please enter a level between 0-9 and colours 1-"
+							+ palettes.length);
+					System.out.println(ConsoleColour.RESET);
+				}
+				break;
+
 			default:
 				System.out.println(ConsoleColour.RED);
 				System.out.println("Not a valid input, Select a Valid Input"); // If users input a nonvalid value,prompt
@@ -190,11 +345,17 @@ public class Menu {
 		System.out.println(ConsoleColour.RED);
 		System.out.println(ConsoleColour.BLUE_BACKGROUND_BRIGHT);
 		System.out.println("1) Select Local Text File to Analyze"); // Ask user to specify the file to process.
-		System.out.println("2) Select URL to Analyze"); // Ask user to specify URL to Process
+		System.out.println("2) Select URL(s) to Analyze"); // Ask user to specify URL to Process
 		System.out.println("3) Number of Words To Display"); // Ask user to select Number of Words in word cloud
 		System.out.println("4) Append Words to Local IgnoreWords file");
 		System.out.println("5) Quit"); // Terminate program
-		System.out.println("\nSelect Option [1-5]>");
+		System.out.println("6) Select Directory or Glob of Files to Analyze"); // Ask user to specify a corpus to process
+		System.out.println("7) Export Image Scale"); // Ask user how large the exported image should be
+		System.out.println("8) Save Word Counts of Last Analysis"); // Save the full table for later clouds
+		System.out.println("9) Word Cloud from Saved Word Counts"); // Merge saved tables into one cloud
+		System.out.println("10) Approximate Counting On/Off"); // Bounded memory counting for very large inputs
+		System.out.println("11) PNG Compression"); // Ask user how exported PNGs are compressed
+		System.out.println("\nSelect Option [1-11]>");
 		System.out.println(ConsoleColour.RESET);
 	}// end displayOptions
 
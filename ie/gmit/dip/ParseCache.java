@@ -0,0 +1,205 @@
+package ie.gmit.dip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ *
+ * @author Conor Timlin
+ * On disk cache of frequency tables so re-running an analysis on an unchanged file loads its counts instead of
+ * parsing it again (e.g. Menu option 1 re-run only to change the word count or output name).
+ *
+ * Each entry is one file named after a key built from the source's canonical path, size and last modified time plus
+ * the digest of the ignore words in use, so a changed file or a changed ignore list never hits a stale entry. The
+ * key only needs the file's attributes, so a hit never reads the file and a miss reads it once, to count it. A file
+ * modified within RACY_MILLIS of being counted isn't stored (see isRacy): it could be rewritten again within the same
+ * time stamp, and that version would get the same key. Entries hold the table in WordCountTable's binary form behind
+ * a small header. The cache is kept under a size limit by deleting least recently used entries, recency being each
+ * file's last modified time (touched on every hit).
+ *
+ * Caching is opt-in: parsers only use a cache they are given (Runner --cache gives the Menu's file and URL parsers
+ * one in DEFAULT_DIRECTORY).
+ *
+ */
+
+public class ParseCache {
+
+	/**
+	 * @param DEFAULT_DIRECTORY - Cache directory used by the Menu: wordcloud under the user's cache directory
+	 * ($XDG_CACHE_HOME, ~/.cache or %LOCALAPPDATA%), never the working directory
+	 * @param DEFAULT_MAX_BYTES - Default size limit of the cache
+	 * @param RACY_MILLIS - How recently a file may have been modified and still be cached, covering file systems
+	 * that only keep time stamps to the second (or two)
+	 * @param MAGIC - First four bytes of every entry ("WCC1")
+	 * @param EXTENSION - File extension of entries
+	 * @param directory - Where entries are kept
+	 * @param maxBytes - Total size the entries may take up before the oldest are evicted
+	 */
+	public static final File DEFAULT_DIRECTORY = new File(userCacheDirectory(), "wordcloud");
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+	public static final long RACY_MILLIS = 2000;
+
+	private static final int MAGIC = 0x57434331;
+	private static final String EXTENSION = ".wct";
+
+	private final File directory;
+	private final long maxBytes;
+
+	/**
+	 * @param directory - Directory to keep the entries in, created when the first entry is stored
+	 * @param maxBytes - Size limit of the cache in bytes
+	 */
+	public ParseCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Builds the cache key of a source file from its path, size and modified time, without reading it. A file
+	 * rewritten with the same size and time stamp is only possible while it is racy, and racy files aren't stored.
+	 * @param source - File about to be parsed
+	 * @param ignoreWords - Filter that will be applied while counting
+	 * @return Hex key identifying this version of the file under this ignore list
+	 * @throws IOException
+	 * Complexity: O(1) - Only the file's attributes are read
+	 */
+	public String keyFor(File source, IgnoreWordFilter ignoreWords) throws IOException {
+		MessageDigest sha = IgnoreWordFilter.sha256();
+		sha.update(source.getCanonicalPath().getBytes(StandardCharsets.UTF_8));
+		sha.update(ByteBuffer.allocate(16).putLong(source.length()).putLong(source.lastModified()).array());
+		sha.update(ignoreWords.digest().getBytes(StandardCharsets.US_ASCII));
+		return IgnoreWordFilter.toHex(sha.digest());
+	}
+
+	/**
+	 * Builds the cache key of a source that isn't a local file, e.g. one version of a downloaded page.
+	 * @param source - Name of the source, such as its URL
+	 * @param version - Identifies this version of the source's contents
+	 * @param ignoreWords - Filter that will be applied while counting
+	 * @return Hex key identifying this version of the source under this ignore list
+	 * Complexity: O(L) - Where L is the length of the source and version
+	 */
+	public String keyFor(String source, String version, IgnoreWordFilter ignoreWords) {
+		MessageDigest sha = IgnoreWordFilter.sha256();
+		sha.update(source.getBytes(StandardCharsets.UTF_8));
+		sha.update((byte) 0);
+		sha.update(version.getBytes(StandardCharsets.UTF_8));
+		sha.update(ignoreWords.digest().getBytes(StandardCharsets.US_ASCII));
+		return IgnoreWordFilter.toHex(sha.digest());
+	}
+
+	/**
+	 * @param source - File just counted
+	 * @return True if the file was modified too recently for its key to be trusted, so its counts shouldn't be stored
+	 * Complexity: O(1)
+	 */
+	public static boolean isRacy(File source) {
+		return System.currentTimeMillis() - source.lastModified() < RACY_MILLIS;
+	}
+
+	/**
+	 * Loads the table stored under a key. A hit marks the entry as most recently used. An entry that can't be read
+	 * back, truncated or corrupt in any way, is deleted and treated as a miss.
+	 * @param key - Key from keyFor
+	 * @return The cached table, or null on a miss
+	 * Complexity: O(V) - Where V is the number of words in the entry
+	 */
+	public WordCountTable load(String key) {
+		File entry = entryFile(key);
+		if (!entry.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+			if (data.remaining() < 4 || data.getInt() != MAGIC) {
+				throw new IllegalArgumentException("Not a cache entry");
+			}
+			WordCountTable table = WordCountTable.read(data);
+			entry.setLastModified(System.currentTimeMillis());
+			return table;
+		} catch (IOException | RuntimeException e) {
+			entry.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a table under a key, then evicts old entries if the cache has grown past its limit. The entry is
+	 * written to a temporary file and renamed into place so a crash never leaves half an entry behind.
+	 * @param key - Key from keyFor
+	 * @param table - Counts to store
+	 * @throws IOException
+	 * Complexity: O(V + E log E) - Writing the table plus sorting the E entries when evicting
+	 */
+	public void store(String key, WordCountTable table) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create cache directory " + directory);
+		}
+		File temp = File.createTempFile(key, ".tmp", directory);
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+			out.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+			table.write(out);
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), entryFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		evict();
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits in maxBytes.
+	 * Complexity: O(E log E) - Where E is the number of entries
+	 */
+	private void evict() {
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if (entries == null) {
+			return;
+		}
+		long total = 0;
+		for (File entry : entries) {
+			total += entry.length();
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < entries.length && total > maxBytes; i++) {
+			long length = entries[i].length();
+			if (entries[i].delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	private File entryFile(String key) {
+		return new File(directory, key + EXTENSION);
+	}
+
+	/**
+	 * @return The platform's per user cache directory, falling back to the home directory
+	 */
+	private static File userCacheDirectory() {
+		String home = System.getProperty("user.home");
+		String xdg = System.getenv("XDG_CACHE_HOME");
+		String localAppData = System.getenv("LOCALAPPDATA");
+		if (xdg != null && new File(xdg).isAbsolute()) {
+			return new File(xdg);
+		}
+		if (localAppData != null && System.getProperty("os.name", "").startsWith("Windows")) {
+			return new File(localAppData);
+		}
+		return new File(home, ".cache");
+	}
+}
@@ -4,12 +4,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
@@ -27,17 +31,27 @@ import java.util.TreeSet;
 public abstract class Parser implements Parseable {
 
 	/**
-	 * @param ignoreWordsSet - HashSet of common words to ignore from Word Cloud
-	 * @param frequencyTable - HashMap of Words and their Frequencies
+	 * @param ignoreWordsSet - HashSet of common words to ignore from Word Cloud. Private so it can only change through
+	 * addToIgnoreWords, which compiles it into the ignoreFilter the tokenizers actually check
+	 * @param ignoreFilter - ignoreWordsSet compiled into an IgnoreWordFilter, so tokens can be checked without building a String
+	 * @param frequencyTable - WordCountTable of Words and their Frequencies
+	 * @param heavyHitters - Approximate counter used instead of the frequencyTable in approximate mode, null otherwise
+	 * @param metrics - Where stage times and token counts are recorded, PipelineMetrics.global() unless set
 	 * @param FREQUENCY_COMPARATOR	- Comparator object to sort HashMap entrySet
 	 * 
 	 * 
 	 */
 	
-	public final Set<String> ignoreWordsSet = new HashSet<String>();
+	private final Set<String> ignoreWordsSet = new HashSet<String>();
 
-	// HashMap that counts words and their frequency
-	public HashMap<String, Integer> frequencyTable = new HashMap<String, Integer>();
+	private volatile IgnoreWordFilter ignoreFilter = IgnoreWordFilter.EMPTY;
+
+	// Table that counts words and their frequency
+	protected final WordCountTable frequencyTable = new WordCountTable();
+
+	private HeavyHitters heavyHitters;
+
+	private volatile PipelineMetrics metrics = PipelineMetrics.global();
 
 	public static final EntryComparator FREQUENCY_COMPARATOR = new EntryComparator();
 
@@ -66,22 +80,52 @@ public abstract class Parser implements Parseable {
 	
 	/**
 	 * 
-	 * @param frequencyTable - HashMap of Words(keys) and their Frequencies(values)
-	 * @return sortedSetByWordFrequency - TreeSet of Entrysets generated from the hashmap's .entrySet() method, sorted by our EntryComparator.
+	 * @param frequencyTable - Map of Words(keys) and their Frequencies(values), usually the read only view from getHashMap()
+	 * @return sortedSetByWordFrequency - TreeSet of Entrysets generated from the map's .entrySet() method, sorted by our EntryComparator.
 	 * 
 	 */
-	public TreeSet<Entry<String, Integer>> sortByWordFrequency(HashMap<String, Integer> frequencyTable) {
+	public TreeSet<Entry<String, Integer>> sortByWordFrequency(Map<String, Integer> frequencyTable) {
 
 		TreeSet<Entry<String, Integer>> sortedSetByWordFrequency = new TreeSet<Entry<String, Integer>>(
 				FREQUENCY_COMPARATOR);
 
-		sortedSetByWordFrequency.addAll(frequencyTable.entrySet()); // ADDING ENTRY SET
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.RANK)) {
+			sortedSetByWordFrequency.addAll(frequencyTable.entrySet()); // ADDING ENTRY SET
+			timer.setItems(frequencyTable.size());
+		}
+		metrics.setDistinctWords(frequencyTable.size());
 		return sortedSetByWordFrequency;
 	}
 
+	/**
+	 * Picks the k most frequent words straight from the frequencyTable with a bounded heap instead of sorting every entry
+	 * into a TreeSet. Gives the same words in the same order as the first k of sortByWordFrequency.
+	 * In approximate mode the words come from the HeavyHitters instead, as HeavyHitters.Estimate entries.
+	 * @param k - Number of words to return, i.e. the number of words in the word cloud
+	 * @return ArrayList of at most k Entries, most frequent first, ties in alphabetical order
+	 * Complexity: O(V log K) - Where V is the number of distinct words and K is k
+	 */
+	public ArrayList<Entry<String, Integer>> topK(int k) {
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.RANK)) {
+			if (heavyHitters != null) {
+				return heavyHitters.top(k);
+			}
+			int[] winners = frequencyTable.topIndices(k);
+			ArrayList<Entry<String, Integer>> result = new ArrayList<Entry<String, Integer>>(winners.length);
+			for (int entry : winners) {
+				result.add(new SimpleImmutableEntry<String, Integer>(frequencyTable.key(entry),
+						frequencyTable.count(entry)));
+			}
+			timer.setItems(frequencyTable.size());
+			metrics.setDistinctWords(frequencyTable.size());
+			return result;
+		}
+	}
+
 	/**
 	 * Method that takes File f, common words to ignore, and adds them to our ignoreWordsSet
 	 * Uses bufferedReader to readLines of text and splits with regex "\\s"
+	 * Once read, the whole set is compiled into the IgnoreWordFilter used while counting.
 	 * @param f - Text File containing common words to ignore
 	 * @throws IOException
 	 * @throws NullPointerException
@@ -99,47 +143,201 @@ public abstract class Parser implements Parseable {
 			}
 		}
 		ignoreWordsReader.close();
+		ignoreFilter = IgnoreWordFilter.compile(ignoreWordsSet);
+	}
+
+	/**
+	 * Overloaded method adding words already read (e.g. an ignore list loaded once and shared by many parsers) to the
+	 * ignoreWordsSet, cleaned the same way as words read from a file, and compiling the IgnoreWordFilter again.
+	 * @param words - Common words to ignore
+	 * Complexity O(N) - Where N is the number of words in the ignoreWordsSet
+	 */
+	public void addToIgnoreWords(Collection<String> words) {
+		for (String word : words) {
+			ignoreWordsSet.add(word.replaceAll("[^a-zA-Z]", "").toLowerCase());
+		}
+		ignoreFilter = IgnoreWordFilter.compile(ignoreWordsSet);
 	}
 	
 	/**
-	 * Method that checks if words (keys) are present in ignoreWordsSet and if not, add them to HashMap/Increment the appropriate value
+	 * Method that checks if words (keys) are present in ignoreWordsSet and if not, add them to HashMap/Increment the appropriate value.
+	 * The source is streamed through a Tokenizer as raw bytes, see Tokenizer for how words are split and cleaned.
 	 * @param s - String containing user provided source. Either a URL or File (DataSource enum will indicate which)
 	 * @param ds - DataSource enum indicating if String s is a File source or a URL source
 	 * @throws IOException
 	 * Complexity O(N) - Where N is length of Source File, Checking Set and Adding to HashMap are constant operations.
 	 */
 	public void addToHashMap(String s, DataSource ds) throws IOException {
-		BufferedReader hashMapReader;
+		InputStream hashMapStream;
 		if (ds == DataSource.FILE) {
-			hashMapReader = new BufferedReader(new FileReader(new File(s)));
+			hashMapStream = new FileInputStream(new File(s));
 		} else {
-			hashMapReader = new BufferedReader(new InputStreamReader(new URL(s).openStream()));
+			hashMapStream = new URL(s).openStream();
 		}
-		String line;
-		while ((line = hashMapReader.readLine()) != null) {
+		try {
+			addToHashMap(hashMapStream);
+		} finally {
+			hashMapStream.close();
+		}
+	}
 
-			String[] words = line.split(" ");
-			for (String word : words) {
-				word = parseHTMLTags(word);
-				word = word.trim().replaceAll("[^a-zA-Z]", "").toLowerCase();
-				if (!ignoreWordsSet.contains((word)) && word.length() > 1) {
-					frequencyTable.compute((word), (k, v) -> v == null ? 1 : v + 1);
-				}
+	/**
+	 * Overloaded method counting the words of a stream already open, e.g. text uploaded to the WordCloudServer, into
+	 * the frequencyTable (or the HeavyHitters in approximate mode). Does not close the stream.
+	 * @param in - Source of bytes
+	 * @throws IOException
+	 * Complexity O(N) - Where N is the length of the stream
+	 */
+	public void addToHashMap(InputStream in) throws IOException {
+		if (heavyHitters != null) {
+			try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.TOKENIZE)) {
+				timer.setItems(newTokenizer(approximateCounter()).tokenize(in));
 			}
+		} else {
+			addToTable(in, frequencyTable);
 		}
-		hashMapReader.close();
+	}
+
+	/**
+	 * Tokenizes a whole stream and counts its words into the given table rather than the frequencyTable, so a source
+	 * can be counted on its own (e.g. to be cached) and merged in afterwards. Does not close the stream.
+	 * @param in - Source of bytes
+	 * @param table - Table the words are counted into
+	 * @throws IOException
+	 * Complexity O(N) - Where N is the length of the stream
+	 */
+	protected void addToTable(InputStream in, WordCountTable table) throws IOException {
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.TOKENIZE)) {
+			timer.setItems(newTokenizer(counterFor(table)).tokenize(in));
+		}
+	}
+
+	/**
+	 * Adds a table counted on its own to the parser's counts: merged into the frequencyTable, or offered to the
+	 * HeavyHitters in approximate mode. Synchronized so workers counting sources in parallel can all merge here.
+	 * @param counts - Counts of one source, left unchanged
+	 * Complexity: O(V) - Where V is the number of words in counts
+	 */
+	protected synchronized void mergeCounts(WordCountTable counts) {
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.MERGE)) {
+			timer.setItems(counts.size());
+			if (heavyHitters != null) {
+				heavyHitters.offer(counts);
+			} else {
+				frequencyTable.merge(counts);
+			}
+		}
+	}
+
+	/**
+	 * Saves every word of the frequencyTable, not just the top k, as a MappedFrequencyTable so the counts can be
+	 * reloaded or merged with others later without parsing the sources again.
+	 * @param file - File to write, replaced if it exists
+	 * @throws IOException
+	 * @throws IllegalStateException in approximate mode, which keeps no full table
+	 * Complexity: O(V log V) - Where V is the number of distinct words, they are saved in sorted order
+	 */
+	public synchronized void saveTable(File file) throws IOException {
+		if (heavyHitters != null) {
+			throw new IllegalStateException("Approximate mode keeps no full table to save");
+		}
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.ENCODE, file.getName())) {
+			MappedFrequencyTable.write(frequencyTable, file);
+			timer.setItems(file.length());
+		}
+	}
 
+	/**
+	 * Adds the counts of a saved table to the parser's, as if its sources had been parsed again, see mergeCounts.
+	 * @param file - Table written by saveTable or MappedFrequencyTable
+	 * @throws IOException if the file can't be read or isn't a saved table
+	 * Complexity: O(V) - Where V is the number of words in the saved table
+	 */
+	public void loadTable(File file) throws IOException {
+		WordCountTable counts;
+		try {
+			counts = MappedFrequencyTable.open(file).toTable();
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt word count table: " + file, e);
+		}
+		mergeCounts(counts);
 	}
 
 	/**
-	 * Utility method to parse symbols from String
-	 * @param word - String word parsed from file
-	 * @return word - String word with html tags removed
-	 * Complexity O(N) - Method likely has to iterate through each char of the word in order to replace individual chars 
+	 * Creates the Tokenizer used to split a source into words. Plain text by default, subclasses override this for
+	 * sources that need their own handling (see URLParser).
+	 * @param sink - Consumer the words are passed to
+	 * @return Tokenizer feeding sink
+	 * Complexity: O(1)
 	 */
-	private String parseHTMLTags(String word) {
-		String target = word.replaceAll("<[^>]*>", " ");
-		return target;
+	protected Tokenizer newTokenizer(TokenSink sink) {
+		return new Tokenizer(sink);
+	}
+
+	/**
+	 * Builds the TokenSink that counts words into a table. Words of a single letter and words in the ignoreWordsSet
+	 * are skipped, everything else is added to the table. Lets subclasses count into tables of their own
+	 * (e.g. one per chunk) and merge them afterwards. Both checks and the count work on the Tokenizer's buffer directly,
+	 * no String is created. The words seen and skipped are tallied in the sink and recorded in the metrics, with the
+	 * bytes read, once the Tokenizer finishes.
+	 * @param table - Table the words are counted into
+	 * @return TokenSink to hand to a Tokenizer
+	 * Complexity: O(1) - Checking the IgnoreWordFilter and adding to the WordCountTable are constant operations.
+	 */
+	protected TokenSink counterFor(WordCountTable table) {
+		return new CountingSink(ignoreFilter, table, null, metrics);
+	}
+
+	/**
+	 * TokenSink for approximate mode, applies the same checks as counterFor but feeds the HeavyHitters.
+	 * @return TokenSink to hand to a Tokenizer
+	 * Complexity: O(1) - Per word, see HeavyHitters.offer
+	 */
+	private TokenSink approximateCounter() {
+		return new CountingSink(ignoreFilter, null, heavyHitters, metrics);
+	}
+
+	/**
+	 * Switches to approximate counting for corpora too big to count every word exactly. Memory stays fixed at the
+	 * sizes given no matter how big the vocabulary grows; topK returns estimates with error bounds that are written
+	 * alongside the results. Approximate mode always streams the source on one thread.
+	 * @param counters - Number of candidate words tracked (must be well above the number of words displayed)
+	 * @param sketchWidth - Count-Min Sketch counters per row, error is about 2.7 / sketchWidth of all words
+	 * @param sketchDepth - Count-Min Sketch rows, the error bound fails with probability e^-sketchDepth
+	 * Complexity: O(W * D + M) - Allocating the structures
+	 */
+	public void setApproximateMode(int counters, int sketchWidth, int sketchDepth) {
+		heavyHitters = new HeavyHitters(counters, sketchWidth, sketchDepth);
+	}
+
+	/**
+	 * Goes back to exact counting into the frequencyTable, discarding any approximate counts.
+	 * Complexity: O(1)
+	 */
+	public void setExactMode() {
+		heavyHitters = null;
+	}
+
+	/**
+	 * Records this parser's stages and counts somewhere other than PipelineMetrics.global(), e.g. per batch job.
+	 * @param metrics - Metrics to record into
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The metrics this parser records into
+	 */
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return True if the parser is in approximate mode
+	 */
+	public boolean isApproximate() {
+		return heavyHitters != null;
 	}
 
 	/**
@@ -153,19 +351,80 @@ public abstract class Parser implements Parseable {
 	}
 
 	/**
-	 * Returns the HashMap from Parser class
-	 * @return frequencyTable - HashMap<String, Integer>
+	 * Returns a read only Map view of the frequencyTable from Parser class
+	 * @return frequencyTable - Map<String, Integer>, backed by the WordCountTable
+	 */
+	public Map<String, Integer> getHashMap() {
+		return this.frequencyTable.asMap();
+	}
+
+	/**
+	 * Returns the WordCountTable itself, for callers that want to work on the primitive counts
+	 * @return frequencyTable
 	 */
-	public HashMap<String, Integer> getHashMap() {
+	public WordCountTable getWordCountTable() {
 		return this.frequencyTable;
 	}
 
 	/**
-	 * Returns the HashSet of words to ignore from Parser Class
-	 * @return ignoreWordsSet 
+	 * Returns the compiled filter of words to ignore from Parser Class
+	 * @return ignoreFilter
+	 */
+	public IgnoreWordFilter getIgnoreFilter() {
+		return this.ignoreFilter;
+	}
+
+	/**
+	 * Returns the words to ignore from Parser Class, read only: add to them with addToIgnoreWords so the
+	 * IgnoreWordFilter is compiled again
+	 * @return Unmodifiable view of the ignoreWordsSet
 	 */
 	public Set<String> getIgnoreWords() {
-		return this.ignoreWordsSet;
+		return Collections.unmodifiableSet(this.ignoreWordsSet);
+	}
+
+	/**
+	 * Sink counting words into a WordCountTable, or offering them to HeavyHitters in approximate mode. Keeps its own
+	 * tally of words seen and skipped, so nothing shared is touched per word, and adds it to the metrics at the end.
+	 */
+	private static final class CountingSink implements TokenSink {
+
+		private final IgnoreWordFilter filter;
+		private final WordCountTable table;
+		private final HeavyHitters heavyHitters;
+		private final PipelineMetrics metrics;
+		private long tokens;
+		private long ignored;
+
+		CountingSink(IgnoreWordFilter filter, WordCountTable table, HeavyHitters heavyHitters, PipelineMetrics metrics) {
+			this.filter = filter;
+			this.table = table;
+			this.heavyHitters = heavyHitters;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void accept(byte[] word, int length) {
+			tokens++;
+			if (length > 1 && !filter.contains(word, 0, length)) {
+				if (table != null) {
+					table.increment(word, 0, length);
+				} else {
+					heavyHitters.offer(word, 0, length);
+				}
+			} else {
+				ignored++;
+			}
+		}
+
+		@Override
+		public void end(long bytes) {
+			metrics.add(PipelineMetrics.Counter.BYTES_READ, bytes);
+			metrics.add(PipelineMetrics.Counter.TOKENS, tokens);
+			metrics.add(PipelineMetrics.Counter.TOKENS_IGNORED, ignored);
+			tokens = 0;
+			ignored = 0;
+		}
 	}
 
 }
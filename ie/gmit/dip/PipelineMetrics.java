@@ -0,0 +1,318 @@
+package ie.gmit.dip;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * @author Conor Timlin
+ * Measures the word cloud pipeline as it runs: how long each stage took, how much it got through (bytes read, tokens
+ * seen and ignored, distinct words, positions tried and collisions while placing words) and a histogram of how many
+ * positions each word needed beyond the first. Every run of a stage is also a StageEvent for JDK Flight Recorder.
+ *
+ * Everything is kept in LongAdders, so parsers counting on many threads at once can all record here without
+ * contending. Hot loops still count locally and record once per source or per layout, never per token. Stage times
+ * are summed over threads, so a stage run in parallel can total more than the wall clock time it took.
+ *
+ * Parsers and renderers record into the global() instance unless given one of their own.
+ *
+ */
+
+public final class PipelineMetrics {
+
+	/**
+	 * Stages a source passes through on its way to a word cloud
+	 */
+	public enum Stage {
+		/** Downloading a page, tokenized and counted as it arrives */
+		FETCH,
+		/** Splitting a source into words and counting them, done in the one pass */
+		TOKENIZE,
+		/** Merging the counts of a source into the parser's */
+		MERGE,
+		/** Picking or sorting the most frequent words */
+		RANK,
+		/** Placing the words on the canvas */
+		LAYOUT,
+		/** Drawing the placed words */
+		RENDER,
+		/** Writing the cloud out as a PNG or SVG */
+		ENCODE
+	}
+
+	/**
+	 * Quantities added up across the pipeline
+	 */
+	public enum Counter {
+		/** Bytes of source text read */
+		BYTES_READ,
+		/** Words the tokenizer produced */
+		TOKENS,
+		/** Words not counted, single letters and ignore words */
+		TOKENS_IGNORED,
+		/** Candidate positions tried while placing words */
+		PLACEMENT_ATTEMPTS,
+		/** Candidate positions that overlapped a word already placed */
+		COLLISIONS,
+		/** Words placed on a canvas */
+		WORDS_PLACED,
+		/** Words left out of a cloud */
+		WORDS_DROPPED
+	}
+
+	/**
+	 * @param RETRY_BUCKETS - Buckets of the retry histogram: 0, 1, 2-3, 4-7, ... and the last for anything larger
+	 * @param GLOBAL - Instance recorded into by default
+	 * @param calls - Runs of each stage
+	 * @param nanos - Time spent in each stage, summed over threads
+	 * @param maxNanos - Longest single run of each stage
+	 * @param counters - Total of each Counter
+	 * @param retries - Words by the number of positions they needed beyond the first, in power of two buckets
+	 * @param distinctWords - Distinct words in the counts last ranked, -1 if not known (e.g. approximate mode)
+	 */
+	public static final int RETRY_BUCKETS = 16;
+	private static final PipelineMetrics GLOBAL = new PipelineMetrics();
+
+	private final LongAdder[] calls = adders(Stage.values().length);
+	private final LongAdder[] nanos = adders(Stage.values().length);
+	private final LongAccumulator[] maxNanos = new LongAccumulator[Stage.values().length];
+	private final LongAdder[] counters = adders(Counter.values().length);
+	private final LongAdder[] retries = adders(RETRY_BUCKETS);
+	private volatile long distinctWords = -1;
+
+	/**
+	 * Creates an empty set of metrics, e.g. for one job of a batch
+	 */
+	public PipelineMetrics() {
+		for (int i = 0; i < maxNanos.length; i++) {
+			maxNanos[i] = new LongAccumulator(Math::max, 0);
+		}
+	}
+
+	/**
+	 * @return The instance parsers and renderers record into unless given their own
+	 */
+	public static PipelineMetrics global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * Starts timing a run of a stage, to be closed when the run ends (try-with-resources).
+	 * @param stage - Stage being run
+	 * @return Running timer, recording on close
+	 * Complexity: O(1)
+	 */
+	public Timer time(Stage stage) {
+		return new Timer(stage, null);
+	}
+
+	/**
+	 * As time(stage), naming what the run works on in its StageEvent.
+	 * @param stage - Stage being run
+	 * @param detail - What the stage works on, e.g. a URL or file name
+	 * @return Running timer, recording on close
+	 * Complexity: O(1)
+	 */
+	public Timer time(Stage stage, String detail) {
+		return new Timer(stage, detail);
+	}
+
+	/**
+	 * @param counter - Quantity to add to
+	 * @param amount - Amount to add
+	 * Complexity: O(1)
+	 */
+	public void add(Counter counter, long amount) {
+		if (amount != 0) {
+			counters[counter.ordinal()].add(amount);
+		}
+	}
+
+	/**
+	 * @param counter - Quantity to read
+	 * @return Its total so far
+	 */
+	public long get(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	/**
+	 * Adds a word to the retry histogram.
+	 * @param positionsTried - Candidate positions the word needed, placed or not
+	 * Complexity: O(1)
+	 */
+	public void recordPlacement(long positionsTried) {
+		long extra = Math.max(0, positionsTried - 1);
+		retries[Math.min(RETRY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(extra))].increment();
+	}
+
+	/**
+	 * @return Words per bucket of the retry histogram, bucket b holding 2^(b-1) to 2^b - 1 retries (bucket 0 none)
+	 */
+	public long[] getRetryHistogram() {
+		long[] histogram = new long[RETRY_BUCKETS];
+		for (int i = 0; i < RETRY_BUCKETS; i++) {
+			histogram[i] = retries[i].sum();
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param words - Distinct words in the counts being ranked
+	 */
+	public void setDistinctWords(long words) {
+		distinctWords = words;
+	}
+
+	/**
+	 * @return Distinct words in the counts last ranked, -1 if not known
+	 */
+	public long getDistinctWords() {
+		return distinctWords;
+	}
+
+	/**
+	 * @return Runs of the stage so far
+	 */
+	public long getCalls(Stage stage) {
+		return calls[stage.ordinal()].sum();
+	}
+
+	/**
+	 * @return Time spent in the stage, summed over threads
+	 */
+	public long getTime(Stage stage, TimeUnit unit) {
+		return unit.convert(nanos[stage.ordinal()].sum(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Clears every stage, counter and bucket, e.g. before analysing the next source. Runs still timing when this is
+	 * called are recorded when they end.
+	 * Complexity: O(1)
+	 */
+	public void reset() {
+		for (int i = 0; i < calls.length; i++) {
+			calls[i].reset();
+			nanos[i].reset();
+			maxNanos[i].reset();
+		}
+		for (LongAdder counter : counters) {
+			counter.reset();
+		}
+		for (LongAdder bucket : retries) {
+			bucket.reset();
+		}
+		distinctWords = -1;
+	}
+
+	/**
+	 * @return Text block of the stages run, the counters and the retry histogram, one item per line
+	 * Complexity: O(1)
+	 */
+	public String summary() {
+		StringBuilder text = new StringBuilder(1024);
+		text.append("Pipeline metrics\n");
+		text.append(String.format(Locale.ENGLISH, "%-10s %8s %12s %12s\n", "Stage", "Runs", "Total ms", "Max ms"));
+		for (Stage stage : Stage.values()) {
+			long runs = getCalls(stage);
+			if (runs > 0) {
+				text.append(String.format(Locale.ENGLISH, "%-10s %8d %12.1f %12.1f\n",
+						stage.name().toLowerCase(Locale.ENGLISH), runs, nanos[stage.ordinal()].sum() / 1e6,
+						maxNanos[stage.ordinal()].get() / 1e6));
+			}
+		}
+		line(text, "Bytes read", get(Counter.BYTES_READ));
+		line(text, "Tokens seen", get(Counter.TOKENS));
+		line(text, "Tokens ignored", get(Counter.TOKENS_IGNORED));
+		text.append(String.format(Locale.ENGLISH, "%-20s %s\n", "Distinct words",
+				distinctWords < 0 ? "unknown" : Long.toString(distinctWords)));
+		line(text, "Placement attempts", get(Counter.PLACEMENT_ATTEMPTS));
+		line(text, "Collisions", get(Counter.COLLISIONS));
+		line(text, "Words placed", get(Counter.WORDS_PLACED));
+		line(text, "Words dropped", get(Counter.WORDS_DROPPED));
+		text.append("Layout retries per word\n");
+		long[] histogram = getRetryHistogram();
+		for (int b = 0; b < RETRY_BUCKETS; b++) {
+			if (histogram[b] > 0) {
+				text.append(String.format(Locale.ENGLISH, "  %-18s %d\n", bucketLabel(b), histogram[b]));
+			}
+		}
+		return text.toString();
+	}
+
+	private static void line(StringBuilder text, String name, long value) {
+		text.append(String.format(Locale.ENGLISH, "%-20s %d\n", name, value));
+	}
+
+	/**
+	 * @return Range of retries a bucket holds, e.g. "4-7"
+	 */
+	private static String bucketLabel(int bucket) {
+		if (bucket == 0) {
+			return "0";
+		}
+		long low = 1L << (bucket - 1);
+		if (bucket == RETRY_BUCKETS - 1) {
+			return low + "+";
+		}
+		long high = (1L << bucket) - 1;
+		return low == high ? Long.toString(low) : low + "-" + high;
+	}
+
+	private static LongAdder[] adders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * One run of a stage, timed from creation to close and committed as a StageEvent if Flight Recorder wants it.
+	 * Meant for a single thread and a single close.
+	 */
+	public final class Timer implements AutoCloseable {
+
+		private final Stage stage;
+		private final String detail;
+		private final long start;
+		private final StageEvent event = new StageEvent();
+		private long items;
+
+		private Timer(Stage stage, String detail) {
+			this.stage = stage;
+			this.detail = detail;
+			event.begin();
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * @param items - What the run got through, put in its StageEvent: bytes for FETCH and TOKENIZE, words for
+		 * MERGE, RANK and LAYOUT, pixels for RENDER, bytes written for ENCODE
+		 */
+		public void setItems(long items) {
+			this.items = items;
+		}
+
+		/**
+		 * Ends the run, adding it to its stage. Complexity: O(1)
+		 */
+		@Override
+		public void close() {
+			long elapsed = System.nanoTime() - start;
+			int i = stage.ordinal();
+			calls[i].increment();
+			nanos[i].add(elapsed);
+			maxNanos[i].accumulate(elapsed);
+			event.end();
+			if (event.shouldCommit()) {
+				event.stage = stage.name();
+				event.detail = detail;
+				event.items = items;
+				event.commit();
+			}
+		}
+	}
+}
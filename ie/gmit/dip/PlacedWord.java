@@ -0,0 +1,134 @@
+package ie.gmit.dip;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ *
+ * @author Conor Timlin
+ * One word of a WordLayout: the word and its count, the font and colour it is drawn in and where it goes.
+ * Immutable, so a layout can be drawn any number of times, from any thread, and always give the same picture.
+ *
+ */
+
+public final class PlacedWord {
+
+	/**
+	 * @param word - The word drawn
+	 * @param count - The word's count
+	 * @param font - Font the word is drawn in
+	 * @param colour - Colour the word is drawn in
+	 * @param x - Left edge of the word's box
+	 * @param y - Top edge of the word's box
+	 * @param width - Width of the word's box
+	 * @param height - Height of the word's box
+	 * @param textX - x the text starts at, the box may reach further left (a glyph mask's padding or overhang)
+	 * @param baseline - y of the baseline the text sits on
+	 */
+	private final String word;
+	private final int count;
+	private final Font font;
+	private final Color colour;
+	private final double x;
+	private final double y;
+	private final double width;
+	private final double height;
+	private final double textX;
+	private final double baseline;
+
+	PlacedWord(String word, int count, Font font, Color colour, double x, double y, double width, double height,
+			double textX, double baseline) {
+		this.word = word;
+		this.count = count;
+		this.font = font;
+		this.colour = colour;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.textX = textX;
+		this.baseline = baseline;
+	}
+
+	/**
+	 * Draws the word in its font and colour at its position
+	 * @param g2 - Graphics to draw with, its font and colour are changed
+	 * Complexity: O(L) - Where L is the length of the word
+	 */
+	public void draw(Graphics2D g2) {
+		g2.setFont(font);
+		g2.setColor(colour);
+		g2.drawString(word, (float) textX, (float) baseline);
+	}
+
+	/**
+	 * @return The word drawn
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * @return The word's count
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Font the word is drawn in
+	 */
+	public Font getFont() {
+		return font;
+	}
+
+	/**
+	 * @return Colour the word is drawn in
+	 */
+	public Color getColour() {
+		return colour;
+	}
+
+	/**
+	 * @return Left edge of the word's box
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * @return Top edge of the word's box
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * @return x the text starts at
+	 */
+	public double getTextX() {
+		return textX;
+	}
+
+	/**
+	 * @return y of the baseline the text sits on
+	 */
+	public double getBaseline() {
+		return baseline;
+	}
+
+	/**
+	 * @return Copy of the box the word takes up
+	 */
+	public Rectangle2D getBounds() {
+		return new Rectangle2D.Double(x, y, width, height);
+	}
+
+	@Override
+	public String toString() {
+		return word + "=" + count + " @(" + Math.round(x) + "," + Math.round(y) + ") " + font.getFamily() + " "
+				+ font.getSize();
+	}
+}
@@ -0,0 +1,598 @@
+package ie.gmit.dip;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ *
+ * @author Conor Timlin
+ * PNG encoder that compresses on every core, in the style of pigz. The image data of a PNG is one zlib stream; here
+ * the filtered rows are cut into blocks of about BLOCK_SIZE bytes, each deflated on its own worker with the 32KB of
+ * data before it as a preset dictionary (so matches can still reach back into the previous block) and ended with a
+ * sync flush, which leaves the block on a byte boundary. Concatenated in order the blocks make one valid deflate
+ * stream, written as one IDAT chunk per block; the per block Adler-32 checksums are combined into the stream's.
+ * Each row gets the filter (none, sub, up, average or Paeth) whose output has the fewest distinct byte values.
+ *
+ * Images are streamed: rows are handed to a Writer as they are drawn (it is a TiledRenderer.BandSink) and written
+ * to any OutputStream as their blocks finish, so only a few blocks per core are held at once. Images with at most
+ * 256 colours, or reduced to 256 by a ColourPalette, can be written palette-indexed at a quarter of the size.
+ *
+ */
+
+public final class PngEncoder {
+
+	/**
+	 * How colours are stored
+	 */
+	public enum Palette {
+		/** 8 bit RGBA for every pixel */
+		NONE,
+		/** Palette-indexed if the image has at most 256 colours, otherwise RGBA, lossless either way */
+		EXACT,
+		/** Palette-indexed, reducing the image to 256 colours by median cut if it has more */
+		QUANTISED
+	}
+
+	/**
+	 * @param SIGNATURE - First eight bytes of every PNG
+	 * @param BLOCK_SIZE - Bytes of filtered rows per deflate block, as pigz
+	 * @param WINDOW - Size of the deflate window, the most of the previous block used as a dictionary
+	 * @param DEFAULT_LEVEL - Default compression level, that of zlib
+	 * @param level - Deflate level, 0 (store) to 9 (smallest)
+	 * @param palette - How colours are stored by write
+	 * @param executor - Runs the filter and deflate tasks
+	 * @param maxInFlight - Blocks compressed or waiting to be written at once
+	 */
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	public static final int BLOCK_SIZE = 128 * 1024;
+	private static final int WINDOW = 32 * 1024;
+	public static final int DEFAULT_LEVEL = 6;
+
+	private final int level;
+	private final Palette palette;
+	private final Executor executor;
+	private final int maxInFlight;
+
+	/**
+	 * Creates an encoder at the default level writing RGBA, compressing on the common fork-join pool
+	 */
+	public PngEncoder() {
+		this(DEFAULT_LEVEL, Palette.NONE);
+	}
+
+	/**
+	 * @param level - Deflate level, 0 (store, fastest) to 9 (smallest, slowest)
+	 * @param palette - How colours are stored by write
+	 */
+	public PngEncoder(int level, Palette palette) {
+		this(level, palette, ForkJoinPool.commonPool(), 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param level - Deflate level, 0 (store, fastest) to 9 (smallest, slowest)
+	 * @param palette - How colours are stored by write
+	 * @param executor - Runs the filter and deflate tasks, CPU bound
+	 * @param maxInFlight - Blocks compressed or waiting to be written at once, bounds the memory held
+	 */
+	public PngEncoder(int level, Palette palette, Executor executor, int maxInFlight) {
+		if (level < 0 || level > 9) {
+			throw new IllegalArgumentException("Compression level must be 0-9: " + level);
+		}
+		this.level = level;
+		this.palette = palette;
+		this.executor = executor;
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * @return Deflate level, 0 to 9
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return How colours are stored by write
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+
+	/**
+	 * Encodes a whole image. Palette modes look at every pixel first, to build the palette.
+	 * @param image - Image to encode, only read
+	 * @param out - Stream the PNG is written to, not closed
+	 * @throws IOException
+	 * Complexity: O(W H / C) - For the W x H pixels on C cores, plus O(D 256) for a quantised palette of D colours
+	 */
+	public void write(BufferedImage image, OutputStream out) throws IOException {
+		ColourPalette colours = null;
+		if (palette == Palette.EXACT) {
+			colours = ColourPalette.exact(image);
+		} else if (palette == Palette.QUANTISED) {
+			colours = ColourPalette.quantised(image);
+		}
+		try (Writer writer = new Writer(out, image.getWidth(), image.getHeight(), colours)) {
+			writer.writeRows(image);
+		}
+	}
+
+	/**
+	 * Starts streaming an RGBA image whose rows are handed over later, top to bottom.
+	 * @param out - Stream the PNG is written to, not closed
+	 * @param width - Width of the image
+	 * @param height - Height of the image
+	 * @return Writer taking the rows, close it once all have been written to finish the PNG
+	 * @throws IOException
+	 */
+	public Writer open(OutputStream out, int width, int height) throws IOException {
+		return new Writer(out, width, height, null);
+	}
+
+	/**
+	 * Streams one PNG. Rows are gathered into blocks on the calling thread, filtered and deflated on the executor
+	 * and written in order as they finish. Not thread safe, feed it from one thread.
+	 */
+	public final class Writer implements TiledRenderer.BandSink, Closeable {
+
+		/**
+		 * @param out - Stream the PNG goes to
+		 * @param width - Width of the image
+		 * @param height - Height of the image
+		 * @param colours - Palette rows are indexed into, null for RGBA
+		 * @param rowBytes - Bytes per unfiltered row
+		 * @param rowsPerBlock - Rows per deflate block
+		 * @param block - Pixels of the block being gathered, ARGB row after row
+		 * @param blockRows - Rows gathered into block so far
+		 * @param rowsReceived - Rows handed over so far
+		 * @param lastRow - Last row of the previous block, which the first row of the next is filtered against
+		 * @param previous - Filtered bytes of the previous block, the dictionary of the next
+		 * @param inFlight - Blocks being compressed, oldest first
+		 * @param adler - Adler-32 of the blocks written so far
+		 * @param firstChunk - True until the first IDAT, which carries the zlib header, is written
+		 * @param closed - True once close has been called
+		 */
+		private final OutputStream out;
+		private final int width;
+		private final int height;
+		private final ColourPalette colours;
+		private final int rowBytes;
+		private final int rowsPerBlock;
+		private int[] block;
+		private int blockRows;
+		private int rowsReceived;
+		private int[] lastRow;
+		private CompletableFuture<byte[]> previous;
+		private final ArrayDeque<CompletableFuture<Deflated>> inFlight = new ArrayDeque<CompletableFuture<Deflated>>();
+		private long adler = 1;
+		private boolean firstChunk = true;
+		private boolean closed;
+
+		private Writer(OutputStream out, int width, int height, ColourPalette colours) throws IOException {
+			if (width < 1 || height < 1) {
+				throw new IllegalArgumentException("Image must be at least 1x1: " + width + "x" + height);
+			}
+			this.out = out;
+			this.width = width;
+			this.height = height;
+			this.colours = colours;
+			this.rowBytes = width * (colours == null ? 4 : 1);
+			this.rowsPerBlock = Math.max(1, Math.min(height, BLOCK_SIZE / (rowBytes + 1)));
+			this.block = new int[rowsPerBlock * width];
+			writeHeader();
+		}
+
+		/**
+		 * Hands over the next rows of the image, as a TiledRenderer.BandSink.
+		 * @param y - Row the band starts at, must follow on from the rows already written
+		 * @param band - Rows to write, as wide as the image
+		 * @throws IOException
+		 */
+		@Override
+		public void band(int y, BufferedImage band) throws IOException {
+			if (y != rowsReceived) {
+				throw new IOException("Expected row " + rowsReceived + " but was given row " + y);
+			}
+			writeRows(band);
+		}
+
+		/**
+		 * Hands over the next rows of the image.
+		 * @param rows - Rows to write, as wide as the image
+		 * @throws IOException
+		 * Complexity: O(w h) on this thread to copy the pixels, the compression runs on the executor
+		 */
+		public void writeRows(BufferedImage rows) throws IOException {
+			if (rows.getWidth() != width) {
+				throw new IllegalArgumentException("Rows are " + rows.getWidth() + " wide, the image " + width);
+			}
+			if (rowsReceived + rows.getHeight() > height) {
+				throw new IOException("More than the image's " + height + " rows were written");
+			}
+			for (int y = 0; y < rows.getHeight(); y++) {
+				readRow(rows, y, block, blockRows * width);
+				blockRows++;
+				rowsReceived++;
+				if (blockRows == rowsPerBlock || rowsReceived == height) {
+					submitBlock(rowsReceived == height);
+				}
+			}
+		}
+
+		/**
+		 * Waits for the last blocks and ends the PNG. Does not close the stream.
+		 * @throws IOException - Also if fewer rows than the image's height were written
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				while (!inFlight.isEmpty()) {
+					writeBlock(inFlight.removeFirst());
+				}
+			} finally {
+				inFlight.clear();
+			}
+			if (rowsReceived < height) {
+				throw new IOException("Only " + rowsReceived + " of " + height + " rows were written");
+			}
+			writeChunk("IEND");
+			out.flush();
+		}
+
+		private void writeHeader() throws IOException {
+			out.write(SIGNATURE);
+			byte[] header = new byte[13];
+			putInt(header, 0, width);
+			putInt(header, 4, height);
+			header[8] = 8; // Bit depth
+			header[9] = (byte) (colours == null ? 6 : 3); // RGBA or palette-indexed
+			writeChunk("IHDR", header);
+			if (colours != null) {
+				writeChunk("PLTE", colours.plte());
+				byte[] alpha = colours.trns();
+				if (alpha.length > 0) {
+					writeChunk("tRNS", alpha);
+				}
+			}
+		}
+
+		/**
+		 * Sends the gathered block off to be filtered and deflated, first writing out the oldest blocks if too many
+		 * are in flight.
+		 */
+		private void submitBlock(boolean last) throws IOException {
+			int[] pixels = block;
+			int rows = blockRows;
+			int[] prior = lastRow;
+			lastRow = Arrays.copyOfRange(pixels, (rows - 1) * width, rows * width);
+			block = last ? null : new int[rowsPerBlock * width];
+			blockRows = 0;
+
+			CompletableFuture<byte[]> filtered = CompletableFuture.supplyAsync(() -> filter(pixels, rows, prior),
+					executor);
+			CompletableFuture<byte[]> dictionary = previous == null ? CompletableFuture.completedFuture(null) : previous;
+			CompletableFuture<Deflated> deflated = filtered.thenCombineAsync(dictionary,
+					(data, before) -> deflate(data, before, last), executor);
+			previous = filtered;
+			inFlight.addLast(deflated);
+			while (inFlight.size() > maxInFlight || (last && !inFlight.isEmpty())) {
+				writeBlock(inFlight.removeFirst());
+			}
+		}
+
+		private void writeBlock(CompletableFuture<Deflated> pending) throws IOException {
+			Deflated block = await(pending);
+			adler = adler32Combine(adler, block.adler, block.inputLength);
+			byte[] head = new byte[0];
+			if (firstChunk) {
+				// zlib header: deflate with a 32K window, no dictionary, the level in FLEVEL, a multiple of 31
+				int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+				int cmf = 0x78;
+				int flg = flevel << 6;
+				flg += 31 - (cmf * 256 + flg) % 31;
+				head = new byte[] { (byte) cmf, (byte) flg };
+				firstChunk = false;
+			}
+			byte[] tail = new byte[0];
+			if (block.last) {
+				tail = new byte[4];
+				putInt(tail, 0, (int) adler);
+			}
+			writeChunk("IDAT", head, block.data, tail);
+		}
+
+		/**
+		 * Converts a block to PNG rows (RGBA bytes or palette indices) and filters them, each row getting the filter
+		 * with the fewest distinct byte values. Palette rows aren't filtered, as the PNG spec recommends.
+		 * Complexity: O(r w) - For r rows of w pixels
+		 */
+		private byte[] filter(int[] pixels, int rows, int[] prior) {
+			byte[] filtered = new byte[rows * (rowBytes + 1)];
+			byte[] above = new byte[rowBytes];
+			byte[] row = new byte[rowBytes];
+			boolean[] seen = new boolean[5 * 256];
+			if (prior != null) {
+				toBytes(prior, 0, above);
+			}
+			for (int r = 0; r < rows; r++) {
+				toBytes(pixels, r * width, row);
+				int offset = r * (rowBytes + 1);
+				if (colours != null || level == 0) {
+					System.arraycopy(row, 0, filtered, offset + 1, rowBytes);
+				} else {
+					filterRow(row, above, 4, filtered, offset, seen);
+				}
+				byte[] swap = above;
+				above = row;
+				row = swap;
+			}
+			return filtered;
+		}
+
+		private void toBytes(int[] pixels, int offset, byte[] row) {
+			if (colours != null) {
+				for (int x = 0; x < width; x++) {
+					row[x] = (byte) colours.index(pixels[offset + x]);
+				}
+				return;
+			}
+			for (int x = 0, i = 0; x < width; x++, i += 4) {
+				int argb = pixels[offset + x];
+				row[i] = (byte) (argb >>> 16);
+				row[i + 1] = (byte) (argb >>> 8);
+				row[i + 2] = (byte) argb;
+				row[i + 3] = (byte) (argb >>> 24);
+			}
+		}
+
+		/**
+		 * Deflates one block with the tail of the previous block as its dictionary, ending it with a sync flush
+		 * unless it is the last.
+		 * Complexity: O(n) - For the n bytes of the block
+		 */
+		private Deflated deflate(byte[] data, byte[] before, boolean last) {
+			Deflater deflater = new Deflater(level, true);
+			try {
+				if (before != null) {
+					int window = Math.min(WINDOW, before.length);
+					deflater.setDictionary(before, before.length - window, window);
+				}
+				deflater.setInput(data);
+				byte[] output = new byte[data.length + data.length / 1000 + 64];
+				int length = 0;
+				if (last) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						if (length == output.length) {
+							output = Arrays.copyOf(output, output.length * 2);
+						}
+						length += deflater.deflate(output, length, output.length - length);
+					}
+				} else {
+					// Filling the buffer means the flush may not be done, go round until there is room to spare
+					do {
+						if (length == output.length) {
+							output = Arrays.copyOf(output, output.length * 2);
+						}
+						length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+					} while (length == output.length);
+				}
+				Adler32 checksum = new Adler32();
+				checksum.update(data);
+				return new Deflated(Arrays.copyOf(output, length), checksum.getValue(), data.length, last);
+			} finally {
+				deflater.end();
+			}
+		}
+
+		private void writeChunk(String type, byte[]... parts) throws IOException {
+			int length = 0;
+			for (byte[] part : parts) {
+				length += part.length;
+			}
+			byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+			byte[] number = new byte[4];
+			putInt(number, 0, length);
+			out.write(number);
+			out.write(name);
+			CRC32 crc = new CRC32();
+			crc.update(name);
+			for (byte[] part : parts) {
+				out.write(part);
+				crc.update(part);
+			}
+			putInt(number, 0, (int) crc.getValue());
+			out.write(number);
+		}
+	}
+
+	/**
+	 * One block's compressed bytes and the checksum of its input
+	 */
+	private static final class Deflated {
+		private final byte[] data;
+		private final long adler;
+		private final long inputLength;
+		private final boolean last;
+
+		private Deflated(byte[] data, long adler, long inputLength, boolean last) {
+			this.data = data;
+			this.adler = adler;
+			this.inputLength = inputLength;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * Copies one row of an image into pixels as ARGB, straight from the raster for the usual TYPE_INT_ARGB
+	 */
+	private static void readRow(BufferedImage image, int y, int[] pixels, int offset) {
+		int width = image.getWidth();
+		if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+			int[] row = (int[]) image.getRaster().getDataElements(0, y, width, 1, null);
+			System.arraycopy(row, 0, pixels, offset, width);
+		} else {
+			image.getRGB(0, y, width, 1, pixels, offset, width);
+		}
+	}
+
+	/**
+	 * Writes the filter type and filtered bytes of one row to out at offset, trying every filter and keeping the one
+	 * whose output has the fewest distinct byte values, ties going to the simpler filter. The sum of absolute
+	 * differences libpng uses picks Sub or Paeth for the flat colours and clear background of a word cloud, where
+	 * leaving the row unfiltered deflates about 30% smaller; fewest values does as well on those rows and better than
+	 * the sum on smooth, photo-like ones.
+	 * @param seen - Scratch of 5 * 256 flags, the values each filter gives, overwritten
+	 * Complexity: O(n) - For the n bytes of the row
+	 */
+	static void filterRow(byte[] row, byte[] above, int bpp, byte[] out, int offset, boolean[] seen) {
+		if (Arrays.equals(row, above)) {
+			// Up leaves only zeros, as few values as any filter can, e.g. the blank rows around a cloud
+			out[offset] = 2;
+			Arrays.fill(out, offset + 1, offset + 1 + row.length, (byte) 0);
+			return;
+		}
+		Arrays.fill(seen, false);
+		for (int i = 0; i < row.length; i++) {
+			int x = row[i] & 0xFF;
+			int b = above[i] & 0xFF;
+			int a = 0;
+			int c = 0;
+			if (i >= bpp) {
+				a = row[i - bpp] & 0xFF;
+				c = above[i - bpp] & 0xFF;
+			}
+			mark(seen, 0, x);
+			mark(seen, 1, x - a);
+			mark(seen, 2, x - b);
+			mark(seen, 3, x - ((a + b) >>> 1));
+			mark(seen, 4, x - paeth(a, b, c));
+		}
+		int type = 0;
+		int fewest = Integer.MAX_VALUE;
+		for (int filter = 0; filter < 5; filter++) {
+			int distinct = 0;
+			for (int value = filter << 8; value < (filter + 1) << 8; value++) {
+				if (seen[value]) {
+					distinct++;
+				}
+			}
+			if (distinct < fewest) {
+				type = filter;
+				fewest = distinct;
+			}
+		}
+		out[offset] = (byte) type;
+		int start = offset + 1;
+		int n = row.length;
+		switch (type) {
+		case 0:
+			System.arraycopy(row, 0, out, start, n);
+			break;
+		case 1:
+			for (int i = 0; i < n; i++) {
+				out[start + i] = (byte) (row[i] - (i >= bpp ? row[i - bpp] : 0));
+			}
+			break;
+		case 2:
+			for (int i = 0; i < n; i++) {
+				out[start + i] = (byte) (row[i] - above[i]);
+			}
+			break;
+		case 3:
+			for (int i = 0; i < n; i++) {
+				int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+				out[start + i] = (byte) (row[i] - ((a + (above[i] & 0xFF)) >>> 1));
+			}
+			break;
+		default:
+			for (int i = 0; i < n; i++) {
+				int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+				int c = i >= bpp ? above[i - bpp] & 0xFF : 0;
+				out[start + i] = (byte) (row[i] - paeth(a, above[i] & 0xFF, c));
+			}
+		}
+	}
+
+	/**
+	 * Flags a value a filter gave. Only stores, so the flags of one byte don't wait on each other
+	 */
+	private static void mark(boolean[] seen, int filter, int value) {
+		seen[filter << 8 | (value & 0xFF)] = true;
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+	}
+
+	/**
+	 * Adler-32 of two pieces of data joined, from the checksum of each and the length of the second (as zlib's
+	 * adler32_combine), so blocks can be checksummed on separate threads.
+	 * Complexity: O(1)
+	 */
+	static long adler32Combine(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long remainder = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (remainder * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+		if (sum1 >= base) {
+			sum1 -= base;
+		}
+		if (sum1 >= base) {
+			sum1 -= base;
+		}
+		if (sum2 >= base << 1) {
+			sum2 -= base << 1;
+		}
+		if (sum2 >= base) {
+			sum2 -= base;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -1,12 +1,23 @@
 package ie.gmit.dip;
 
+import java.util.Arrays;
+
 /**
  * Runner Class
  * @author Conor Timlin
+ * Starts the Menu, or with --batch MANIFEST runs the jobs of a manifest without prompts (see BatchRunner), or with
+ * --serve [PORT] serves word clouds over HTTP (see WordCloudServer). --cache starts the Menu with the counts of text
+ * files and downloaded pages cached between runs (see ParseCache and HttpResponseCache)
  *
  */
 public class Runner {
 	public static void main(String[] args) throws Exception {
-		Menu.displayMenu();
+		if (args.length > 0 && args[0].equals("--batch")) {
+			System.exit(BatchRunner.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && args[0].equals("--serve")) {
+			System.exit(WordCloudServer.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		Menu.displayMenu(args.length > 0 && args[0].equals("--cache"));
 	}
 }
@@ -0,0 +1,249 @@
+package ie.gmit.dip;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ *
+ * @author Conor Timlin
+ * Space-Saving summary that tracks the most frequent words of a stream in a fixed number of counters.
+ * A word that is already tracked has its counter bumped. A new word takes over the counter with the smallest count,
+ * inheriting that count as its possible error. Every count is an upper bound and count - error a lower bound, and any
+ * word occurring more than total / capacity times is guaranteed to be tracked.
+ *
+ * Counters are found from a byte slice through a linear probing index (with backward shift deletion so evictions
+ * leave no tombstones) and kept in a min-heap so the smallest counter is always at the root. A key is only copied
+ * when a word takes over a counter.
+ *
+ */
+
+public class SpaceSaving {
+
+	/**
+	 * @param capacity - Number of counters
+	 * @param keys - Word held by each counter
+	 * @param keyLengths - Number of bytes in use in each key
+	 * @param hashes - Hash of each counter's word
+	 * @param counts - Count (upper bound) of each counter
+	 * @param errors - Count the counter already had when its word took it over
+	 * @param heap - Counter indices, min-heap on count
+	 * @param heapPosition - Position of each counter in the heap
+	 * @param slots - Index from hash to counter + 1, 0 for empty
+	 * @param size - Number of counters in use
+	 */
+	private final int capacity;
+	private final byte[][] keys;
+	private final int[] keyLengths;
+	private final long[] hashes;
+	private final long[] counts;
+	private final long[] errors;
+	private final int[] heap;
+	private final int[] heapPosition;
+	private final int[] slots;
+	private int size;
+
+	/**
+	 * @param capacity - Number of words to track
+	 */
+	public SpaceSaving(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		keys = new byte[this.capacity][];
+		keyLengths = new int[this.capacity];
+		hashes = new long[this.capacity];
+		counts = new long[this.capacity];
+		errors = new long[this.capacity];
+		heap = new int[this.capacity];
+		heapPosition = new int[this.capacity];
+		int slotCount = 2;
+		while (slotCount < this.capacity * 2) {
+			slotCount <<= 1;
+		}
+		slots = new int[slotCount];
+	}
+
+	/**
+	 * Counts one occurrence of a word
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * Complexity: O(L + log M) - Where L is the length of the word and M the capacity
+	 */
+	public void offer(byte[] word, int offset, int length) {
+		offer(word, offset, length, 1);
+	}
+
+	/**
+	 * Counts several occurrences of a word at once (weighted Space-Saving, the guarantees are unchanged)
+	 * @param word - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @param weight - Number of occurrences
+	 * Complexity: O(L + log M)
+	 */
+	public void offer(byte[] word, int offset, int length, int weight) {
+		long hash = IgnoreWordFilter.hash(word, offset, length);
+		int mask = slots.length - 1;
+		int slot = (int) hash & mask;
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			entry--;
+			if (hashes[entry] == hash && keyEquals(entry, word, offset, length)) {
+				counts[entry] += weight;
+				siftDown(heapPosition[entry]);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size < capacity) {
+			entry = size++;
+			setKey(entry, hash, word, offset, length);
+			counts[entry] = weight;
+			errors[entry] = 0;
+			slots[slot] = entry + 1;
+			heap[entry] = entry;
+			heapPosition[entry] = entry;
+			siftUp(entry);
+			return;
+		}
+
+		entry = heap[0];
+		removeFromIndex(entry);
+		setKey(entry, hash, word, offset, length);
+		errors[entry] = counts[entry];
+		counts[entry] += weight;
+		slot = (int) hash & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = entry + 1;
+		siftDown(0);
+	}
+
+	/**
+	 * @return Number of counters in use
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Number of counters
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @param counter - Counter index, 0 to size() - 1
+	 * @return Word held by the counter
+	 */
+	public String key(int counter) {
+		return new String(keys[counter], 0, keyLengths[counter], StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @param counter - Counter index, 0 to size() - 1
+	 * @return Buffer holding the counter's word in its first keyLength(counter) bytes
+	 */
+	byte[] keyBytes(int counter) {
+		return keys[counter];
+	}
+
+	/**
+	 * @param counter - Counter index, 0 to size() - 1
+	 * @return Number of bytes in the counter's word
+	 */
+	int keyLength(int counter) {
+		return keyLengths[counter];
+	}
+
+	/**
+	 * @param counter - Counter index, 0 to size() - 1
+	 * @return Upper bound on the word's count
+	 */
+	public long count(int counter) {
+		return counts[counter];
+	}
+
+	/**
+	 * @param counter - Counter index, 0 to size() - 1
+	 * @return How much count(counter) may overstate the word's true count
+	 */
+	public long error(int counter) {
+		return errors[counter];
+	}
+
+	private void setKey(int entry, long hash, byte[] word, int offset, int length) {
+		if (keys[entry] == null || keys[entry].length < length) {
+			keys[entry] = new byte[Math.max(length, 16)];
+		}
+		System.arraycopy(word, offset, keys[entry], 0, length);
+		keyLengths[entry] = length;
+		hashes[entry] = hash;
+	}
+
+	private boolean keyEquals(int entry, byte[] word, int offset, int length) {
+		return keyLengths[entry] == length && Arrays.equals(keys[entry], 0, length, word, offset, offset + length);
+	}
+
+	/**
+	 * Removes a counter from the index, shifting later entries of its probe run back so lookups never need tombstones
+	 */
+	private void removeFromIndex(int entry) {
+		int mask = slots.length - 1;
+		int hole = (int) hashes[entry] & mask;
+		while (slots[hole] != entry + 1) {
+			hole = (hole + 1) & mask;
+		}
+		slots[hole] = 0;
+		int next = hole;
+		while (true) {
+			next = (next + 1) & mask;
+			if (slots[next] == 0) {
+				return;
+			}
+			int home = (int) hashes[slots[next] - 1] & mask;
+			boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+			if (!stays) {
+				slots[hole] = slots[next];
+				slots[next] = 0;
+				hole = next;
+			}
+		}
+	}
+
+	private void siftUp(int position) {
+		int entry = heap[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (counts[heap[parent]] <= counts[entry]) {
+				break;
+			}
+			place(heap[parent], position);
+			position = parent;
+		}
+		place(entry, position);
+	}
+
+	private void siftDown(int position) {
+		int entry = heap[position];
+		int child;
+		while ((child = 2 * position + 1) < size) {
+			if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+				child++;
+			}
+			if (counts[entry] <= counts[heap[child]]) {
+				break;
+			}
+			place(heap[child], position);
+			position = child;
+		}
+		place(entry, position);
+	}
+
+	private void place(int entry, int position) {
+		heap[position] = entry;
+		heapPosition[entry] = position;
+	}
+}
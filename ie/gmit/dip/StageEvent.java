@@ -0,0 +1,40 @@
+package ie.gmit.dip;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ *
+ * @author Conor Timlin
+ * JDK Flight Recorder event for one run of one pipeline stage (fetching a page, tokenizing a source, laying out a
+ * cloud, ...), begun and committed by a PipelineMetrics.Timer. Recorded only while a recording is running, e.g.
+ * java -XX:StartFlightRecording=filename=wordcloud.jfr ie.gmit.dip.Runner, and shown with
+ * jfr print --events ie.gmit.dip.Stage wordcloud.jfr. Otherwise creating and committing one costs next to nothing.
+ *
+ */
+
+@Name("ie.gmit.dip.Stage")
+@Label("Word Cloud Stage")
+@Category("Word Cloud")
+@Description("One run of a stage of the word cloud pipeline")
+@StackTrace(false)
+final class StageEvent extends Event {
+
+	/**
+	 * @param stage - Name of the PipelineMetrics.Stage
+	 * @param detail - What the stage worked on, e.g. a URL, or null
+	 * @param items - What the stage got through, see PipelineMetrics.Timer.setItems
+	 */
+	@Label("Stage")
+	String stage;
+
+	@Label("Detail")
+	String detail;
+
+	@Label("Items")
+	long items;
+}
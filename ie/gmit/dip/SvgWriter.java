@@ -0,0 +1,234 @@
+package ie.gmit.dip;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ *
+ * @author Conor Timlin
+ * Writes a WordLayout as an SVG document: one text element per word, with its position, font and colour, streamed
+ * straight to the output as the words are visited. Nothing is rasterised, so a cloud costs a few KB and no pixel
+ * work, and it stays sharp at any size in a browser.
+ *
+ * A viewer may not have the font a word was laid out in and substitute another of different width, which could
+ * make words overlap. Each word therefore carries its measured advance as textLength, so the substitute is squeezed
+ * or stretched to the space the layout gave it, and the family falls back to the generic serif, sans-serif or
+ * monospace family.
+ *
+ */
+
+public final class SvgWriter {
+
+	/**
+	 * @param EXTENSION - File extension that selects SVG output
+	 * @param METRICS - How advances are measured, as the renderer draws: anti-aliased with integer advances
+	 */
+	public static final String EXTENSION = ".svg";
+	private static final FontRenderContext METRICS = new FontRenderContext(null, true, false);
+
+	private SvgWriter() {
+	}
+
+	/**
+	 * @param fileName - Name of an output file
+	 * @return True if the name ends in .svg, in any case
+	 */
+	public static boolean isSvg(String fileName) {
+		return fileName.toLowerCase(Locale.ENGLISH).endsWith(EXTENSION);
+	}
+
+	/**
+	 * Writes a layout as UTF-8 SVG at its own size. Does not close the stream.
+	 * @param layout - Layout to write
+	 * @param out - Stream the document is written to
+	 * @throws IOException
+	 * Complexity: O(K L) - For K words of length L
+	 */
+	public static void write(WordLayout layout, OutputStream out) throws IOException {
+		write(layout, 1, out);
+	}
+
+	/**
+	 * Writes a layout as UTF-8 SVG. Does not close the stream.
+	 * @param layout - Layout to write
+	 * @param scale - Size the document asks to be shown at relative to the layout, coordinates are unchanged
+	 * @param out - Stream the document is written to
+	 * @throws IOException
+	 * Complexity: O(K L)
+	 */
+	public static void write(WordLayout layout, double scale, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		write(layout, scale, writer);
+		writer.flush();
+	}
+
+	/**
+	 * Writes a layout as SVG. Does not close or flush the writer.
+	 * @param layout - Layout to write
+	 * @param scale - Size the document asks to be shown at relative to the layout, coordinates are unchanged
+	 * @param out - Writer the document is written to
+	 * @throws IOException
+	 * Complexity: O(K L)
+	 */
+	public static void write(WordLayout layout, double scale, Writer out) throws IOException {
+		if (!(scale > 0) || Double.isInfinite(scale)) {
+			throw new IllegalArgumentException("Scale must be positive: " + scale);
+		}
+		StringBuilder line = new StringBuilder(256);
+		line.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		line.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+		number(line, layout.getWidth() * scale);
+		line.append("\" height=\"");
+		number(line, layout.getHeight() * scale);
+		line.append("\" viewBox=\"0 0 ").append(layout.getWidth()).append(' ').append(layout.getHeight());
+		line.append("\">\n");
+		// Words usually share one style, set it once for the group rather than on every word
+		int style = commonStyle(layout);
+		line.append("<g");
+		style(line, style);
+		line.append(">\n");
+		out.write(line.toString());
+		for (PlacedWord word : layout.getWords()) {
+			line.setLength(0);
+			text(line, word, style);
+			out.write(line.toString());
+		}
+		out.write("</g>\n</svg>\n");
+	}
+
+	/**
+	 * Appends one word's text element, with its style unless it is the group's
+	 */
+	private static void text(StringBuilder line, PlacedWord word, int groupStyle) {
+		Font font = word.getFont();
+		Color colour = word.getColour();
+		line.append("<text x=\"");
+		number(line, word.getTextX());
+		line.append("\" y=\"");
+		number(line, word.getBaseline());
+		line.append("\" font-family=\"");
+		escape(line, "'" + font.getFamily(Locale.ENGLISH).replace("'", "\\'") + "'");
+		line.append(", ").append(genericFamily(font)).append("\" font-size=\"");
+		number(line, font.getSize2D());
+		line.append('"');
+		if (font.getStyle() != groupStyle) {
+			style(line, font.getStyle());
+		}
+		line.append(" fill=\"#");
+		hex(line, colour.getRed());
+		hex(line, colour.getGreen());
+		hex(line, colour.getBlue());
+		if (colour.getAlpha() < 255) {
+			line.append("\" fill-opacity=\"");
+			number(line, colour.getAlpha() / 255.0);
+		}
+		line.append("\" textLength=\"");
+		number(line, font.getStringBounds(word.getWord(), METRICS).getWidth());
+		line.append("\" lengthAdjust=\"spacingAndGlyphs\" xml:space=\"preserve\">");
+		escape(line, word.getWord());
+		line.append("</text>\n");
+	}
+
+	/**
+	 * @return Style of every word, or -1 if they differ
+	 * Complexity: O(K)
+	 */
+	private static int commonStyle(WordLayout layout) {
+		int style = -1;
+		for (PlacedWord word : layout.getWords()) {
+			if (style == -1) {
+				style = word.getFont().getStyle();
+			} else if (style != word.getFont().getStyle()) {
+				return -1;
+			}
+		}
+		return style;
+	}
+
+	/**
+	 * Appends the weight and slant attributes of a Font style, none for -1
+	 */
+	private static void style(StringBuilder line, int style) {
+		if (style != -1 && (style & Font.BOLD) != 0) {
+			line.append(" font-weight=\"bold\"");
+		}
+		if (style != -1 && (style & Font.ITALIC) != 0) {
+			line.append(" font-style=\"italic\"");
+		}
+	}
+
+	/**
+	 * @return The generic CSS family closest to the font, for viewers without it
+	 */
+	private static String genericFamily(Font font) {
+		String family = font.getFamily(Locale.ENGLISH).toLowerCase(Locale.ENGLISH);
+		if (family.contains("mono") || family.equals(Font.DIALOG_INPUT.toLowerCase(Locale.ENGLISH))
+				|| family.contains("courier")) {
+			return "monospace";
+		}
+		if (family.contains("serif") && !family.contains("sans")) {
+			return "serif";
+		}
+		return "sans-serif";
+	}
+
+	/**
+	 * Appends a number to two decimal places, without trailing zeros or a locale's decimal comma
+	 */
+	private static void number(StringBuilder line, double value) {
+		long hundredths = Math.round(value * 100);
+		if (hundredths < 0) {
+			line.append('-');
+			hundredths = -hundredths;
+		}
+		line.append(hundredths / 100);
+		int fraction = (int) (hundredths % 100);
+		if (fraction != 0) {
+			line.append('.').append(fraction / 10);
+			if (fraction % 10 != 0) {
+				line.append(fraction % 10);
+			}
+		}
+	}
+
+	private static void hex(StringBuilder line, int channel) {
+		line.append(Character.forDigit(channel >>> 4, 16)).append(Character.forDigit(channel & 0xF, 16));
+	}
+
+	/**
+	 * Appends text escaped for XML content or a double-quoted attribute, dropping characters XML can't hold
+	 */
+	private static void escape(StringBuilder line, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				line.append("&amp;");
+				break;
+			case '<':
+				line.append("&lt;");
+				break;
+			case '>':
+				line.append("&gt;");
+				break;
+			case '"':
+				line.append("&quot;");
+				break;
+			default:
+				if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+					if (c != 0xFFFE && c != 0xFFFF) {
+						line.append(c);
+					}
+				}
+			}
+		}
+	}
+}
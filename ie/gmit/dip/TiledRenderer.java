@@ -0,0 +1,241 @@
+package ie.gmit.dip;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ * @author Conor Timlin
+ * Draws a finished WordLayout at any scale by splitting the output into square tiles and drawing each on a worker
+ * thread, through a Graphics2D clipped to the tile and translated (and scaled) so the layout lands in the right
+ * place. Only the words reaching a tile are drawn on it. Wall-clock time scales with the cores of the executor
+ * rather than staying on one thread, and text is drawn from its outlines at the target size, so a 1080p layout
+ * exported at 4x (8K) or larger stays sharp.
+ *
+ * Tiles are copied into bands one tile high, handed to a BandSink top to bottom. While the sink works on one band
+ * the next is drawn, so at most two bands and one tile per worker are held at a time whatever the height of the
+ * output: an 8K band of 512 pixels is 15MB. render(layout, scale) instead copies the tiles straight into one image.
+ *
+ */
+
+public final class TiledRenderer {
+
+	/**
+	 * @param DEFAULT_TILE_SIZE - Default width and height of a tile in pixels
+	 * @param tileSize - Width and height of a tile in pixels, and the height of a band
+	 * @param executor - Runs the tile tasks
+	 * @param tiles - Each worker thread's tile image, reused from tile to tile
+	 */
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	private final int tileSize;
+	private final Executor executor;
+	private final ThreadLocal<BufferedImage> tiles;
+
+	/**
+	 * Receives the output one band at a time, top to bottom
+	 */
+	public interface BandSink {
+		/**
+		 * @param y - Row of the output the band starts at
+		 * @param band - Full-width band, tileSize rows high (fewer for the last), only valid during the call
+		 * @throws IOException
+		 */
+		void band(int y, BufferedImage band) throws IOException;
+	}
+
+	/**
+	 * Band being drawn and the tasks drawing it
+	 */
+	private static final class Band {
+		private final int y;
+		private final BufferedImage image;
+		private final CompletableFuture<Void> done;
+
+		private Band(int y, BufferedImage image, CompletableFuture<Void> done) {
+			this.y = y;
+			this.image = image;
+			this.done = done;
+		}
+	}
+
+	/**
+	 * Creates a renderer with the default tile size, drawing on the common fork-join pool
+	 */
+	public TiledRenderer() {
+		this(DEFAULT_TILE_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param tileSize - Width and height of a tile in pixels
+	 * @param executor - Runs the tile tasks, CPU bound
+	 */
+	public TiledRenderer(int tileSize, Executor executor) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+		}
+		this.tileSize = tileSize;
+		this.executor = executor;
+		this.tiles = ThreadLocal.withInitial(() -> new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB));
+	}
+
+	/**
+	 * @param layout - Layout to draw
+	 * @param scale - Output pixels per layout pixel
+	 * @return Width of the output in pixels
+	 */
+	public static int outputWidth(WordLayout layout, double scale) {
+		return Math.max(1, (int) Math.ceil(layout.getWidth() * scale));
+	}
+
+	/**
+	 * @param layout - Layout to draw
+	 * @param scale - Output pixels per layout pixel
+	 * @return Height of the output in pixels
+	 */
+	public static int outputHeight(WordLayout layout, double scale) {
+		return Math.max(1, (int) Math.ceil(layout.getHeight() * scale));
+	}
+
+	/**
+	 * Draws a layout onto one new image, e.g. to show it or for encoders that need the whole picture.
+	 * @param layout - Layout to draw
+	 * @param scale - Output pixels per layout pixel
+	 * @return New transparent image with the words drawn on it
+	 * Complexity: O((T K + W H) / C) - Where T is the number of tiles, K of words, W x H the output and C the cores
+	 */
+	public BufferedImage render(WordLayout layout, double scale) {
+		checkScale(scale);
+		int width = outputWidth(layout, scale);
+		int height = outputHeight(layout, scale);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		// Bands are views of the image, so tiles are copied straight into place and nothing is left for a sink to do
+		Band current = submitBand(layout, scale, subimage(image, 0), 0);
+		while (current != null) {
+			int next = current.y + tileSize;
+			Band following = next < height ? submitBand(layout, scale, subimage(image, next), next) : null;
+			await(current.done);
+			current = following;
+		}
+		return image;
+	}
+
+	/**
+	 * Draws a layout band by band, streaming the bands to a sink in order.
+	 * @param layout - Layout to draw
+	 * @param scale - Output pixels per layout pixel
+	 * @param sink - Receives each band, on the calling thread
+	 * @throws IOException - If the sink throws, no further bands are delivered
+	 * Complexity: O((T K + W H) / C)
+	 */
+	public void render(WordLayout layout, double scale, BandSink sink) throws IOException {
+		checkScale(scale);
+		int width = outputWidth(layout, scale);
+		int height = outputHeight(layout, scale);
+		Band current = submitBand(layout, scale, newBand(width, height, 0), 0);
+		try {
+			while (current != null) {
+				int next = current.y + tileSize;
+				Band following = next < height ? submitBand(layout, scale, newBand(width, height, next), next) : null;
+				await(current.done);
+				Band delivered = current;
+				current = following;
+				sink.band(delivered.y, delivered.image);
+			}
+		} finally {
+			if (current != null) {
+				current.done.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * @return New image for the band at row y
+	 */
+	private BufferedImage newBand(int width, int height, int y) {
+		return new BufferedImage(width, Math.min(tileSize, height - y), BufferedImage.TYPE_INT_ARGB);
+	}
+
+	/**
+	 * @return View of the rows of a whole image making up the band at row y, sharing its pixels
+	 */
+	private BufferedImage subimage(BufferedImage whole, int y) {
+		return whole.getSubimage(0, y, whole.getWidth(), Math.min(tileSize, whole.getHeight() - y));
+	}
+
+	/**
+	 * Starts drawing the tiles of the band at row y onto the band's image
+	 */
+	private Band submitBand(WordLayout layout, double scale, BufferedImage image, int y) {
+		int width = image.getWidth();
+		int bandHeight = image.getHeight();
+		int tiles = (width + tileSize - 1) / tileSize;
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[tiles];
+		for (int i = 0; i < tiles; i++) {
+			int x = i * tileSize;
+			int tileWidth = Math.min(tileSize, width - x);
+			tasks[i] = CompletableFuture.runAsync(() -> drawTile(layout, scale, image, x, y, tileWidth, bandHeight),
+					executor);
+		}
+		return new Band(y, image, CompletableFuture.allOf(tasks));
+	}
+
+	/**
+	 * Draws the words reaching one tile onto the worker's tile image and copies it into the band. Bands are only
+	 * written by their own tiles, each to a separate region.
+	 * Complexity: O(K + w h) - Testing the K words, drawing the w x h tile
+	 */
+	private void drawTile(WordLayout layout, double scale, BufferedImage band, int x, int y, int tileWidth,
+			int tileHeight) {
+		BufferedImage tile = tiles.get();
+		Arrays.fill(((DataBufferInt) tile.getRaster().getDataBuffer()).getData(), 0);
+		Graphics2D g2 = WordCloudRenderer.createGraphics(tile);
+		try {
+			g2.clipRect(0, 0, tileWidth, tileHeight);
+			g2.translate(-x, -y);
+			g2.scale(scale, scale);
+			// The tile in layout coordinates
+			Rectangle2D area = new Rectangle2D.Double(x / scale, y / scale, tileWidth / scale, tileHeight / scale);
+			for (PlacedWord word : layout.getWords()) {
+				Rectangle2D bounds = word.getBounds();
+				// Italic and overhanging glyphs can reach past a word's box, allow half its size either side
+				double margin = word.getFont().getSize2D() / 2;
+				if (area.intersects(bounds.getX() - margin, bounds.getY() - margin,
+						bounds.getWidth() + 2 * margin, bounds.getHeight() + 2 * margin)) {
+					word.draw(g2);
+				}
+			}
+		} finally {
+			g2.dispose();
+		}
+		band.getRaster().setDataElements(x, 0, tile.getRaster().createChild(0, 0, tileWidth, tileHeight, 0, 0, null));
+	}
+
+	private static void checkScale(double scale) {
+		if (!(scale > 0) || Double.isInfinite(scale)) {
+			throw new IllegalArgumentException("Scale must be positive: " + scale);
+		}
+	}
+
+	private static void await(CompletableFuture<Void> done) {
+		try {
+			done.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package ie.gmit.dip;
+
+/**
+ *
+ * @author Conor Timlin
+ * TokenSink interface describes anything that consumes the words produced by a Tokenizer.
+ * See Tokenizer
+ */
+public interface TokenSink {
+
+	/**
+	 * Accepts a single cleaned, lower case word. The array is owned and reused by the Tokenizer so
+	 * implementations must copy any bytes they want to keep.
+	 * @param word - Buffer holding the word in its first length bytes
+	 * @param length - Number of bytes making up the word
+	 */
+	public void accept(byte[] word, int length);
+
+	/**
+	 * Called by Tokenizer.finish once the source has ended and its last word has been accepted. Does nothing
+	 * unless overridden, e.g. to report what a source held.
+	 * @param bytes - Size of the source in bytes, as far as the Tokenizer saw it
+	 */
+	public default void end(long bytes) {
+	}
+}
@@ -0,0 +1,165 @@
+package ie.gmit.dip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * @author Conor Timlin
+ * Single pass tokenizer that scans raw bytes instead of Strings. Words are split on spaces and line breaks,
+ * anything inside a <i>&lt;tag&gt;</i> within a word is dropped, every byte that isn't a letter is skipped and
+ * case is folded with a lookup table. Produces the same words as the old split/replaceAll/toLowerCase chain
+ * without creating any intermediate Strings or regexes.
+ *
+ * State is kept between calls to feed() so a source can be pushed through in any number of blocks.
+ *
+ */
+
+public class Tokenizer {
+
+	/**
+	 * @param BUFFER_SIZE - Size of the block read from an InputStream at a time
+	 * @param FOLD - Lookup table mapping a byte to its lower case letter, or 0 if the byte isn't a letter
+	 * @param sink - Consumer of each finished word
+	 * @param word - Reusable buffer holding the word currently being built
+	 * @param length - Number of bytes in the current word
+	 * @param tagMark - Length of the word when the currently open '<' was seen
+	 * @param inTag - True while a '<' has been seen in this word without a matching '>'
+	 * @param bytes - Bytes read through tokenize or feed(ByteBuffer) since the last finish
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+	protected static final byte[] FOLD = new byte[256];
+
+	static {
+		for (int c = 'a'; c <= 'z'; c++) {
+			FOLD[c] = (byte) c;
+			FOLD[c - ('a' - 'A')] = (byte) c;
+		}
+	}
+
+	protected final TokenSink sink;
+	private byte[] word = new byte[64];
+	private int length;
+	private int tagMark;
+	private boolean inTag;
+	private long bytes;
+
+	/**
+	 * @param sink - Consumer that each word is passed to
+	 */
+	public Tokenizer(TokenSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Reads the whole stream in blocks and tokenizes it. Does not close the stream.
+	 * @param in - Source of bytes
+	 * @return Number of bytes read
+	 * @throws IOException
+	 * Complexity: O(N) - Where N is the number of bytes in the stream
+	 */
+	public long tokenize(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long total = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			total += read;
+			bytes += read;
+			feed(buffer, 0, read);
+		}
+		finish();
+		return total;
+	}
+
+	/**
+	 * Scans a block of bytes. A word cut off at the end of the block is carried into the next call.
+	 * An opening '<' marks where the word was, a later '>' in the same word rolls it back to that mark
+	 * (the same as removing <i>&lt;[^&gt;]*&gt;</i>). A '<' that is never closed is simply dropped.
+	 * @param buffer - Bytes to scan
+	 * @param offset - Position of the first byte
+	 * @param count - Number of bytes to scan
+	 * Complexity: O(N) - Where N is count, one table lookup per byte
+	 */
+	public void feed(byte[] buffer, int offset, int count) {
+		int end = offset + count;
+		for (int i = offset; i < end; i++) {
+			int b = buffer[i] & 0xFF;
+			byte letter = FOLD[b];
+			if (letter != 0) {
+				append(letter);
+			} else if (isWordBreak(b)) {
+				endWord();
+			} else if (b == '<') {
+				if (!inTag) {
+					inTag = true;
+					tagMark = length;
+				}
+			} else if (b == '>' && inTag) {
+				length = tagMark;
+				inTag = false;
+			}
+		}
+	}
+
+	/**
+	 * Scans the remaining bytes of a ByteBuffer (e.g. a memory mapped region) by copying them in blocks into a
+	 * scratch array. The buffer's position is moved to its limit.
+	 * @param buffer - Bytes to scan
+	 * Complexity: O(N) - Where N is buffer.remaining()
+	 */
+	public void feed(ByteBuffer buffer) {
+		bytes += buffer.remaining();
+		byte[] block = new byte[Math.min(BUFFER_SIZE, Math.max(buffer.remaining(), 1))];
+		while (buffer.hasRemaining()) {
+			int count = Math.min(block.length, buffer.remaining());
+			buffer.get(block, 0, count);
+			feed(block, 0, count);
+		}
+	}
+
+	/**
+	 * Flushes the last word once the source has been fully fed, then tells the sink the source has ended and how many
+	 * bytes it was (counted by tokenize and feed(ByteBuffer), blocks passed straight to feed aren't).
+	 * Complexity: O(1)
+	 */
+	public void finish() {
+		endWord();
+		sink.end(bytes);
+		bytes = 0;
+	}
+
+	/**
+	 * @param b - Unsigned byte value
+	 * @return True if the byte separates words (space or line break)
+	 */
+	public static boolean isWordBreak(int b) {
+		return b == ' ' || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Adds a folded letter to the current word, growing the buffer if a very long word turns up.
+	 * @param letter - Lower case letter
+	 * Complexity: O(1) amortised
+	 */
+	protected final void append(byte letter) {
+		if (length == word.length) {
+			byte[] bigger = new byte[word.length << 1];
+			System.arraycopy(word, 0, bigger, 0, length);
+			word = bigger;
+		}
+		word[length++] = letter;
+	}
+
+	/**
+	 * Hands the current word (if any) to the sink and starts a new one.
+	 * Complexity: O(1) - Plus whatever the sink does
+	 */
+	protected final void endWord() {
+		if (length > 0) {
+			sink.accept(word, length);
+		}
+		length = 0;
+		inTag = false;
+	}
+}
@@ -3,30 +3,515 @@ package ie.gmit.dip;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
 *
 * @author Conor Timlin
 * Impl Class of Abstract Parser class. Provides small amount of additional refining of behaviors of Abstract class Parser, which it extends.
-* (In good place to be expanded upon)
+* 
+* Pages are fetched with java.net.http.HttpClient, several at once on I/O workers (virtual threads where the runtime has
+* them, see Workers), with at most maxInFlight fetches under way and maxPerHost requests open to any one host. Each
+* response body is pushed through the HtmlTokenizer as its buffers arrive, counted into a table of its own and merged
+* into the one frequencyTable when the page finishes, so a list of URLs produces a single word cloud. Given caches
+* (opt-in, see setResponseCache and setTableCache), pages are kept in an HttpResponseCache and revalidated with
+* conditional GETs, and the counts of each page version in a ParseCache, so an unchanged page is neither downloaded nor
+* tokenised again. Without them every page is downloaded and counted in full and nothing is written to disk.
 * 
 */
 
 public class URLParser extends Parser {
 
 	/**
-	 * Parse method accepts string source for WordCloud analysis. Delegates to its parent, abstract class Parser and provides DataSource enum
-	 * to indicate how to process the source. (More concrete implementation should have been here)
+	 * @param DEFAULT_CONNECT_TIMEOUT - Default time allowed to open a connection
+	 * @param DEFAULT_READ_TIMEOUT - Default time allowed for the response headers, and between buffers of the body
+	 * @param DEFAULT_MAX_PER_HOST - Default number of requests open to one host at the same time
+	 * @param DEFAULT_MAX_IN_FLIGHT - Default number of URLs being fetched at the same time, over all hosts
+	 * @param client - HttpClient requests are sent with
+	 * @param readTimeout - Time allowed for the response headers, and between buffers of the body
+	 * @param maxPerHost - Number of requests open to one host at the same time
+	 * @param maxInFlight - Number of URLs being fetched at the same time, each on a worker thread of its own
+	 * @param hostLimits - Semaphore of maxPerHost permits for each host
+	 * @param responseCache - Stored copies of pages for conditional GETs, null to always download
+	 * @param tableCache - Cache of the counts of each stored page version, null to always tokenise
+	 * @param urlsParsed - URLs counted by the last parse
+	 * @param urlsFailed - URLs that could not be fetched by the last parse
+	 */
+	public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+	public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+	public static final int DEFAULT_MAX_PER_HOST = 6;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+	private final HttpClient client;
+	private Duration readTimeout = DEFAULT_READ_TIMEOUT;
+	private int maxPerHost = DEFAULT_MAX_PER_HOST;
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<String, Semaphore>();
+	private HttpResponseCache responseCache;
+	private ParseCache tableCache;
+	private int urlsParsed;
+	private int urlsFailed;
+
+	/**
+	 * Creates a URLParser with its own HttpClient, following redirects and using DEFAULT_CONNECT_TIMEOUT
+	 */
+	public URLParser() {
+		this(HttpClient.newBuilder()
+				.connectTimeout(DEFAULT_CONNECT_TIMEOUT)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build());
+	}
+
+	/**
+	 * Creates a URLParser sending its requests with the given client, e.g. one set up for a local test server
+	 * @param client - HttpClient to send requests with, its connect timeout and redirect policy are used as they are
+	 */
+	public URLParser(HttpClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Parse method accepts string source for WordCloud analysis. Fetches the one page, see parse(List)
 	 * @param source - String containing source to a Static URL
-	 * Complexity: O(1) - Simple method invocation
+	 * @throws IOException if the page can't be fetched
+	 * Complexity: O(N) - Where N is the size of the page
 	 */
 	@Override
 	public void parse(String source) throws IOException {
-		super.addToHashMap(source, DataSource.URL);
+		parse(Collections.singletonList(source));
+	}
+
+	/**
+	 * Fetches every URL concurrently and counts all of them into the one frequencyTable. URLs that fail (bad address,
+	 * timeout, non 2xx status) are skipped and counted in getURLsFailed; the rest still make up the cloud.
+	 * @param urls - Static URLs to analyse
+	 * @throws IOException if not one of the URLs could be fetched, carrying the first failure
+	 * Complexity: O(N) - Where N is the total size of the pages, spread over the workers
+	 */
+	public void parse(List<String> urls) throws IOException {
+		// Without virtual threads each fetch is a platform thread, so only maxInFlight are started at once
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		ExecutorService workers = Workers.newIoExecutor("url-parser");
+		List<Future<?>> fetches = new ArrayList<Future<?>>(urls.size());
+		try {
+			for (String url : urls) {
+				inFlight.acquireUninterruptibly();
+				fetches.add(workers.submit(() -> {
+					try {
+						mergeCounts(fetch(url));
+						return null;
+					} finally {
+						inFlight.release();
+					}
+				}));
+			}
+		} finally {
+			workers.shutdown();
+		}
+
+		IOException firstFailure = null;
+		int parsed = 0;
+		int failed = 0;
+		for (Future<?> fetch : fetches) {
+			try {
+				awaitUninterruptibly(fetch);
+				parsed++;
+			} catch (ExecutionException e) {
+				failed++;
+				if (firstFailure == null) {
+					firstFailure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+							: new IOException(e.getCause());
+				}
+			}
+		}
+		urlsParsed = parsed;
+		urlsFailed = failed;
+
+		if (parsed == 0 && firstFailure != null) {
+			throw firstFailure;
+		}
+		if (failed > 0) {
+			System.out.println(ConsoleColour.YELLOW);
+			System.out.println("[WARNING] " + failed + " URL(s) could not be fetched and were skipped");
+			System.out.println(ConsoleColour.RESET);
+		}
+	}
+
+	/**
+	 * Fetches one page and counts it into a table of its own. A page in the response cache within its ttl is used
+	 * without asking the server; an older one is revalidated with a conditional GET, a 304 using the stored copy.
+	 * Counts of a stored copy come from the table cache when they are there, otherwise the stored body is tokenised.
+	 * @param url - Static URL to fetch
+	 * @return Table of the page's counts
+	 * @throws IOException if the URL is malformed, can't be reached, times out or answers with a non 2xx status
+	 * Complexity: O(N) - Where N is the size of the page, O(V) when its counts are cached
+	 */
+	private WordCountTable fetch(String url) throws IOException {
+		URI uri;
+		try {
+			uri = URI.create(url.trim());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed URL: " + url, e);
+		}
+		if (uri.getHost() == null) {
+			throw new IOException("Malformed URL: " + url);
+		}
+		IgnoreWordFilter filter = getIgnoreFilter();
+		HttpResponseCache.Entry cached = responseCache == null ? null : responseCache.lookup(uri);
+		if (cached != null && responseCache.isFresh(cached)) {
+			WordCountTable counts = cachedCounts(cached, filter);
+			if (counts != null) {
+				return counts;
+			}
+			cached = null;
+		}
+
+		Semaphore hostLimit = hostLimits.computeIfAbsent(uri.getHost().toLowerCase(Locale.ROOT),
+				host -> new Semaphore(maxPerHost));
+		hostLimit.acquireUninterruptibly();
+		try {
+			WordCountTable counts = download(uri, cached, filter);
+			if (counts == null) {
+				// The stored copy went missing after the 304, fetch the page in full
+				counts = download(uri, null, filter);
+			}
+			return counts;
+		} finally {
+			hostLimit.release();
+		}
+	}
+
+	/**
+	 * Sends the request for a page and streams the body into the tokenizer, and into the response cache when
+	 * there is one.
+	 * @param uri - Address of the page
+	 * @param cached - Stored copy to revalidate, or null for an unconditional GET
+	 * @param filter - Ignore words the counts are made with, part of the table cache key
+	 * @return Table of the page's counts, or null if the server answered 304 but the stored copy can't be read
+	 * @throws IOException if the page can't be reached, times out or answers with a non 2xx status
+	 * Complexity: O(N) - Where N is the size of the page
+	 */
+	private WordCountTable download(URI uri, HttpResponseCache.Entry cached, IgnoreWordFilter filter)
+			throws IOException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(readTimeout).GET();
+		if (cached != null) {
+			cached.conditional(request);
+		}
+		WordCountTable counts = new WordCountTable();
+		TokenizingSubscriber body = new TokenizingSubscriber(newTokenizer(counterFor(counts)));
+		BodyHandler<Void> handler = response -> {
+			if (response.statusCode() == 304 && cached != null) {
+				body.notModified = response.headers();
+				body.done.complete(null);
+				return BodySubscribers.replacing(null);
+			}
+			if (response.statusCode() / 100 != 2) {
+				body.done.completeExceptionally(new IOException("HTTP " + response.statusCode() + " from " + uri));
+				return BodySubscribers.replacing(null);
+			}
+			if (responseCache != null) {
+				try {
+					body.cacheWriter = responseCache.begin(uri, response.headers());
+				} catch (IOException e) {
+					// The page is still counted, just not kept
+				}
+			}
+			return BodySubscribers.fromSubscriber(body);
+		};
+		try (PipelineMetrics.Timer timer = getMetrics().time(PipelineMetrics.Stage.FETCH, uri.toString())) {
+			client.sendAsync(request.build(), handler).whenComplete((response, e) -> {
+				if (e != null) {
+					Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+					body.done.completeExceptionally(cause);
+				}
+			});
+			try {
+				body.await(readTimeout);
+			} catch (IOException e) {
+				body.abortCaching();
+				throw e;
+			}
+			timer.setItems(body.bytes);
+		}
+
+		if (body.notModified != null) {
+			try {
+				return cachedCounts(responseCache.revalidated(cached, body.notModified), filter);
+			} catch (IOException e) {
+				return cachedCounts(cached, filter);
+			}
+		}
+		HttpResponseCache.Writer writer = body.cacheWriter;
+		if (writer != null) {
+			try {
+				storeCounts(writer.commit(), filter, counts);
+			} catch (IOException e) {
+				System.out.println(ConsoleColour.YELLOW);
+				System.out.println("[WARNING] Could not cache " + uri + ": " + e.getMessage());
+				System.out.println(ConsoleColour.RESET);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts of a page in the response cache, loaded from the table cache or else tokenised from the stored body.
+	 * @param entry - Stored copy of the page
+	 * @param filter - Ignore words the counts are made with
+	 * @return Table of the page's counts, or null if the stored body can't be read
+	 * Complexity: O(V) on a table cache hit, O(N) otherwise where N is the size of the page
+	 */
+	private WordCountTable cachedCounts(HttpResponseCache.Entry entry, IgnoreWordFilter filter) {
+		if (tableCache != null) {
+			WordCountTable counts = tableCache.load(tableCache.keyFor(entry.getURI().toString(), entry.getVersion(), filter));
+			if (counts != null) {
+				return counts;
+			}
+		}
+		WordCountTable counts = new WordCountTable();
+		try (InputStream in = responseCache.openBody(entry)) {
+			addToTable(in, counts);
+		} catch (IOException e) {
+			return null;
+		}
+		storeCounts(entry, filter, counts);
+		return counts;
+	}
+
+	private void storeCounts(HttpResponseCache.Entry entry, IgnoreWordFilter filter, WordCountTable counts) {
+		if (tableCache == null) {
+			return;
+		}
+		try {
+			tableCache.store(tableCache.keyFor(entry.getURI().toString(), entry.getVersion(), filter), counts);
+		} catch (IOException e) {
+			System.out.println(ConsoleColour.YELLOW);
+			System.out.println("[WARNING] Could not cache results: " + e.getMessage());
+			System.out.println(ConsoleColour.RESET);
+		}
+	}
+
+	private static void awaitUninterruptibly(Future<?> future) throws ExecutionException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					future.get();
+					return;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Subscriber for a response body that feeds each buffer to a Tokenizer as it arrives, so a page is counted while it
+	 * downloads and never held in memory whole. Buffers are requested one batch at a time, so a slow tokenizer holds the
+	 * connection back rather than letting buffers pile up.
+	 */
+	private static class TokenizingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+		private final Tokenizer tokenizer;
+		private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		private volatile Flow.Subscription subscription;
+		private volatile long lastActivity = System.nanoTime();
+		private volatile HttpResponseCache.Writer cacheWriter;
+		private volatile HttpHeaders notModified;
+		private long bytes;
+
+		TokenizingSubscriber(Tokenizer tokenizer) {
+			this.tokenizer = tokenizer;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (done.isDone()) {
+				subscription.cancel();
+			} else {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			lastActivity = System.nanoTime();
+			for (ByteBuffer buffer : buffers) {
+				HttpResponseCache.Writer writer = cacheWriter;
+				if (writer != null) {
+					try {
+						writer.write(buffer);
+					} catch (IOException e) {
+						abortCaching();
+					}
+				}
+				bytes += buffer.remaining();
+				tokenizer.feed(buffer);
+			}
+			subscription.request(1);
+		}
+
+		/**
+		 * Stops storing the body, throwing away what was written of it
+		 */
+		void abortCaching() {
+			HttpResponseCache.Writer writer = cacheWriter;
+			cacheWriter = null;
+			if (writer != null) {
+				writer.abort();
+			}
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			done.completeExceptionally(e);
+		}
+
+		@Override
+		public void onComplete() {
+			tokenizer.finish();
+			done.complete(null);
+		}
+
+		/**
+		 * Waits for the whole body, giving up if no buffer arrives for readTimeout.
+		 * @param readTimeout - Longest allowed gap between buffers
+		 * @throws IOException if the request failed or timed out
+		 */
+		void await(Duration readTimeout) throws IOException {
+			long timeout = readTimeout.toNanos();
+			try {
+				while (true) {
+					try {
+						// Only wait out what is left of the gap since the last buffer
+						done.get(Math.max(1, timeout - (System.nanoTime() - lastActivity)), TimeUnit.NANOSECONDS);
+						return;
+					} catch (TimeoutException e) {
+						if (System.nanoTime() - lastActivity >= timeout) {
+							done.completeExceptionally(new HttpTimeoutException("Read timed out"));
+							Flow.Subscription current = subscription;
+							if (current != null) {
+								current.cancel();
+							}
+						}
+					}
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading", e);
+			}
+		}
+	}
+
+	/**
+	 * Sets the time allowed for a response's headers, and between buffers of its body.
+	 * @param readTimeout - Read timeout, must be positive
+	 * Complexity: O(1)
+	 */
+	public void setReadTimeout(Duration readTimeout) {
+		if (readTimeout.isNegative() || readTimeout.isZero()) {
+			throw new IllegalArgumentException("Read timeout must be positive: " + readTimeout);
+		}
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Sets how many requests may be open to one host at the same time. Takes effect from the next parse.
+	 * @param maxPerHost - Bound on concurrent requests per host, at least 1
+	 * Complexity: O(1)
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		this.maxPerHost = Math.max(1, maxPerHost);
+		hostLimits.clear();
+	}
+
+	/**
+	 * Sets how many URLs may be fetched at the same time, over all hosts. Takes effect from the next parse.
+	 * @param maxInFlight - Bound on concurrent fetches, at least 1
+	 * Complexity: O(1)
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * Sets the cache of downloaded pages used to skip unchanged downloads. There is none unless one is set.
+	 * @param responseCache - HttpResponseCache to use, or null to always download in full
+	 * Complexity: O(1)
+	 */
+	public void setResponseCache(HttpResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Sets the cache of page counts used to skip tokenising a page version already counted. There is none unless one is
+	 * set, and it is only used together with a response cache, which gives each page version its key.
+	 * @param tableCache - ParseCache to use, or null to always tokenise
+	 * Complexity: O(1)
+	 */
+	public void setTableCache(ParseCache tableCache) {
+		this.tableCache = tableCache;
+	}
+
+	/**
+	 * @return Number of URLs counted by the last parse
+	 */
+	public int getURLsParsed() {
+		return urlsParsed;
+	}
+
+	/**
+	 * @return Number of URLs the last parse had to skip
+	 */
+	public int getURLsFailed() {
+		return urlsFailed;
+	}
+
+	/**
+	 * Pages are HTML, so they are read with the HtmlTokenizer: only visible text is counted, tags, comments,
+	 * scripts and styles are skipped and entities are decoded in the same single pass.
+	 * @param sink - Consumer the words are passed to
+	 * @return HtmlTokenizer feeding sink
+	 * Complexity: O(1)
+	 */
+	@Override
+	protected Tokenizer newTokenizer(TokenSink sink) {
+		return new HtmlTokenizer(sink);
 	}
 	
 	
@@ -42,12 +527,12 @@ public class URLParser extends Parser {
 	
 	/**
 	 * SortByWordFrequency Abstracts sorting the frequencyTable and assigning to TreeSet to its parent class
-	 * @param frequencyTable - Hashmap<String,Integer> that will track words(keys) and their Integer values. 
+	 * @param frequencyTable - Map<String,Integer> that will track words(keys) and their Integer values. 
 	 * @param numberOfWords  - Number of words user wishes to track in their word cloud
 	 * @return - Returns sorted TreeSet<Entry<String,Integer> based on frequencyTable and the Supplied EntryComparator
 	 * Complexity: O(1) - Simple Method Invocation
 	 */
-	public TreeSet<Entry<String, Integer>> sortByWordFrequency(HashMap<String, Integer> frequencyTable,
+	public TreeSet<Entry<String, Integer>> sortByWordFrequency(Map<String, Integer> frequencyTable,
 			int numberOfWords) {
 		return super.sortByWordFrequency(frequencyTable);
 	}
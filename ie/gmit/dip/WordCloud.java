@@ -2,27 +2,29 @@ package ie.gmit.dip;
 
 import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
-import java.awt.RenderingHints;
+import java.awt.HeadlessException;
 import java.awt.Toolkit;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.image.VolatileImage;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.TreeSet;
-import javax.imageio.ImageIO;
+import java.util.concurrent.TimeUnit;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 
 /**
@@ -34,10 +36,11 @@ import javax.swing.WindowConstants;
  * 
  *          Word Cloud Class extends JPanel to access some interesting drawing
  *          features. Class Draws a WordCloud both to the users screen and
- *          outputs the image to the local src directory. Very Basic Collision
- *          detection is included however at larger font sizes/larger word
- *          counts this can cause OverFlow error. Some more time here would have
- *          yielded a cleaner WordCloud but the result isn't too bad.
+ *          outputs the image to the local src directory. The cloud itself is
+ *          laid out once into a WordLayout and rendered once, off screen, by a
+ *          WordCloudRenderer; the panel only blits that image and the PNG is
+ *          written in the background. Without a display (headless) the image is
+ *          written and no frame is opened.
  *
  */
 
@@ -48,217 +51,279 @@ public class WordCloud extends JPanel {
 	// ========================================================================================
 
 	/**
-	 * @param outputImage          - Image that is written to the current directory
-	 *                             after wordcloud is generated.
-	 * @param graphics             - Graphics2D object that draws to the
-	 *                             BufferedImage outputImage.
-	 * @param wordBoxes            - List of 2D Rectangles to handle collision with
-	 *                             Strings.
+	 * @param RENDERER             - Renderer drawing the cloud, shared since it
+	 *                             holds no per-cloud state.
+	 * @param TILES                - Draws layouts tile by tile on every core,
+	 *                             for the screen and for exports.
 	 * @param RANDOM               - random object to help with choosing random
 	 *                             values, colours etc.
+	 * @param DEFAULT_SIZE         - Canvas size used when there is no screen
+	 *                             to measure (headless).
+	 * @param LAYOUT_TIMEOUT       - Seconds the layout may take before the
+	 *                             words not yet placed are dropped.
+	 * @param MAX_EXPORT_SCALE     - Largest export scale accepted.
 	 * @param MAX_WORDS_TO_DISPLAY - incorrectly named as if it were a final, value
 	 *                             set by user to display desired number of words in
 	 *                             the word cloud, default value is 10.
 	 * @param AR                   - ArrayList of EntrySets from TreeSet, contains
 	 *                             the number of elements user wishes displayed on
 	 *                             word cloud.
-	 * @param screenSize           - User's screensize. Hopefully will display the
+	 * @param screenSize           - User's screensize, measured the first time a
+	 *                             cloud is drawn. Hopefully will display the
 	 *                             wordcloud on the full screen of the user
 	 * @param outputFileName       - Name of output image default value, will be set
 	 *                             by user
+	 * @param exportScale          - Size of the exported image relative to the
+	 *                             screen, e.g. 4 turns a 1080p cloud into 8K.
+	 * @param encoder              - PNG encoder of exports, its compression
+	 *                             level and palette set by the user.
+	 * @param image                - The rendered cloud this panel shows
+	 * @param screenCopy           - Copy of image in video memory, made on
+	 *                             first paint and again if the display loses it
 	 */
-	private static BufferedImage outputImage = new BufferedImage(1920, 1080, BufferedImage.TYPE_4BYTE_ABGR); // Output
-																												// Image
-	private static Graphics2D graphics = outputImage.createGraphics(); // Graphics to write to image
-	private static List<Rectangle2D> wordBoxes = new ArrayList<Rectangle2D>(); // List of Rectangle Hitboxes
+	private static final WordCloudRenderer RENDERER = new WordCloudRenderer(
+			WordCloudRenderer.Packing.GLYPHS); // Renderer
+	private static final TiledRenderer TILES = new TiledRenderer(); // Tiled multi-threaded drawing
 	private static final Random RANDOM = new Random(); // Random Obj
+	private static final Dimension DEFAULT_SIZE = new Dimension(1920, 1080); // Headless canvas size
+	private static final int LAYOUT_TIMEOUT = 10; // Layout deadline in seconds
+	public static final int MAX_EXPORT_SCALE = 8; // Largest export scale
 	private static int MAX_WORDS_TO_DISPLAY = 10; // Max words to display in cloud
 	private static ArrayList<Entry<String, Integer>> AR; // ArrayList of Entries of Words and Values to display to Word
 															// Cloud
-	private static Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize(); // ScreenSize
+	private static Dimension screenSize; // ScreenSize, see screenSize()
 	private static String outputFileName = "output.png";
+	private static volatile int exportScale = 1; // Export size relative to the screen
+	private static volatile PngEncoder encoder = new PngEncoder(); // Parallel PNG encoder of exports
+
+	private final BufferedImage image;
+	private VolatileImage screenCopy;
+
+	/**
+	 * @param image - Rendered cloud to show
+	 */
+	private WordCloud(BufferedImage image) {
+		this.image = image;
+	}
 
 	// ================================================================================
 	// Behaviours
 	// =======================================================================================
 
 	/**
-	 * Method to set everything in motion. Calls for the JFrame to initialse,
-	 * initialises AR and writes the text based results to local directory.
+	 * Method to set everything in motion. Initialises AR, writes the text based
+	 * results to local directory, then draws the cloud.
 	 * Complexity: O(1) - Method invocation
 	 * 
 	 * @param ts - TreeSet of EntrySets from the text analyis
 	 * @throws IOException
 	 */
 	public static void createWordCloud(TreeSet<Entry<String, Integer>> ts) throws IOException {
-		initialiseFrame();
-		AR = getFirstK(ts, MAX_WORDS_TO_DISPLAY);
-		FileOutputWriter.writeResults(AR);
+		createWordCloud(getFirstK(ts, MAX_WORDS_TO_DISPLAY));
 	}
 
 	/**
-	 * Method invoked by Swing to draw components. Core method to drawing the word
-	 * cloud. For each word to display a randomFont is selected from utility method
-	 * pickRandomFontFamily, Font Size is selected with a very, very rudimentary
-	 * method getFontSize().
-	 *
-	 * Font Metrics are used to get the collision box of the String to be drawn and
-	 * the rectangle and location are generated in the generateRectangle method.
-	 * Finally the String is drawn to the JFrame and to the BufferedImage
-	 * Complexity: Arguably O(N) or O(N!) The paint method runs N number of times
-	 * where N is MAX_WORDS_TO_DISPLAY. Technically this method Runs O(N) and the
-	 * recursive generateRectangle method runs in a worst case of O(N!)
+	 * Overloaded method taking the words already selected, e.g. from Parser.topK, so no TreeSet of the whole
+	 * vocabulary is needed. The cloud is laid out and rendered once at screen size (not at all for an SVG without
+	 * a display), written to outputFileName in the background and, if there is a display, shown in a frame.
+	 * The text results are written by the export once the file is finished, so their metrics cover every stage,
+	 * the encode included.
+	 * Complexity: O(1) - Method invocation
+	 * 
+	 * @param topWords - Words to display, most frequent first
+	 * @throws IOException
 	 */
-	@Override
-	public void paint(Graphics g) {
-		Graphics2D g2 = (Graphics2D) g;
-		for (int i = 0; i < MAX_WORDS_TO_DISPLAY; i++) {
-			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-			Font fontToUse = new Font(pickRandomFontFamily(), Font.BOLD + Font.ITALIC, getFontSize(i));
-			g2.setFont(fontToUse);
-			g2.setPaint(pickRandomColour());
-
-			// ===========FONTMETRICS================//
-			FontMetrics FM = g2.getFontMetrics(fontToUse);
-			Rectangle2D stringRect = generateRectangle(FM, i, g2);
-
-			// ======================Draw the String, Draw the bounding box around it
-			g2.drawString(AR.get(i).getKey(), (float) stringRect.getX(), (float) stringRect.getY() + FM.getAscent());
-			g2.draw(stringRect);
-
-			graphics.setFont(fontToUse);
-			graphics.setColor(pickRandomColour());
-			graphics.drawString(AR.get(i).getKey(), (float) stringRect.getX(),
-					(float) stringRect.getY() + FM.getAscent());
+	public static void createWordCloud(List<Entry<String, Integer>> topWords) throws IOException {
+		AR = new ArrayList<Entry<String, Integer>>(topWords.subList(0, Math.min(topWords.size(), MAX_WORDS_TO_DISPLAY)));
 
-			// =====================Add bounding boxes around strings
-			wordBoxes.add(stringRect);
+		Dimension size = screenSize();
+		WordLayout layout = RENDERER.layout(AR, size.width, size.height, RANDOM.nextLong(),
+				LayoutBudget.of(LAYOUT_TIMEOUT, TimeUnit.SECONDS));
+		reportDropped(layout);
+		// An SVG is written from the layout itself, only a frame needs the pixels
+		boolean svg = SvgWriter.isSvg(outputFileName);
+		BufferedImage outputImage = svg && GraphicsEnvironment.isHeadless() ? null : render(layout);
+		export(layout, outputImage, outputFileName, AR);
+		if (!GraphicsEnvironment.isHeadless()) {
+				SwingUtilities.invokeLater(() -> initialiseFrame(outputImage));
 		}
-
-		graphics.dispose();
-		try {
-			ImageIO.write(outputImage, "png", new File(outputFileName));
-		} catch (Exception e) {
-			System.out.println(ConsoleColour.RED);
-			System.out.println("[ERROR] Output Image error");
-			System.out.println(ConsoleColour.RESET);
-		}
-
 	}
 
 	/**
-	 * Iterates through the wordBoxes list and checks an object against existing
-	 * objects to detect any potential collisions
+	 * Draws the layout at screen size, timed as the RENDER stage.
+	 * Complexity: O(W H) - Where W and H are the width and height of the canvas
 	 * 
-	 * @param r - Current Rectangle object being drawn to screen
-	 * @return boolean - True if the current Rectangle intersects with any of the
-	 *         existing Rectangles Complexity: O(N) - Where N is the number of
-	 *         Rectangles in the wordBoxes list.
+	 * @param layout - The cloud's layout
+	 * @return The rendered cloud
 	 */
-	private boolean doesIntersect(Rectangle2D r) {
-		for (Rectangle2D rects : wordBoxes) {
-			if (r.intersects(rects)) {
-				return true;
-			}
+	private static BufferedImage render(WordLayout layout) {
+		try (PipelineMetrics.Timer timer = PipelineMetrics.global().time(PipelineMetrics.Stage.RENDER)) {
+			timer.setItems((long) layout.getWidth() * layout.getHeight());
+			return TILES.render(layout, 1);
 		}
-		return false;
-	}
-
-	/**
-	 * Utility method to set the User selected fileoutputname
-	 * 
-	 * @param userFileName - User File name Complexity: O(1);
-	 */
-	public static void setOutputFileName(String userFileName) {
-		outputFileName = userFileName;
 	}
 
 	/**
-	 * First iteration of collision detection in the word cloud. Greedy and
-	 * inefficient but prevents collisions with relatively few issues. An exit
-	 * clause is needed to be added to prevent stack overflow when no valid
-	 * locations for string placement exist If this occurs reduce the number of
-	 * words in the word cloud.
+	 * Warns about the words the layout left out or drew smaller. Complexity: O(1)
 	 * 
-	 * @param FM - Font Metrics object, used to draw bounding box around the text.
-	 * @param i  - counter for current position in the ArrayList AR.
-	 * @param g2 - Graphics object
-	 * @return Rectangle in a valid location Complexity: O(N!) Worst case scenario
-	 *         this method will never stop.
+	 * @param layout - The cloud's layout
 	 */
-	private Rectangle2D generateRectangle(FontMetrics FM, int i, Graphics g2) {
-		Rectangle2D stringRect = FM.getStringBounds(AR.get(i).getKey(), g2);
-		int x = randomLocationX();
-		int y = randomLocationY() - (FM.getAscent());
-
-		if (x > screenSize.width) {
-			x = screenSize.width - FM.stringWidth(AR.get(i).getKey());
+	private static void reportDropped(WordLayout layout) {
+		if (layout.getDropped().isEmpty() && layout.getShrunk() == 0) {
+			return;
 		}
-		if (y > screenSize.height) {
-			y = screenSize.height - FM.getAscent();
+		System.out.println(ConsoleColour.YELLOW);
+		if (!layout.isComplete()) {
+			System.out.println("[WARNING] Word cloud layout ran out of time after " + LAYOUT_TIMEOUT + "s");
 		}
-
-		stringRect.setRect((x), (y), FM.stringWidth(AR.get(i).getKey()), FM.getHeight());
-		if (doesIntersect(stringRect)) {
-			stringRect = generateRectangle(FM, i, g2);
+		if (layout.getShrunk() > 0) {
+			System.out.println("[WARNING] " + layout.getShrunk() + " word(s) were drawn smaller to save time");
+		}
+		if (!layout.getDropped().isEmpty()) {
+			System.out.println("[WARNING] " + layout.getDropped().size() + " word(s) were left out of the word cloud, "
+					+ "the most frequent being \"" + layout.getDropped().get(0).getKey() + "\"");
 		}
-		return stringRect;
+		System.out.println(ConsoleColour.RESET);
 	}
 
 	/**
+	 * Writes the cloud to its file on a thread of its own, so neither the
+	 * menu nor the frame waits on the encode. A name ending in .svg gets an
+	 * SVG document written straight from the layout, its size set by the
+	 * export scale; anything else a PNG. The thread isn't a daemon, so the
+	 * file is finished even if the user quits straight away. The PNG is
+	 * compressed on every core by a PngEncoder. Above scale 1 the layout is
+	 * drawn again at export size, tile by tile, each band of tiles streamed
+	 * into the encoder as it is drawn, so the full size image is never held
+	 * (unless a palette, which needs every colour first, was asked for). The
+	 * whole write is timed as the ENCODE stage, and the text results are
+	 * written once it is done (whether or not it succeeded), so the metrics
+	 * summary in them has every stage of the cloud.
+	 * Complexity: O(W H) - Drawing and encoding the W x H pixels, off the calling thread
 	 * 
-	 * @return x - xcoordinate for drawString Complexity O(1) - According to Docs it
-	 *         generates a random number <2 times on average and if both values are
-	 *         outside the range it modulo operands on the value.
+	 * @param layout      - Layout of the cloud
+	 * @param outputImage - Rendered cloud at screen size, only read, null for SVG
+	 * @param fileName    - File to write
+	 * @param results     - Words of the cloud, for the text results
 	 */
-	public int randomLocationX() {
-		int x = (int) (RANDOM.nextInt((int) screenSize.getWidth()));
-		return x;
+	private static void export(WordLayout layout, BufferedImage outputImage, String fileName,
+			ArrayList<Entry<String, Integer>> results) {
+		int scale = exportScale;
+		PngEncoder png = encoder;
+		Thread exporter = new Thread(() -> {
+			try (PipelineMetrics.Timer timer = PipelineMetrics.global().time(PipelineMetrics.Stage.ENCODE, fileName)) {
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+					if (SvgWriter.isSvg(fileName)) {
+						SvgWriter.write(layout, scale, out);
+					} else if (scale == 1) {
+						png.write(outputImage, out);
+					} else if (png.getPalette() != PngEncoder.Palette.NONE) {
+						png.write(TILES.render(layout, scale), out);
+					} else {
+						try (PngEncoder.Writer writer = png.open(out, TiledRenderer.outputWidth(layout, scale),
+								TiledRenderer.outputHeight(layout, scale))) {
+							TILES.render(layout, scale, writer);
+						}
+					}
+				}
+				timer.setItems(Files.size(Paths.get(fileName)));
+			} catch (Exception e) {
+				System.out.println(ConsoleColour.RED);
+				System.out.println("[ERROR] Output Image error");
+				System.out.println(ConsoleColour.RESET);
+			}
+			try {
+				FileOutputWriter.writeResults(results);
+			} catch (IOException e) {
+				System.out.println(ConsoleColour.RED);
+				System.out.println("[ERROR] Could not save the results: " + e.getMessage());
+				System.out.println(ConsoleColour.RESET);
+			}
+		}, "wordcloud-export");
+		exporter.start();
 	}
 
 	/**
-	 * 
-	 * @return y - ycoordinate for drawString Complexity O(1) - According to Docs it
-	 *         generates a random number <2 times on average and if both values are
-	 *         outside the range it modulo operands on the value.
+	 * Method invoked by Swing to draw the panel. The cloud was laid out and
+	 * rendered once by createWordCloud, so a repaint is a single blit: from a
+	 * VolatileImage copy of the cloud kept in video memory where the display
+	 * allows it, or from the image itself. Nothing is placed or encoded again.
+	 * Complexity: O(W H) - Where W and H are the width and height of the image,
+	 * done by the graphics pipeline
 	 */
-	public int randomLocationY() {
-		int y = (int) (RANDOM.nextInt((int) screenSize.getHeight()));
-		return y;
+	@Override
+	protected void paintComponent(Graphics g) {
+		do {
+			int status = screenCopy == null ? VolatileImage.IMAGE_INCOMPATIBLE
+					: screenCopy.validate(getGraphicsConfiguration());
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				screenCopy = createVolatileImage(image.getWidth(), image.getHeight());
+				if (screenCopy == null) {
+					// Not displayable yet, draw straight from the image
+					g.setColor(Color.black);
+					g.fillRect(0, 0, getWidth(), getHeight());
+					g.drawImage(image, 0, 0, null);
+					return;
+				}
+			}
+			if (status != VolatileImage.IMAGE_OK) {
+				Graphics2D copy = screenCopy.createGraphics();
+				copy.setColor(Color.black);
+				copy.fillRect(0, 0, image.getWidth(), image.getHeight());
+				copy.drawImage(image, 0, 0, null);
+				copy.dispose();
+			}
+			g.drawImage(screenCopy, 0, 0, null);
+		} while (screenCopy.contentsLost());
 	}
 
 	/**
-	 * Very rudimentary fontsize algorithm. loosely ties size to occurances. Would
-	 * like to do more here.
+	 * Utility method to set the User selected fileoutputname
 	 * 
-	 * @param i - Current position in AR arraylist
-	 * @return Font Size to use in current String Complexity O(1)
+	 * @param userFileName - User File name Complexity: O(1);
 	 */
-	private int getFontSize(int i) {
-		int fontSize = (int) (AR.get(i).getValue() * 2.5);
-		if (fontSize > 100) {
-			fontSize = 100;
-		}
-		return fontSize = 40;
+	public static void setOutputFileName(String userFileName) {
+		outputFileName = userFileName;
 	}
 
 	/**
 	 * Initialises Jframe for WordCloud Complexity: O(N) - Where N is the size of
 	 * the users resolution, i.e. the frame width and height.
+	 * 
+	 * @param outputImage - Rendered cloud for the frame to show
 	 */
-	private static void initialiseFrame() {
+	private static void initialiseFrame(BufferedImage outputImage) {
 		JFrame frame = new JFrame();
-//		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		frame.setTitle("Word Cloud");
 		frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
-		frame.add(new WordCloud());
+		frame.add(new WordCloud(outputImage));
 		frame.setResizable(false);
-		frame.setSize(screenSize.width, screenSize.height);
+		frame.setSize(outputImage.getWidth(), outputImage.getHeight());
 		frame.setVisible(true);
 		frame.setBackground(Color.black);
 
 	}
 
+	/**
+	 * Size to draw the cloud at: the user's screen, measured once, or
+	 * DEFAULT_SIZE when there is no display. Complexity: O(1)
+	 * 
+	 * @return Canvas size for the cloud
+	 */
+	private static synchronized Dimension screenSize() {
+		if (screenSize == null) {
+			screenSize = DEFAULT_SIZE;
+			if (!GraphicsEnvironment.isHeadless()) {
+				try {
+					screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+				} catch (HeadlessException e) {
+					// No display after all, keep the default
+				}
+			}
+		}
+		return screenSize;
+	}
+
 	// =======================Utility Method to Iterate k elements from TreeSet to
 	// ArrayList for use in word cloud===================//
 	// Complexity: O(n) n=MAX_WORDS_TO_DISPLAY, Iterator Complexity is O(n log n) so
@@ -277,38 +342,41 @@ public class WordCloud extends JPanel {
 	public static ArrayList<Entry<String, Integer>> getFirstK(TreeSet<Entry<String, Integer>> set, int k) {
 		Iterator<Entry<String, Integer>> iterator = set.iterator();
 		ArrayList<Entry<String, Integer>> result = new ArrayList<Entry<String, Integer>>(k); // to store first K items
-		for (int i = 0; i < MAX_WORDS_TO_DISPLAY; i++)
+		for (int i = 0; i < k && iterator.hasNext(); i++)
 			result.add(iterator.next());
 		return result;
 	}
 
 	/**
-	 * Utility method to generate random Font for selection Source:
-	 * https://stackoverflow.com/a/64491016/15663468 Complexity: 0(1) - Assigning
-	 * String array to another String Array and returning Rand.next should be
-	 * constant Unsure if returning the availableFontFamilyNames counts as a linear
-	 * operation given the available names will vary, n=available names)
+	 * Static Method to Set the Export Scale from Menu Complexity: 0(1)
+	 * 
+	 * @param scale - Size of the exported image relative to the screen, 1 to
+	 *              MAX_EXPORT_SCALE
+	 */
+	public static void setExportScale(int scale) {
+		if (scale < 1 || scale > MAX_EXPORT_SCALE) {
+			throw new IllegalArgumentException("Export scale must be 1-" + MAX_EXPORT_SCALE + ": " + scale);
+		}
+		exportScale = scale;
+	}
+
+	/**
+	 * Static Method to Get the Export Scale Complexity: 0(1)
 	 * 
-	 * @return availableFonts - Random available Font
+	 * @return exportScale
 	 */
-	private static String pickRandomFontFamily() {
-		String[] availableFonts = GraphicsEnvironment.getLocalGraphicsEnvironment()
-				.getAvailableFontFamilyNames(Locale.ENGLISH);
-		return availableFonts[RANDOM.nextInt(availableFonts.length)];
+	public static int getExportScale() {
+		return exportScale;
 	}
 
 	/**
-	 * Utility Method To Pick Random Color Source:
-	 * https://stackoverflow.com/questions/4246351/creating-random-colour-in-java
-	 * Complexity: O(1) - Random.next complexity is O(1) according to docs
+	 * Static Method to Set how exported images are compressed Complexity: 0(1)
 	 * 
-	 * @return Random Colour to use in Drawing String
+	 * @param level   - Deflate level, 0 (fastest) to 9 (smallest)
+	 * @param palette - Whether to write palette-indexed PNGs
 	 */
-	private Color pickRandomColour() {
-		float r = RANDOM.nextFloat() / 2f + 0.5f;
-		float g = RANDOM.nextFloat() / 2f + 0.5f;
-		float b = RANDOM.nextFloat() / 2f + 0.5f;
-		return new Color(r, g, b);
+	public static void setExportCompression(int level, PngEncoder.Palette palette) {
+		encoder = new PngEncoder(level, palette);
 	}
 
 	/**
@@ -319,4 +387,13 @@ public class WordCloud extends JPanel {
 	public static void setWordsToDisplay(int wordsToDisplay) {
 		MAX_WORDS_TO_DISPLAY = wordsToDisplay;
 	}
+
+	/**
+	 * Static Method to Get the number of Words to Display Complexity: 0(1)
+	 * 
+	 * @return MAX_WORDS_TO_DISPLAY
+	 */
+	public static int getWordsToDisplay() {
+		return MAX_WORDS_TO_DISPLAY;
+	}
 }
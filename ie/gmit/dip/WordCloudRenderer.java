@@ -0,0 +1,356 @@
+package ie.gmit.dip;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+/**
+ *
+ * @author Conor Timlin
+ * Headless word cloud renderer. Draws the given words onto a BufferedImage of any size without a JFrame, the screen
+ * or the event dispatch thread, so clouds can be made on machines with no display (run with -Djava.awt.headless=true).
+ * Placing the words (layout) is separate from drawing them (render): a WordLayout is computed once and can then be
+ * drawn or exported as often as needed.
+ *
+ * Words are packed either by their string boxes or, tighter, by bit masks of their actual glyphs (see Packing).
+ *
+ * Fonts come from a FontCatalogue (the installed Latin faces by default, enumerated once), are picked per word by a
+ * FontPicker seeded from the layout's seed, and are derived and measured through a FontCache shared by every layout
+ * of the renderer.
+ *
+ * Besides that thread safe cache a renderer holds nothing but its catalogue, how it packs and the PipelineMetrics
+ * layouts are recorded in, so one instance can be shared and called from any number of threads at once; each call
+ * works on its own image and its own Random. The same words, size and seed always give the same picture.
+ *
+ */
+
+public final class WordCloudRenderer {
+
+	/**
+	 * How words are kept from overlapping
+	 */
+	public enum Packing {
+		/** Whole string boxes in a GridCollisionIndex, quick but leaves gaps around every word */
+		BOXES,
+		/** Glyph bit masks in a BitmapCollisionIndex, words nest into each other's gaps */
+		GLYPHS
+	}
+
+	/**
+	 * @param MIN_FONT_SIZE - Font size of the least frequent word
+	 * @param MAX_FONT_SIZE - Font size of the most frequent word, on a 1080 pixel high canvas
+	 * @param CENTRE_JITTER - How far, as a fraction of the canvas, the spirals may start from the centre
+	 * @param GLYPH_PADDING - Pixels kept clear around each word's glyphs when packing GLYPHS
+	 * @param WORD_STYLE - Style every word is drawn in
+	 * @param SHRINK_FACTOR - Scale of a word's font when the layout is behind its budget
+	 * @param SHRINK_AFTER - Share of the budget used before words may be shrunk, so the most frequent keep their size
+	 * @param catalogue - Font families words are drawn in, one picked at random per word
+	 * @param fonts - Fonts, metrics and glyphs already derived
+	 * @param packing - How words are kept from overlapping
+	 * @param metrics - Where layout times, positions tried, collisions and retries are recorded
+	 * @param png - Encoder of write, deflating on every core
+	 */
+	public static final int MIN_FONT_SIZE = 12;
+	public static final int MAX_FONT_SIZE = 100;
+	public static final double CENTRE_JITTER = 0.1;
+	public static final int GLYPH_PADDING = 1;
+	public static final int WORD_STYLE = Font.BOLD + Font.ITALIC;
+	public static final double SHRINK_FACTOR = 0.75;
+	public static final double SHRINK_AFTER = 0.5;
+
+	private final FontCatalogue catalogue;
+	private final FontCache fonts = new FontCache();
+	private final Packing packing;
+	private volatile PipelineMetrics metrics = PipelineMetrics.global();
+	private volatile PngEncoder png = new PngEncoder();
+
+	/**
+	 * Creates a renderer using the installed Latin font families, packing by string boxes
+	 */
+	public WordCloudRenderer() {
+		this(Packing.BOXES);
+	}
+
+	/**
+	 * Creates a renderer using the installed Latin font families
+	 * @param packing - How words are kept from overlapping
+	 */
+	public WordCloudRenderer(Packing packing) {
+		this(FontCatalogue.system(), packing);
+	}
+
+	/**
+	 * @param fontFamilies - Font families to pick from, the logical "SansSerif" if none can display Latin text
+	 */
+	public WordCloudRenderer(String[] fontFamilies) {
+		this(fontFamilies, Packing.BOXES);
+	}
+
+	/**
+	 * @param fontFamilies - Font families to pick from, the logical "SansSerif" if none can display Latin text
+	 * @param packing - How words are kept from overlapping
+	 */
+	public WordCloudRenderer(String[] fontFamilies, Packing packing) {
+		this(new FontCatalogue(fontFamilies), packing);
+	}
+
+	/**
+	 * @param catalogue - Font families to pick from
+	 * @param packing - How words are kept from overlapping
+	 */
+	public WordCloudRenderer(FontCatalogue catalogue, Packing packing) {
+		this.catalogue = catalogue;
+		this.packing = packing;
+	}
+
+	/**
+	 * Lays out a word cloud. Words are placed most frequent first, each at the first point of an Archimedean spiral
+	 * from near the centre where it doesn't overlap the words already placed (see SpiralPlacement), the placed shapes
+	 * being kept in a GridCollisionIndex (BOXES) or BitmapCollisionIndex (GLYPHS). A word that fits nowhere on the
+	 * canvas is left out.
+	 * @param words - Words and their counts, most frequent first (e.g. from Parser.topK)
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 * @param seed - Seed for fonts, colours and positions
+	 * @return Immutable layout of the placed words
+	 * Complexity: O(K P Q) - Where K is the number of words, P the spiral positions tried per word and Q the cost
+	 * of a query (the boxes sharing a grid cell, or the rows of a glyph mask)
+	 */
+	public WordLayout layout(List<? extends Entry<String, Integer>> words, int width, int height, long seed) {
+		return layout(words, width, height, seed, LayoutBudget.unlimited());
+	}
+
+	/**
+	 * Lays out a word cloud within a budget, as an anytime algorithm: words are placed in priority order (the order
+	 * given, most frequent first) and whatever is placed when the budget runs out is returned. Once over SHRINK_AFTER
+	 * of the budget is used, and more of it than of the words tried, the rest are drawn a SHRINK_FACTOR smaller, as
+	 * small words place faster. When
+	 * the budget runs out, or is cancelled from another thread, the words not yet placed are dropped. The layout
+	 * reports what was dropped and shrunk.
+	 *
+	 * Returns within a few microseconds of the deadline plus the time to shape one word. With only an attempt limit
+	 * the layout is as deterministic as an unlimited one; with a deadline how much fits depends on the machine.
+	 *
+	 * The time taken, the positions tried, collisions and how many positions each word needed are recorded in the
+	 * renderer's PipelineMetrics once the layout is done.
+	 * @param words - Words and their counts, most frequent first (e.g. from Parser.topK)
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 * @param seed - Seed for fonts, colours and positions
+	 * @param budget - Deadline, attempt limit and cancellation of this layout, used by this layout only
+	 * @return Immutable layout of the placed words, with the words dropped
+	 * Complexity: O(min(K P Q, B)) - Where B is the budget
+	 */
+	public WordLayout layout(List<? extends Entry<String, Integer>> words, int width, int height, long seed,
+			LayoutBudget budget) {
+		return layout(words, width, height, seed, budget, metrics);
+	}
+
+	/**
+	 * As layout(words, width, height, seed, budget), recording into the metrics given rather than the renderer's, so
+	 * callers sharing one renderer (e.g. the jobs of a batch) can each keep their own.
+	 * @param words - Words and their counts, most frequent first (e.g. from Parser.topK)
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 * @param seed - Seed for fonts, colours and positions
+	 * @param budget - Deadline, attempt limit and cancellation of this layout, used by this layout only
+	 * @param metrics - Metrics the layout is recorded in
+	 * @return Immutable layout of the placed words, with the words dropped
+	 * Complexity: O(min(K P Q, B))
+	 */
+	public WordLayout layout(List<? extends Entry<String, Integer>> words, int width, int height, long seed,
+			LayoutBudget budget, PipelineMetrics metrics) {
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.LAYOUT)) {
+			WordLayout layout = place(words, width, height, seed, budget, metrics);
+			timer.setItems(layout.getWords().size());
+			return layout;
+		}
+	}
+
+	/**
+	 * Body of layout, recording into the metrics given
+	 */
+	private WordLayout place(List<? extends Entry<String, Integer>> words, int width, int height, long seed,
+			LayoutBudget budget, PipelineMetrics metrics) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Canvas must be at least 1x1: " + width + "x" + height);
+		}
+		List<PlacedWord> placed = new ArrayList<PlacedWord>(words.size());
+		List<Entry<String, Integer>> dropped = new ArrayList<Entry<String, Integer>>();
+		int shrunk = 0;
+		boolean complete = true;
+		Random random = new Random(seed);
+		CollisionIndex index = packing == Packing.GLYPHS ? new BitmapCollisionIndex(width, height)
+				: new GridCollisionIndex(width, height);
+		// Every spiral starts near the middle, so the biggest words end up in the centre
+		SpiralPlacement spiral = new SpiralPlacement(width, height, index,
+				width * (0.5 + (random.nextDouble() - 0.5) * CENTRE_JITTER),
+				height * (0.5 + (random.nextDouble() - 0.5) * CENTRE_JITTER));
+		FontPicker picker = new FontPicker(catalogue, random.nextLong());
+		int maxCount = words.isEmpty() ? 1 : Math.max(1, words.get(0).getValue());
+		int minSize = fontSize(0, maxCount, height);
+
+		for (int i = 0; i < words.size(); i++) {
+			if (budget.isExhausted()) {
+				dropped.addAll(words.subList(i, words.size()));
+				complete = false;
+				break;
+			}
+			Entry<String, Integer> word = words.get(i);
+			String family = picker.next();
+			int size = fontSize(word.getValue(), maxCount, height);
+			double used = budget.used();
+			boolean shrink = size > minSize && used > SHRINK_AFTER && used > i / (double) words.size();
+			if (shrink) {
+				// Behind schedule, a smaller word has more places it fits and finds one sooner
+				size = Math.max(minSize, (int) Math.round(size * SHRINK_FACTOR));
+			}
+			WordShape shape = shapeOf(family, size, word.getKey());
+			long tried = spiral.getCandidates();
+			Point corner = spiral.place(shape, random.nextInt(SpiralPlacement.ORIENTATIONS), budget);
+			metrics.recordPlacement(spiral.getCandidates() - tried);
+			if (corner == null) {
+				dropped.add(word);
+				complete &= !budget.isExhausted();
+				continue;
+			}
+			if (shrink) {
+				shrunk++;
+			}
+			placed.add(new PlacedWord(word.getKey(), word.getValue(), fonts.font(family, WORD_STYLE, size),
+					pickColour(random), corner.x, corner.y, shape.getWidth(), shape.getHeight(),
+					corner.x + shape.getOriginX(), corner.y + shape.getOriginY()));
+		}
+		metrics.add(PipelineMetrics.Counter.PLACEMENT_ATTEMPTS, spiral.getCandidates());
+		metrics.add(PipelineMetrics.Counter.COLLISIONS, spiral.getCollisions());
+		metrics.add(PipelineMetrics.Counter.WORDS_PLACED, placed.size());
+		metrics.add(PipelineMetrics.Counter.WORDS_DROPPED, dropped.size());
+		return new WordLayout(width, height, seed, placed, dropped, shrunk, complete);
+	}
+
+	/**
+	 * Records this renderer's layouts somewhere other than PipelineMetrics.global().
+	 * @param metrics - Metrics to record into
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets how write compresses its PNGs, e.g. a higher level or palette-indexed for smaller files.
+	 * @param png - Encoder of write, its level and palette mode
+	 */
+	public void setPngEncoder(PngEncoder png) {
+		this.png = png;
+	}
+
+	/**
+	 * Draws a layout onto a new image the size of its canvas.
+	 * @param layout - Layout to draw
+	 * @return New transparent image with the words drawn on it
+	 * Complexity: O(K + W H) - Drawing the K words onto the W x H image
+	 */
+	public BufferedImage render(WordLayout layout) {
+		BufferedImage image = new BufferedImage(layout.getWidth(), layout.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = createGraphics(image);
+		try {
+			layout.draw(g2);
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Lays out and draws a word cloud, see layout.
+	 * @param words - Words and their counts, most frequent first (e.g. from Parser.topK)
+	 * @param width - Width of the image in pixels
+	 * @param height - Height of the image in pixels
+	 * @param seed - Seed for fonts, colours and positions
+	 * @return New transparent image with the words drawn on it
+	 * Complexity: O(K P Q + W H)
+	 */
+	public BufferedImage render(List<? extends Entry<String, Integer>> words, int width, int height, long seed) {
+		return render(layout(words, width, height, seed));
+	}
+
+	/**
+	 * Draws a layout and writes it to a stream as a PNG. Does not close the stream.
+	 * @param layout - Layout to draw
+	 * @param out - Stream the PNG is written to
+	 * @throws IOException
+	 * Complexity: O(K + W H) - Drawing plus encoding the W x H pixels
+	 */
+	public void write(WordLayout layout, OutputStream out) throws IOException {
+		png.write(render(layout), out);
+	}
+
+	/**
+	 * Lays out and draws a word cloud and writes it to a stream as a PNG. Does not close the stream.
+	 * @param words - Words and their counts, most frequent first
+	 * @param width - Width of the image in pixels
+	 * @param height - Height of the image in pixels
+	 * @param seed - Seed for fonts, colours and positions
+	 * @param out - Stream the PNG is written to
+	 * @throws IOException
+	 * Complexity: O(K P Q + W H)
+	 */
+	public void write(List<? extends Entry<String, Integer>> words, int width, int height, long seed, OutputStream out)
+			throws IOException {
+		write(layout(words, width, height, seed), out);
+	}
+
+	/**
+	 * Space the word takes up: its string box, or its glyph outline rasterised into a mask
+	 * Complexity: O(L) for BOXES, O(W H) for GLYPHS - Where W and H are the word's size in pixels
+	 */
+	private WordShape shapeOf(String family, int size, String word) {
+		if (packing == Packing.GLYPHS) {
+			return WordShape.glyphs(fonts.glyphs(family, WORD_STYLE, size, word).getOutline(), GLYPH_PADDING);
+		}
+		FontMetrics metrics = fonts.metrics(family, WORD_STYLE, size);
+		return WordShape.box(metrics.stringWidth(word), metrics.getHeight(), metrics.getAscent());
+	}
+
+	/**
+	 * @return Graphics for the image with the hints words are measured and drawn with
+	 */
+	static Graphics2D createGraphics(BufferedImage image) {
+		Graphics2D g2 = image.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		return g2;
+	}
+
+	/**
+	 * Scales a word's font between MIN_FONT_SIZE and MAX_FONT_SIZE by the square root of its share of the top count,
+	 * so areas rather than heights follow the counts. Sizes are relative to a 1080 pixel high canvas.
+	 * Complexity: O(1)
+	 */
+	static int fontSize(int count, int maxCount, int height) {
+		double share = Math.sqrt(Math.max(0, Math.min(count, maxCount)) / (double) maxCount);
+		double size = MIN_FONT_SIZE + (MAX_FONT_SIZE - MIN_FONT_SIZE) * share;
+		return Math.max(1, (int) Math.round(size * height / 1080.0));
+	}
+
+	/**
+	 * Picks a random light colour that stands out on a dark background
+	 * Complexity: O(1)
+	 */
+	private static Color pickColour(Random random) {
+		float r = random.nextFloat() / 2f + 0.5f;
+		float g = random.nextFloat() / 2f + 0.5f;
+		float b = random.nextFloat() / 2f + 0.5f;
+		return new Color(r, g, b);
+	}
+}
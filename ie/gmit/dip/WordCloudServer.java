@@ -0,0 +1,718 @@
+package ie.gmit.dip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Conor Timlin
+ * Serves word clouds over HTTP with the JDK's own com.sun.net.httpserver, e.g.
+ * java -Djava.awt.headless=true ie.gmit.dip.Runner --serve 8080
+ *
+ * GET /cloud?url=https://... makes a cloud of a page, POST /cloud with a text body makes one of the text. Either takes
+ * words (number of words, default 10), format (png, svg or json, default png), width and height (default 1920x1080).
+ * A PNG can also be given a deflate level (0 to 9, default 6) and palette (none, exact or quantised, default none),
+ * see PngEncoder.
+ * JSON returns just the ranked words and their counts, without laying anything out. GET /health answers "ok".
+ *
+ * Requests are handled on I/O workers (virtual threads where the runtime has them, see Workers). To keep latency
+ * bounded under load, at most maxConcurrent clouds are made at once and at most maxQueued more wait for a turn; a
+ * request for another is turned away straight away with 429 Too Many Requests and a Retry-After header, as is one
+ * that has waited QUEUE_TIMEOUT_MILLIS without getting a turn. Each layout has a deadline, so a turn is never held
+ * for long (see LayoutBudget).
+ *
+ * Identical requests (same source, words, format, size and PNG options) share their work: a request arriving while
+ * the same cloud is being made waits for that one rather than making it again, and finished clouds are kept in an
+ * LRU cache bounded by entries and bytes for CACHE_TTL_MILLIS, so a URL is fetched again once its cloud has aged out.
+ * The X-Cache header says which it was: MISS, HIT or COALESCED. The same request always gets the same picture, its
+ * seed being taken from the request.
+ *
+ * Each cloud gets parsers, PipelineMetrics and a PNG encoder of its own; the renderer, HttpClient and ignore words are
+ * shared. The parsers keep nothing on disk, pages and counts are only cached in memory, as clouds. Binds to the
+ * loopback address unless told otherwise, so it can be run and tested entirely on localhost.
+ *
+ */
+
+public final class WordCloudServer implements Closeable {
+
+	/**
+	 * What a cloud is returned as
+	 */
+	public enum Format {
+		PNG("image/png"), SVG("image/svg+xml"), JSON("application/json");
+
+		private final String contentType;
+
+		Format(String contentType) {
+			this.contentType = contentType;
+		}
+
+		/**
+		 * @return MIME type of the format
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	/**
+	 * @param CLOUD_PATH - Path clouds are served from
+	 * @param HEALTH_PATH - Path answering "ok" while the server is up
+	 * @param DEFAULT_WORDS - Words in a cloud when the request doesn't say
+	 * @param MAX_WORDS - Most words a request may ask for
+	 * @param DEFAULT_WIDTH - Width of a cloud when the request doesn't say
+	 * @param DEFAULT_HEIGHT - Height of a cloud when the request doesn't say
+	 * @param MAX_SIZE - Largest width or height a request may ask for
+	 * @param MAX_UPLOAD_BYTES - Largest text body accepted, larger gets 413
+	 * @param MAX_OPEN_REQUESTS - Requests handled at once, hits and coalesced ones included
+	 * @param DEFAULT_QUEUE_PER_WORKER - Requests allowed to wait per cloud being made, by default
+	 * @param QUEUE_TIMEOUT_MILLIS - Longest a request waits for its turn before it gets 429
+	 * @param LAYOUT_TIMEOUT_MILLIS - Deadline of each layout
+	 * @param DEFAULT_CACHE_ENTRIES - Clouds kept in the cache, by default
+	 * @param DEFAULT_CACHE_BYTES - Total size of the clouds kept, by default
+	 * @param CACHE_TTL_MILLIS - How long a cloud is served from the cache
+	 * @param server - The HTTP server
+	 * @param workers - Executor the requests are handled on
+	 * @param open - Permits for the requests being handled at all
+	 * @param uploads - Permits for the text bodies held in memory, maxConcurrent + maxQueued
+	 * @param admitted - Permits for the clouds being made or waiting to be, maxConcurrent + maxQueued
+	 * @param turns - Permits for the clouds being made, maxConcurrent
+	 * @param inFlight - Clouds being made, by request key, for requests to coalesce on
+	 * @param cache - Finished clouds by request key, least recently used first
+	 * @param cacheBytes - Total size of the cached clouds
+	 * @param maxCacheEntries - Clouds kept in the cache
+	 * @param maxCacheBytes - Total size of the clouds kept
+	 * @param renderer - Renderer shared by every request
+	 * @param client - HttpClient shared by every URL request
+	 * @param ignoreWords - Words left out of every cloud
+	 * @param requests - Cloud requests received
+	 * @param hits - Requests answered from the cache
+	 * @param coalesced - Requests that waited for an identical one
+	 * @param rejected - Requests turned away with 429
+	 */
+	public static final String CLOUD_PATH = "/cloud";
+	public static final String HEALTH_PATH = "/health";
+	public static final int DEFAULT_WORDS = 10;
+	public static final int MAX_WORDS = 1000;
+	public static final int DEFAULT_WIDTH = 1920;
+	public static final int DEFAULT_HEIGHT = 1080;
+	public static final int MAX_SIZE = 4096;
+	public static final int MAX_UPLOAD_BYTES = 16 << 20;
+	public static final int MAX_OPEN_REQUESTS = 1024;
+	public static final int DEFAULT_QUEUE_PER_WORKER = 4;
+	public static final long QUEUE_TIMEOUT_MILLIS = 5000;
+	public static final long LAYOUT_TIMEOUT_MILLIS = 2000;
+	public static final int DEFAULT_CACHE_ENTRIES = 256;
+	public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+	public static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private final HttpServer server;
+	private final ExecutorService workers = Workers.newIoExecutor("wordcloud-server");
+	private final Semaphore open = new Semaphore(MAX_OPEN_REQUESTS);
+	private final Semaphore uploads;
+	private final Semaphore admitted;
+	private final Semaphore turns;
+	private final Map<String, CompletableFuture<Cloud>> inFlight =
+			new ConcurrentHashMap<String, CompletableFuture<Cloud>>();
+	private final LinkedHashMap<String, Cloud> cache = new LinkedHashMap<String, Cloud>(16, 0.75f, true);
+	private long cacheBytes;
+	private final int maxCacheEntries;
+	private final long maxCacheBytes;
+	private final WordCloudRenderer renderer = new WordCloudRenderer(WordCloudRenderer.Packing.GLYPHS);
+	private final HttpClient client = HttpClient.newBuilder()
+			.connectTimeout(URLParser.DEFAULT_CONNECT_TIMEOUT)
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.build();
+	private volatile List<String> ignoreWords = new ArrayList<String>();
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Creates a server on the loopback address making one cloud per core at once, see start
+	 * @param port - Port to listen on, 0 for any free port
+	 * @throws IOException if the port can't be bound
+	 */
+	public WordCloudServer(int port) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().availableProcessors() * DEFAULT_QUEUE_PER_WORKER, DEFAULT_CACHE_ENTRIES,
+				DEFAULT_CACHE_BYTES);
+	}
+
+	/**
+	 * @param address - Address and port to listen on
+	 * @param maxConcurrent - Clouds made at once, at least 1
+	 * @param maxQueued - Requests allowed to wait for a turn, beyond them requests get 429
+	 * @param maxCacheEntries - Clouds kept in the cache, 0 for none
+	 * @param maxCacheBytes - Total size of the clouds kept
+	 * @throws IOException if the address can't be bound
+	 */
+	public WordCloudServer(InetSocketAddress address, int maxConcurrent, int maxQueued, int maxCacheEntries,
+			long maxCacheBytes) throws IOException {
+		if (maxConcurrent < 1 || maxQueued < 0) {
+			throw new IllegalArgumentException("Bad limits: " + maxConcurrent + " concurrent, " + maxQueued
+					+ " queued");
+		}
+		this.uploads = new Semaphore(maxConcurrent + maxQueued);
+		this.admitted = new Semaphore(maxConcurrent + maxQueued);
+		this.turns = new Semaphore(maxConcurrent, true);
+		this.maxCacheEntries = maxCacheEntries;
+		this.maxCacheBytes = maxCacheBytes;
+		this.server = HttpServer.create(address, 0);
+		server.setExecutor(workers);
+		server.createContext(CLOUD_PATH, this::handleCloud);
+		server.createContext(HEALTH_PATH, exchange -> respond(exchange, 200, "text/plain", "ok\n", null));
+	}
+
+	/**
+	 * Runs the server mode from the command line: --serve [PORT] (default 8080), listening on the loopback address
+	 * until the process is stopped. The default ignorewords.txt is used if there is one.
+	 * @param args - Arguments after --serve
+	 * @return Exit code, 2 if the server couldn't start; otherwise doesn't return until the process is stopped
+	 */
+	public static int run(String[] args) {
+		try {
+			WordCloudServer server = new WordCloudServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+			File ignore = new File("./ignorewords.txt");
+			if (ignore.isFile()) {
+				server.setIgnoreWords(ignore);
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(server::close, "wordcloud-server-stop"));
+			server.start();
+			System.out.println(ConsoleColour.BLUE);
+			System.out.println("Serving word clouds on http://localhost:" + server.getPort() + CLOUD_PATH);
+			System.out.println(ConsoleColour.RESET);
+			new CompletableFuture<Void>().join();
+			return 0;
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println(ConsoleColour.RED);
+			System.out.println("[ERROR] Could not start server: " + e.getMessage());
+			System.out.println(ConsoleColour.RESET);
+			return 2;
+		}
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, gives those being handled a second to finish and stops the workers
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		workers.shutdownNow();
+	}
+
+	/**
+	 * @return Port the server listens on, the one picked when created with port 0
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Reads the words every cloud leaves out, replacing any read before. Takes effect from the next cloud made, clouds
+	 * already cached are kept.
+	 * @param file - Text file of words separated by whitespace
+	 * @throws IOException
+	 */
+	public void setIgnoreWords(File file) throws IOException {
+		List<String> words = new ArrayList<String>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1)) {
+			words.addAll(Arrays.asList(line.split("\\s")));
+		}
+		ignoreWords = words;
+	}
+
+	/**
+	 * @return Cloud requests received
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return Requests answered from the cache
+	 */
+	public long getCacheHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return Requests that waited for an identical request rather than making the cloud again
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return Requests turned away with 429
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Handles a request to /cloud: the cache, then an identical request in flight, and only then, if admitted, makes
+	 * the cloud. Hits and coalesced requests don't take an admission permit, as they add no work. A text body can't be
+	 * looked up until it has been read, so a POST takes an upload permit first, before a byte of it is read, and one
+	 * whose Content-Length is over MAX_UPLOAD_BYTES is refused unread; at most maxConcurrent + maxQueued bodies are
+	 * held at once.
+	 * Complexity: O(1) on a hit, otherwise that of making the cloud, see make
+	 */
+	private void handleCloud(HttpExchange exchange) throws IOException {
+		requests.increment();
+		if (!open.tryAcquire()) {
+			reject(exchange);
+			exchange.close();
+			return;
+		}
+		boolean upload = false;
+		try {
+			if (exchange.getRequestMethod().equals("POST")) {
+				Request.checkLength(exchange);
+				upload = uploads.tryAcquire();
+				if (!upload) {
+					throw new RejectedExecutionException("Too many uploads");
+				}
+			}
+			Request request = Request.of(exchange);
+			Cloud cloud = cached(request.key);
+			String source = "HIT";
+			if (cloud == null) {
+				CompletableFuture<Cloud> mine = new CompletableFuture<Cloud>();
+				CompletableFuture<Cloud> running = inFlight.putIfAbsent(request.key, mine);
+				if (running != null) {
+					coalesced.increment();
+					cloud = await(running);
+					source = "COALESCED";
+				} else {
+					cloud = makeOnce(request, mine);
+					source = "MISS";
+				}
+			} else {
+				hits.increment();
+			}
+			respond(exchange, 200, request.format.getContentType(), null, cloud.body, source);
+		} catch (RejectedExecutionException e) {
+			reject(exchange);
+		} catch (HttpError e) {
+			respond(exchange, e.status, "text/plain", e.getMessage() + "\n", null);
+		} catch (RuntimeException e) {
+			respond(exchange, 500, "text/plain", "Could not make the cloud: " + e + "\n", null);
+		} finally {
+			if (upload) {
+				uploads.release();
+			}
+			open.release();
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Makes a cloud as the one request doing so, completing the future identical requests wait on
+	 */
+	private Cloud makeOnce(Request request, CompletableFuture<Cloud> mine) throws HttpError {
+		boolean turn = admitted.tryAcquire();
+		if (turn) {
+			try {
+				turn = turns.tryAcquire(QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				turn = false;
+			}
+			if (!turn) {
+				admitted.release();
+			}
+		}
+		if (!turn) {
+			// Requests waiting on this one are turned away with it
+			RejectedExecutionException rejection = new RejectedExecutionException("Overloaded");
+			mine.completeExceptionally(rejection);
+			inFlight.remove(request.key, mine);
+			throw rejection;
+		}
+		try {
+			Cloud cloud = make(request);
+			cache(request.key, cloud);
+			mine.complete(cloud);
+			return cloud;
+		} catch (HttpError | RuntimeException e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			turns.release();
+			admitted.release();
+			inFlight.remove(request.key, mine);
+		}
+	}
+
+	/**
+	 * Parses the request's source with parsers of its own, ranks the words and, unless JSON was asked for, lays them
+	 * out and draws them
+	 * @throws HttpError 502 if a URL can't be fetched
+	 * Complexity: O(N + K P Q + W H) - Parsing, laying out and drawing, see Parser and WordCloudRenderer
+	 */
+	private Cloud make(Request request) throws HttpError {
+		PipelineMetrics metrics = new PipelineMetrics();
+		Parser parser;
+		try {
+			if (request.url != null) {
+				// No caches are set: clients choose the URLs, so nothing they ask for is written to disk
+				URLParser urlParser = new URLParser(client);
+				parser = urlParser;
+				prepare(parser, metrics);
+				urlParser.parse(request.url);
+			} else {
+				FileParser fileParser = new FileParser();
+				fileParser.setCache(null);
+				parser = fileParser;
+				prepare(parser, metrics);
+				parser.addToHashMap(new ByteArrayInputStream(request.text));
+			}
+		} catch (IOException e) {
+			throw new HttpError(502, "Could not fetch " + request.url + ": " + e);
+		}
+		ArrayList<Entry<String, Integer>> words = parser.topK(request.words);
+		if (request.format == Format.JSON) {
+			return new Cloud(json(words).getBytes(StandardCharsets.UTF_8));
+		}
+
+		WordLayout layout = renderer.layout(words, request.width, request.height, request.seed,
+				LayoutBudget.of(LAYOUT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), metrics);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(request.format == Format.SVG ? 1 << 14 : 1 << 20);
+		try (PipelineMetrics.Timer timer = metrics.time(PipelineMetrics.Stage.ENCODE)) {
+			if (request.format == Format.SVG) {
+				SvgWriter.write(layout, out);
+			} else {
+				new PngEncoder(request.level, request.palette).write(renderer.render(layout), out);
+			}
+			timer.setItems(out.size());
+		} catch (IOException e) {
+			throw new IllegalStateException("Encoding to memory failed", e);
+		}
+		return new Cloud(out.toByteArray());
+	}
+
+	private void prepare(Parser parser, PipelineMetrics metrics) {
+		parser.setMetrics(metrics);
+		parser.addToIgnoreWords(ignoreWords);
+	}
+
+	/**
+	 * @return Cloud cached under the key and not yet expired, or null
+	 */
+	private Cloud cached(String key) {
+		synchronized (cache) {
+			Cloud cloud = cache.get(key);
+			if (cloud != null && System.currentTimeMillis() - cloud.created > CACHE_TTL_MILLIS) {
+				cache.remove(key);
+				cacheBytes -= cloud.body.length;
+				return null;
+			}
+			return cloud;
+		}
+	}
+
+	/**
+	 * Caches a cloud, evicting the least recently used until the cache is within its limits
+	 */
+	private void cache(String key, Cloud cloud) {
+		if (maxCacheEntries == 0 || cloud.body.length > maxCacheBytes) {
+			return;
+		}
+		synchronized (cache) {
+			Cloud old = cache.put(key, cloud);
+			cacheBytes += cloud.body.length - (old == null ? 0 : old.body.length);
+			Iterator<Cloud> eldest = cache.values().iterator();
+			while (cache.size() > maxCacheEntries || cacheBytes > maxCacheBytes) {
+				cacheBytes -= eldest.next().body.length;
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the cloud an identical request is making, failing the same way it does
+	 */
+	private static Cloud await(CompletableFuture<Cloud> running) throws HttpError {
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof HttpError) {
+				throw new HttpError(((HttpError) cause).status, cause.getMessage());
+			}
+			if (cause instanceof RejectedExecutionException) {
+				throw new RejectedExecutionException(cause.getMessage(), cause);
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void reject(HttpExchange exchange) throws IOException {
+		rejected.increment();
+		exchange.getResponseHeaders().set("Retry-After", "1");
+		respond(exchange, 429, "text/plain", "Too many requests, try again shortly\n", null);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String text, String source)
+			throws IOException {
+		respond(exchange, status, contentType, text, null, source);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String contentType, String text, byte[] body,
+			String source) throws IOException {
+		byte[] bytes = body != null ? body : text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		if (source != null) {
+			exchange.getResponseHeaders().set("X-Cache", source);
+		}
+		boolean head = exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(status, head ? -1 : bytes.length);
+		if (!head) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * @return The words and their counts as a JSON document
+	 */
+	static String json(List<Entry<String, Integer>> words) {
+		StringBuilder json = new StringBuilder(32 + words.size() * 32);
+		json.append("{\"words\":[");
+		for (int i = 0; i < words.size(); i++) {
+			Entry<String, Integer> word = words.get(i);
+			json.append(i == 0 ? "" : ",").append("{\"word\":\"");
+			for (char c : word.getKey().toCharArray()) {
+				if (c == '"' || c == '\\') {
+					json.append('\\').append(c);
+				} else if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+			json.append("\",\"count\":").append(word.getValue());
+			if (word instanceof HeavyHitters.Estimate) {
+				json.append(",\"error\":").append(((HeavyHitters.Estimate) word).getError());
+			}
+			json.append('}');
+		}
+		return json.append("]}\n").toString();
+	}
+
+	/**
+	 * A finished cloud, the bytes of the response
+	 */
+	private static final class Cloud {
+
+		private final byte[] body;
+		private final long created = System.currentTimeMillis();
+
+		Cloud(byte[] body) {
+			this.body = body;
+		}
+	}
+
+	/**
+	 * An error answered with its own HTTP status, e.g. 400 for bad parameters
+	 */
+	private static final class HttpError extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/**
+	 * A request's parameters, checked, with the key identical requests share and the seed of its picture
+	 */
+	private static final class Request {
+
+		private String url;
+		private byte[] text;
+		private Format format = Format.PNG;
+		private int words = DEFAULT_WORDS;
+		private int width = DEFAULT_WIDTH;
+		private int height = DEFAULT_HEIGHT;
+		private int level = PngEncoder.DEFAULT_LEVEL;
+		private PngEncoder.Palette palette = PngEncoder.Palette.NONE;
+		private String key;
+		private long seed;
+
+		/**
+		 * Reads the query and, for a POST, the body
+		 * @throws HttpError 400 for bad parameters, 405 for other methods, 413 for a body over MAX_UPLOAD_BYTES
+		 */
+		static Request of(HttpExchange exchange) throws HttpError, IOException {
+			Request request = new Request();
+			Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+			String method = exchange.getRequestMethod();
+			if (method.equals("GET") || method.equals("HEAD")) {
+				request.url = query.get("url");
+				String lower = request.url == null ? "" : request.url.toLowerCase(Locale.ENGLISH);
+				if (!lower.startsWith("http://") && !lower.startsWith("https://")) {
+					throw new HttpError(400, "GET needs an http or https url parameter, or POST the text");
+				}
+			} else if (method.equals("POST")) {
+				request.text = readBody(exchange.getRequestBody());
+			} else {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD, POST");
+				throw new HttpError(405, "Method not allowed: " + method);
+			}
+			if (query.containsKey("format")) {
+				try {
+					request.format = Format.valueOf(query.get("format").toUpperCase(Locale.ENGLISH));
+				} catch (IllegalArgumentException e) {
+					throw new HttpError(400, "format must be png, svg or json");
+				}
+			}
+			if (query.containsKey("palette")) {
+				try {
+					request.palette = PngEncoder.Palette.valueOf(query.get("palette").toUpperCase(Locale.ENGLISH));
+				} catch (IllegalArgumentException e) {
+					throw new HttpError(400, "palette must be none, exact or quantised");
+				}
+			}
+			request.words = number(query, "words", DEFAULT_WORDS, 1, MAX_WORDS);
+			request.width = number(query, "width", DEFAULT_WIDTH, 1, MAX_SIZE);
+			request.height = number(query, "height", DEFAULT_HEIGHT, 1, MAX_SIZE);
+			request.level = number(query, "level", PngEncoder.DEFAULT_LEVEL, 0, 9);
+
+			MessageDigest sha = IgnoreWordFilter.sha256();
+			sha.update((request.format + " " + request.words + " " + request.width + "x" + request.height + " ")
+					.getBytes(StandardCharsets.UTF_8));
+			sha.update(request.url != null ? ("url " + request.url).getBytes(StandardCharsets.UTF_8) : request.text);
+			byte[] digest = sha.digest();
+			StringBuilder key = new StringBuilder(64);
+			for (byte b : digest) {
+				key.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			if (request.format == Format.PNG) {
+				// The same picture whatever the compression, so the seed leaves it out
+				key.append('-').append(request.level).append(request.palette.name().charAt(0));
+			}
+			request.key = key.toString();
+			for (int i = 0; i < 8; i++) {
+				request.seed = request.seed << 8 | (digest[i] & 0xFF);
+			}
+			return request;
+		}
+
+		/**
+		 * Refuses a body that says it is over MAX_UPLOAD_BYTES before any of it is read
+		 * @throws HttpError 413 for a Content-Length over MAX_UPLOAD_BYTES, 400 for one that isn't a number
+		 */
+		static void checkLength(HttpExchange exchange) throws HttpError {
+			String length = exchange.getRequestHeaders().getFirst("Content-Length");
+			if (length == null) {
+				return;
+			}
+			try {
+				if (Long.parseLong(length.trim()) > MAX_UPLOAD_BYTES) {
+					throw new HttpError(413, "Text must be at most " + MAX_UPLOAD_BYTES + " bytes");
+				}
+			} catch (NumberFormatException e) {
+				throw new HttpError(400, "Bad Content-Length: " + length);
+			}
+		}
+
+		private static byte[] readBody(InputStream in) throws HttpError, IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				if (body.size() + read > MAX_UPLOAD_BYTES) {
+					throw new HttpError(413, "Text must be at most " + MAX_UPLOAD_BYTES + " bytes");
+				}
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		}
+
+		private static int number(Map<String, String> query, String name, int defaultValue, int min, int max)
+				throws HttpError {
+			String value = query.get(name);
+			if (value == null) {
+				return defaultValue;
+			}
+			try {
+				int number = Integer.parseInt(value.trim());
+				if (number >= min && number <= max) {
+					return number;
+				}
+			} catch (NumberFormatException e) {
+				// Reported below
+			}
+			throw new HttpError(400, name + " must be a number from " + min + " to " + max);
+		}
+
+		private static Map<String, String> query(String rawQuery) throws HttpError {
+			Map<String, String> query = new HashMap<String, String>();
+			if (rawQuery == null) {
+				return query;
+			}
+			for (String pair : rawQuery.split("&")) {
+				int equals = pair.indexOf('=');
+				String name = equals < 0 ? pair : pair.substring(0, equals);
+				String value = equals < 0 ? "" : pair.substring(equals + 1);
+				try {
+					query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+							URLDecoder.decode(value, StandardCharsets.UTF_8));
+				} catch (IllegalArgumentException e) {
+					throw new HttpError(400, "Malformed query: " + e.getMessage());
+				}
+			}
+			return query;
+		}
+	}
+}
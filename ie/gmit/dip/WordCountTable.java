@@ -0,0 +1,521 @@
+package ie.gmit.dip;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *
+ * @author Conor Timlin
+ * Purpose built word count table used behind Parser in place of a HashMap&lt;String, Integer&gt;.
+ * Counts are primitive ints and keys are stored back to back in a single byte arena, so a distinct word costs
+ * a few ints plus its own bytes instead of an entry object, a String and an Integer.
+ *
+ * Open addressing with linear probing. Keys can be looked up straight from a slice of an input buffer, so
+ * counting a word that is already in the table allocates nothing. Words are kept in insertion order and are
+ * addressed by index (0 to size() - 1) for iteration. Not thread safe, use one table per thread and merge.
+ *
+ */
+
+public class WordCountTable {
+
+	/**
+	 * @param MIN_CAPACITY - Smallest number of slots in the hash index
+	 * @param MAX_CAPACITY - Largest number of slots in the hash index, so at most MAX_CAPACITY / 2 distinct words
+	 * @param MAX_ARENA - Largest arena, the most bytes an array can hold
+	 * @param slots - Hash index, holds entry index + 1 or 0 for an empty slot. Length is always a power of two
+	 * @param hashes - Hash of each entry's key, saves rehashing on resize and most byte compares on lookup
+	 * @param offsets - Start of each key in the arena, offsets[size] is the end of the last key
+	 * @param counts - Count of each entry
+	 * @param arena - Bytes of every key, back to back
+	 * @param size - Number of distinct words in the table
+	 */
+	private static final int MIN_CAPACITY = 16;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int MAX_ARENA = Integer.MAX_VALUE - 8;
+
+	private int[] slots;
+	private int[] hashes;
+	private int[] offsets;
+	private int[] counts;
+	private byte[] arena;
+	private int size;
+
+	/**
+	 * Creates an empty table
+	 */
+	public WordCountTable() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedWords - Number of distinct words the table should hold before it has to grow
+	 * @throws IllegalArgumentException if expectedWords is more than the table can ever hold
+	 */
+	public WordCountTable(int expectedWords) {
+		if (expectedWords > MAX_CAPACITY / 2) {
+			throw new IllegalArgumentException("Too many words for one table: " + expectedWords);
+		}
+		int capacity = MIN_CAPACITY;
+		if (expectedWords * 2 > MIN_CAPACITY) {
+			capacity = Integer.highestOneBit(expectedWords * 2 - 1) << 1;
+		}
+		slots = new int[capacity];
+		hashes = new int[capacity / 2];
+		offsets = new int[capacity / 2 + 1];
+		counts = new int[capacity / 2];
+		arena = new byte[(int) Math.min(capacity * 4L, MAX_ARENA)];
+	}
+
+	/**
+	 * Adds one to the count of a word held in a slice of a buffer
+	 * @param key - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * Complexity: O(1) - Average case for open addressing at a load factor of at most 0.5
+	 */
+	public void increment(byte[] key, int offset, int length) {
+		add(key, offset, length, 1);
+	}
+
+	/**
+	 * Adds delta to the count of a word held in a slice of a buffer, inserting it if it isn't already present.
+	 * The bytes are only copied into the arena when the word is new.
+	 * @param key - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @param delta - Amount to add
+	 * Complexity: O(1) - Average case
+	 */
+	public void add(byte[] key, int offset, int length, int delta) {
+		int hash = hash(key, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			entry--;
+			if (hashes[entry] == hash && keyEquals(entry, key, offset, length)) {
+				counts[entry] += delta;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		insert(slot, hash, key, offset, length, delta);
+	}
+
+	/**
+	 * Adds delta to the count of a word
+	 * @param word - Lower case word
+	 * @param delta - Amount to add
+	 * Complexity: O(L) - Where L is the length of the word, to convert it to bytes
+	 */
+	public void add(String word, int delta) {
+		byte[] key = word.getBytes(StandardCharsets.ISO_8859_1);
+		add(key, 0, key.length, delta);
+	}
+
+	/**
+	 * @param key - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @return Index of the word, or -1 if it isn't in the table
+	 * Complexity: O(1) - Average case
+	 */
+	public int indexOf(byte[] key, int offset, int length) {
+		int hash = hash(key, offset, length);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			entry--;
+			if (hashes[entry] == hash && keyEquals(entry, key, offset, length)) {
+				return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param key - Buffer holding the word
+	 * @param offset - Start of the word
+	 * @param length - Number of bytes in the word
+	 * @return Count of the word, 0 if it isn't in the table
+	 * Complexity: O(1) - Average case
+	 */
+	public int get(byte[] key, int offset, int length) {
+		int entry = indexOf(key, offset, length);
+		return entry < 0 ? 0 : counts[entry];
+	}
+
+	/**
+	 * @param word - Lower case word
+	 * @return Count of the word, 0 if it isn't in the table
+	 * Complexity: O(L) - Where L is the length of the word
+	 */
+	public int get(String word) {
+		byte[] key = word.getBytes(StandardCharsets.ISO_8859_1);
+		return get(key, 0, key.length);
+	}
+
+	/**
+	 * Adds every count of another table to this one. Keys are copied straight from the other table's arena.
+	 * @param other - Table to merge in, left unchanged
+	 * Complexity: O(V) - Where V is the number of words in other
+	 */
+	public void merge(WordCountTable other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.arena, other.offsets[i], other.offsets[i + 1] - other.offsets[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * @return Number of distinct words
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index - Index of a word, 0 to size() - 1
+	 * @return The word as a String (allocates)
+	 */
+	public String key(int index) {
+		return new String(arena, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * @return The arena holding every key, for reading keys in place with keyOffset and keyLength
+	 */
+	byte[] arena() {
+		return arena;
+	}
+
+	/**
+	 * @param index - Index of a word, 0 to size() - 1
+	 * @return Start of the word in arena()
+	 */
+	int keyOffset(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * @param index - Index of a word, 0 to size() - 1
+	 * @return Number of bytes in the word
+	 */
+	int keyLength(int index) {
+		return offsets[index + 1] - offsets[index];
+	}
+
+	/**
+	 * @param index - Index of a word, 0 to size() - 1
+	 * @return Count of the word
+	 */
+	public int count(int index) {
+		return counts[index];
+	}
+
+	/**
+	 * Compares the keys of two entries byte by byte, which for lower case ASCII words is the same order as String.compareTo
+	 * @param a - Index of the first word
+	 * @param b - Index of the second word
+	 * @return Negative, zero or positive as the first key sorts before, equal to or after the second
+	 * Complexity: O(L) - Where L is the length of the shorter word
+	 */
+	public int compareKeys(int a, int b) {
+		return Arrays.compareUnsigned(arena, offsets[a], offsets[a + 1], arena, offsets[b], offsets[b + 1]);
+	}
+
+	/**
+	 * Selects the k highest counts with a bounded min-heap, without sorting the whole table. Ties are broken alphabetically,
+	 * the same order EntryComparator gives. The root of the heap is always the weakest of the current winners, so each
+	 * remaining word only needs one compare against it unless it beats it.
+	 * @param k - Number of words wanted
+	 * @return Indices of the min(k, size()) winners, best first
+	 * Complexity: O(V log K) - Where V is the number of words and K is k
+	 */
+	public int[] topIndices(int k) {
+		int[] heap = new int[Math.max(0, Math.min(k, size))];
+		int heapSize = 0;
+		for (int entry = 0; entry < size && heap.length > 0; entry++) {
+			if (heapSize < heap.length) {
+				heap[heapSize] = entry;
+				siftUp(heap, heapSize++);
+			} else if (ranksAbove(entry, heap[0])) {
+				heap[0] = entry;
+				siftDown(heap, heapSize);
+			}
+		}
+
+		int[] result = new int[heapSize];
+		for (int i = heapSize - 1; i >= 0; i--) {
+			result[i] = heap[0];
+			heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize);
+		}
+		return result;
+	}
+
+	/**
+	 * @return True if entry a comes before entry b in a word cloud: a higher count, or the same count and an earlier key
+	 */
+	private boolean ranksAbove(int a, int b) {
+		if (counts[a] != counts[b]) {
+			return counts[a] > counts[b];
+		}
+		return compareKeys(a, b) < 0;
+	}
+
+	private void siftUp(int[] heap, int i) {
+		int entry = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!ranksAbove(heap[parent], entry)) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = entry;
+	}
+
+	private void siftDown(int[] heap, int heapSize) {
+		if (heapSize == 0) {
+			return;
+		}
+		int entry = heap[0];
+		int i = 0;
+		int child;
+		while ((child = 2 * i + 1) < heapSize) {
+			if (child + 1 < heapSize && ranksAbove(heap[child], heap[child + 1])) {
+				child++;
+			}
+			if (!ranksAbove(entry, heap[child])) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = entry;
+	}
+
+	/**
+	 * Writes the table in a compact binary form: an int count of words, then for each word a varint length,
+	 * the key bytes and a varint count. Read back with read(ByteBuffer).
+	 * @param out - Stream to write to, not closed
+	 * @throws IOException
+	 * Complexity: O(V + A) - Where V is the number of words and A the size of the arena
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(size);
+		for (int i = 0; i < size; i++) {
+			int start = offsets[i];
+			int length = offsets[i + 1] - start;
+			writeVarInt(data, length);
+			data.write(arena, start, length);
+			writeVarInt(data, counts[i]);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Reads a table written by write(OutputStream). Keys are added straight from the buffer's backing array when it has one.
+	 * @param in - Buffer positioned at the start of the table, left positioned after it
+	 * @return New table holding the counts
+	 * @throws IllegalArgumentException if the data is truncated or malformed, never an index or underflow exception
+	 * Complexity: O(V + A)
+	 */
+	public static WordCountTable read(ByteBuffer in) {
+		try {
+			int words = in.getInt();
+			if (words < 0 || words > in.remaining() / 2) {
+				// every word takes at least a length and a count byte, so this also bounds the table allocated
+				throw new IllegalArgumentException("Bad word count " + words);
+			}
+			WordCountTable table = new WordCountTable(words);
+			byte[] key = new byte[64];
+			for (int i = 0; i < words; i++) {
+				int length = readVarInt(in);
+				if (length < 0 || length > in.remaining()) {
+					throw new IllegalArgumentException("Bad key length " + length);
+				}
+				if (length > key.length) {
+					key = new byte[Math.max(length, key.length << 1)];
+				}
+				in.get(key, 0, length);
+				table.add(key, 0, length, readVarInt(in));
+			}
+			return table;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated word count table", e);
+		}
+	}
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Empties the table, keeping its current capacity
+	 * Complexity: O(C) - Where C is the number of slots
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		size = 0;
+	}
+
+	/**
+	 * Read only Map view of the table for callers that still expect a Map&lt;String, Integer&gt;.
+	 * Reflects later changes to the table. Entries and Strings are only created as they are iterated.
+	 * @return Unmodifiable Map backed by this table
+	 */
+	public Map<String, Integer> asMap() {
+		return new MapView();
+	}
+
+	private void insert(int slot, int hash, byte[] key, int offset, int length, int count) {
+		if (size == MAX_CAPACITY / 2) {
+			throw new IllegalStateException("Word count table is full at " + size + " words");
+		}
+		if (size == counts.length) {
+			int capacity = counts.length << 1;
+			hashes = Arrays.copyOf(hashes, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+		}
+		int start = offsets[size];
+		if (length > arena.length - start) {
+			if (length > MAX_ARENA - start) {
+				throw new IllegalStateException("Word count table is full at " + start + " bytes of keys");
+			}
+			int grown = arena.length > MAX_ARENA / 2 ? MAX_ARENA : arena.length << 1;
+			arena = Arrays.copyOf(arena, Math.max(grown, start + length));
+		}
+		System.arraycopy(key, offset, arena, start, length);
+		offsets[size + 1] = start + length;
+		hashes[size] = hash;
+		counts[size] = count;
+		slots[slot] = ++size;
+
+		if (size * 2 > slots.length) {
+			rehash(slots.length << 1);
+		}
+	}
+
+	private void rehash(int capacity) {
+		int[] newSlots = new int[capacity];
+		int mask = capacity - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (newSlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			newSlots[slot] = entry + 1;
+		}
+		slots = newSlots;
+	}
+
+	private boolean keyEquals(int entry, byte[] key, int offset, int length) {
+		int start = offsets[entry];
+		return offsets[entry + 1] - start == length
+				&& Arrays.equals(arena, start, start + length, key, offset, offset + length);
+	}
+
+	/**
+	 * Polynomial hash of the bytes with a final mix so low bits are usable as a slot index
+	 */
+	static int hash(byte[] key, int offset, int length) {
+		int h = 0;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + key[i];
+		}
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Unmodifiable Map&lt;String, Integer&gt; view used by getHashMap and sortByWordFrequency
+	 */
+	private class MapView extends AbstractMap<String, Integer> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Integer get(Object key) {
+			if (!(key instanceof String)) {
+				return null;
+			}
+			byte[] bytes = ((String) key).getBytes(StandardCharsets.ISO_8859_1);
+			int entry = indexOf(bytes, 0, bytes.length);
+			return entry < 0 ? null : counts[entry];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Set<Entry<String, Integer>> entrySet() {
+			return new AbstractSet<Entry<String, Integer>>() {
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public Iterator<Entry<String, Integer>> iterator() {
+					return new Iterator<Entry<String, Integer>>() {
+						private int next;
+
+						@Override
+						public boolean hasNext() {
+							return next < size;
+						}
+
+						@Override
+						public Entry<String, Integer> next() {
+							if (next >= size) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, Integer> entry = new SimpleImmutableEntry<String, Integer>(key(next), counts[next]);
+							next++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package ie.gmit.dip;
+
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ *
+ * @author Conor Timlin
+ * Immutable result of laying out a word cloud: the canvas size, the seed it was made from and every word with its
+ * font, colour and position. It is computed once by WordCloudRenderer.layout and can then be drawn to a screen, an
+ * image or any other Graphics2D as often as needed without placing anything again.
+ *
+ * A layout also reports what it couldn't do: the words it left out (no room on the canvas, or its LayoutBudget ran
+ * out before their turn) and how many words it drew smaller than their counts call for to keep within the budget.
+ *
+ */
+
+public final class WordLayout {
+
+	/**
+	 * @param width - Width of the canvas in pixels
+	 * @param height - Height of the canvas in pixels
+	 * @param seed - Seed the layout was made from
+	 * @param words - Placed words, in the order they were placed (most frequent first)
+	 * @param dropped - Words left out, in the order they were given
+	 * @param shrunk - Number of placed words drawn smaller to save time
+	 * @param complete - False if the budget ran out or the layout was cancelled before every word was tried
+	 */
+	private final int width;
+	private final int height;
+	private final long seed;
+	private final List<PlacedWord> words;
+	private final List<Entry<String, Integer>> dropped;
+	private final int shrunk;
+	private final boolean complete;
+
+	WordLayout(int width, int height, long seed, List<PlacedWord> words) {
+		this(width, height, seed, words, Collections.<Entry<String, Integer>>emptyList(), 0, true);
+	}
+
+	WordLayout(int width, int height, long seed, List<PlacedWord> words, List<? extends Entry<String, Integer>> dropped,
+			int shrunk, boolean complete) {
+		this.width = width;
+		this.height = height;
+		this.seed = seed;
+		this.words = Collections.unmodifiableList(new ArrayList<PlacedWord>(words));
+		this.dropped = Collections.unmodifiableList(new ArrayList<Entry<String, Integer>>(dropped));
+		this.shrunk = shrunk;
+		this.complete = complete;
+	}
+
+	/**
+	 * Draws every word. Set the rendering hints on g2 beforehand.
+	 * @param g2 - Graphics to draw with, its font and colour are changed
+	 * Complexity: O(K) - Where K is the number of words
+	 */
+	public void draw(Graphics2D g2) {
+		for (PlacedWord word : words) {
+			word.draw(g2);
+		}
+	}
+
+	/**
+	 * @return Width of the canvas in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return Height of the canvas in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return Seed the layout was made from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return Read-only list of the placed words, most frequent first
+	 */
+	public List<PlacedWord> getWords() {
+		return words;
+	}
+
+	/**
+	 * @return Read-only list of the words left out, in the order they were given
+	 */
+	public List<Entry<String, Integer>> getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return Number of placed words drawn smaller than their counts call for, to keep within the budget
+	 */
+	public int getShrunk() {
+		return shrunk;
+	}
+
+	/**
+	 * @return True if every word was tried, false if the budget ran out or the layout was cancelled first
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+}
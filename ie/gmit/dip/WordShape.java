@@ -0,0 +1,210 @@
+package ie.gmit.dip;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ *
+ * @author Conor Timlin
+ * Space a word takes up on the canvas, as placed by a CollisionIndex. Either a solid box (its string bounds) or a bit
+ * mask of its actual glyphs, so words can nest into each other's gaps (under an overhang, between ascenders).
+ *
+ * A mask is held as rows of longs, bit i of word k of a row being pixel 64 * k + i, so an index can test a whole
+ * 64 pixel run of it with a single shift and AND. The glyph outline is filled and stroked padding pixels wide, which
+ * keeps the anti-aliased edges of neighbouring words from touching.
+ *
+ * On a crowded canvas most candidate positions collide, so a shape also keeps a few of its set pixels spread over
+ * it as probes. Testing those first rejects most positions with a handful of single bit tests before any row is read.
+ *
+ */
+
+public final class WordShape {
+
+	/**
+	 * @param PROBES - Number of probe pixels kept
+	 * @param width - Width in pixels
+	 * @param height - Height in pixels
+	 * @param originX - Distance from the left edge to where the text starts
+	 * @param originY - Distance from the top edge down to the baseline
+	 * @param wordsPerRow - Longs per mask row
+	 * @param rows - Mask bits row after row, null for a solid box
+	 * @param probes - x, y of set pixels to test first, pair after pair
+	 */
+	private static final int PROBES = 8;
+
+	private final int width;
+	private final int height;
+	private final int originX;
+	private final int originY;
+	private final int wordsPerRow;
+	private final long[] rows;
+	private final int[] probes;
+
+	private WordShape(int width, int height, int originX, int originY, long[] rows) {
+		this.width = width;
+		this.height = height;
+		this.originX = originX;
+		this.originY = originY;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.rows = rows;
+		this.probes = rows == null ? boxProbes() : maskProbes();
+	}
+
+	/**
+	 * @param width - Width of the box
+	 * @param height - Height of the box
+	 * @param ascent - Distance from the top of the box down to the baseline
+	 * @return Solid box shape, the text starting at its left edge
+	 * Complexity: O(1)
+	 */
+	public static WordShape box(int width, int height, int ascent) {
+		return new WordShape(Math.max(1, width), Math.max(1, height), 0, ascent, null);
+	}
+
+	/**
+	 * Rasterises a glyph outline (e.g. GlyphVector.getOutline(), relative to the text origin) into a mask.
+	 * @param outline - Outline of the word's glyphs
+	 * @param padding - Pixels of clearance kept around the glyphs
+	 * @return Mask shape just big enough for the padded outline
+	 * Complexity: O(W H) - Where W and H are the width and height of the mask
+	 */
+	public static WordShape glyphs(Shape outline, int padding) {
+		Rectangle bounds = outline.getBounds();
+		int width = Math.max(1, bounds.width + 2 * padding + 1);
+		int height = Math.max(1, bounds.height + 2 * padding + 1);
+		int originX = padding - bounds.x;
+		int originY = padding - bounds.y;
+
+		BufferedImage raster = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g2 = raster.createGraphics();
+		try {
+			g2.setColor(Color.white);
+			g2.transform(AffineTransform.getTranslateInstance(originX, originY));
+			g2.fill(outline);
+			if (padding > 0) {
+				g2.setStroke(new BasicStroke(2 * padding, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+				g2.draw(outline);
+			}
+		} finally {
+			g2.dispose();
+		}
+
+		byte[] pixels = ((DataBufferByte) raster.getRaster().getDataBuffer()).getData();
+		int wordsPerRow = (width + 63) >>> 6;
+		long[] rows = new long[wordsPerRow * height];
+		for (int y = 0; y < height; y++) {
+			int row = y * width;
+			int word = y * wordsPerRow;
+			for (int x = 0; x < width; x++) {
+				if (pixels[row + x] != 0) {
+					rows[word + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+		return new WordShape(width, height, originX, originY, rows);
+	}
+
+	/**
+	 * @return Width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return Height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return Distance from the left edge to where the text starts
+	 */
+	public int getOriginX() {
+		return originX;
+	}
+
+	/**
+	 * @return Distance from the top edge down to the baseline
+	 */
+	public int getOriginY() {
+		return originY;
+	}
+
+	/**
+	 * @return True for a solid box, false for a glyph mask
+	 */
+	public boolean isSolid() {
+		return rows == null;
+	}
+
+	/**
+	 * @return x, y of set pixels worth testing before the whole shape, pair after pair
+	 */
+	int[] probes() {
+		return probes;
+	}
+
+	/**
+	 * @return Longs in each mask row
+	 */
+	int wordsPerRow() {
+		return wordsPerRow;
+	}
+
+	/**
+	 * @param row - Row of the shape, 0 to height - 1
+	 * @param word - Long of the row, 0 to wordsPerRow() - 1
+	 * @return Bits of pixels 64 * word to 64 * word + 63 of the row, all set inside a solid box
+	 */
+	long bits(int row, int word) {
+		if (rows != null) {
+			return rows[row * wordsPerRow + word];
+		}
+		int remaining = width - (word << 6);
+		return remaining >= 64 ? -1L : (1L << remaining) - 1;
+	}
+
+	/**
+	 * Centre and corners of the box
+	 */
+	private int[] boxProbes() {
+		return new int[] { width / 2, height / 2, 0, 0, width - 1, 0, 0, height - 1, width - 1, height - 1 };
+	}
+
+	/**
+	 * Every (n / PROBES)th set pixel in row order, so the probes are spread down the mask
+	 * Complexity: O(W H / 64)
+	 */
+	private int[] maskProbes() {
+		int set = 0;
+		for (long bits : rows) {
+			set += Long.bitCount(bits);
+		}
+		int count = Math.min(PROBES, set);
+		int[] found = new int[count * 2];
+		int seen = 0;
+		int next = 0;
+		for (int i = 0; i < rows.length && next < count; i++) {
+			long bits = rows[i];
+			while (bits != 0 && next < count) {
+				// Take the probe whose turn it is: set pixel number (2 next + 1) set / (2 count), centred in its share
+				if (seen == (int) ((2L * next + 1) * set / (2L * count))) {
+					found[2 * next] = ((i % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+					found[2 * next + 1] = i / wordsPerRow;
+					next++;
+				}
+				bits &= bits - 1;
+				seen++;
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,50 @@
+package ie.gmit.dip;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * @author Conor Timlin
+ * Utility class that hands out executors for I/O bound work (opening files, fetching URLs, serving requests).
+ * On runtimes with virtual threads every task gets its own virtual thread; older runtimes fall back to a cached pool
+ * of daemon platform threads. Callers bound how much is in flight themselves (usually with a Semaphore), since
+ * neither executor limits it.
+ *
+ */
+
+public final class Workers {
+
+	private Workers() {
+	}
+
+	/**
+	 * @param name - Prefix for the names of fallback platform threads
+	 * @return Executor running each task on its own virtual thread where available
+	 * Complexity: O(1)
+	 */
+	public static ExecutorService newIoExecutor(String name) {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(daemonThreads(name));
+		}
+	}
+
+	/**
+	 * @param name - Prefix for thread names, a counter is appended
+	 * @return ThreadFactory making named daemon threads, so workers never keep the JVM alive
+	 */
+	public static ThreadFactory daemonThreads(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return task -> {
+			Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}